@@ -0,0 +1,308 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code Asset} class represents a single resource served by the {@code CKEditorAssetServlet}: a file from the CKEditor distribution
+ * or a resource kept in memory. Besides the content it stores the metadata needed to answer conditional and range requests.
+ */
+abstract class Asset {
+
+	/**
+	 * Name of the asset used to determine its content type.
+	 */
+	private final String name;
+
+	/**
+	 * Length of the asset content in bytes.
+	 */
+	private final long length;
+
+	/**
+	 * Time of the last modification of the asset in milliseconds since the epoch.
+	 */
+	private final long lastModified;
+
+	/**
+	 * Entity tag of the asset, including quotes.
+	 */
+	private final String etag;
+
+	/**
+	 * Creates the {@code Asset} object.
+	 * 
+	 * @param name
+	 *        the name of the asset used to determine its content type.
+	 * @param length
+	 *        the length of the asset content in bytes.
+	 * @param lastModified
+	 *        the time of the last modification of the asset.
+	 * @param etag
+	 *        the entity tag of the asset, including quotes.
+	 */
+	protected Asset( final String name, final long length, final long lastModified, final String etag ) {
+		this.name = name;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.etag = etag;
+	}
+
+	/**
+	 * Creates an asset backed by a file. The entity tag is built from the file length and modification time, so it changes whenever the
+	 * file is replaced.
+	 * 
+	 * @param name
+	 *        the name of the asset used to determine its content type.
+	 * @param file
+	 *        the file storing the asset content.
+	 * @return the {@code Asset} object.
+	 */
+	static Asset forFile( final String name, final File file ) {
+		return new FileAsset( name, file, file.lastModified(), "\"" + Long.toHexString( file.length() ) + "-"
+				+ Long.toHexString( file.lastModified() ) + "\"" );
+	}
+
+	/**
+	 * Creates an asset representing the content of another asset in a content encoding, for example its gzip variant. The encoded asset
+	 * keeps the modification time of the original one, while its entity tag is the original one marked with the encoding name, so that
+	 * caches never mix both representations.
+	 * 
+	 * @param original
+	 *        the asset which was encoded.
+	 * @param file
+	 *        the file storing the encoded content.
+	 * @param encoding
+	 *        the name of the content encoding.
+	 * @return the {@code Asset} object.
+	 */
+	static Asset forEncodedFile( final Asset original, final File file, final String encoding ) {
+		String etag = original.getETag();
+		return new FileAsset( original.getName(), file, original.getLastModified(), etag.substring( 0, etag.length() - 1 ) + "-"
+				+ encoding + "\"" );
+	}
+
+	/**
+	 * Creates an asset kept in memory. The entity tag is built from the checksum of the content.
+	 * 
+	 * @param name
+	 *        the name of the asset used to determine its content type.
+	 * @param data
+	 *        the asset content. The array is not copied and must not be modified afterwards.
+	 * @param lastModified
+	 *        the time of the last modification of the asset.
+	 * @return the {@code Asset} object.
+	 */
+	static Asset forBytes( final String name, final byte[] data, final long lastModified ) {
+		return new MemoryAsset( name, data, lastModified, MemoryAsset.createETag( data ), false );
+	}
+
+	/**
+	 * Creates an asset kept in memory, optionally outside of the Java heap. Off-heap assets do not add to garbage collection work, which
+	 * matters for large generated resources kept for the lifetime of the application. When they are sent, their content is still copied
+	 * to the servlet output stream in small chunks.
+	 * 
+	 * @param name
+	 *        the name of the asset used to determine its content type.
+	 * @param data
+	 *        the asset content. If stored off-heap the array is copied, otherwise it must not be modified afterwards.
+	 * @param lastModified
+	 *        the time of the last modification of the asset.
+	 * @param offHeap
+	 *        {@code true} if the content should be copied to a direct buffer.
+	 * @return the {@code Asset} object.
+	 */
+	static Asset forBytes( final String name, final byte[] data, final long lastModified, final boolean offHeap ) {
+		return new MemoryAsset( name, data, lastModified, MemoryAsset.createETag( data ), offHeap );
+	}
+
+	/**
+	 * Creates an asset kept in memory representing the content of another asset in a content encoding. Like
+	 * {@link #forEncodedFile(Asset, File, String)}, it keeps the modification time of the original asset and marks its entity tag with the
+	 * encoding name.
+	 * 
+	 * @param original
+	 *        the asset which was encoded.
+	 * @param data
+	 *        the encoded content. The array is not copied and must not be modified afterwards.
+	 * @param encoding
+	 *        the name of the content encoding.
+	 * @return the {@code Asset} object.
+	 */
+	static Asset forEncodedBytes( final Asset original, final byte[] data, final String encoding ) {
+		String etag = original.getETag();
+		return new MemoryAsset( original.getName(), data, original.getLastModified(), etag.substring( 0, etag.length() - 1 ) + "-"
+				+ encoding + "\"", false );
+	}
+
+	/**
+	 * Returns the name of the asset used to determine its content type.
+	 * 
+	 * @return the name of the asset.
+	 */
+	final String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the length of the asset content in bytes.
+	 * 
+	 * @return the length of the asset.
+	 */
+	final long getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the time of the last modification of the asset.
+	 * 
+	 * @return the time of the last modification in milliseconds since the epoch.
+	 */
+	final long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Returns the entity tag of the asset.
+	 * 
+	 * @return the entity tag, including quotes.
+	 */
+	final String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Writes a part of the asset content to the output stream.
+	 * 
+	 * @param out
+	 *        the stream to write to.
+	 * @param offset
+	 *        the position of the first byte to write.
+	 * @param count
+	 *        the number of bytes to write.
+	 * @throws IOException
+	 *         if the content cannot be read or written.
+	 */
+	abstract void writeTo( OutputStream out, long offset, long count ) throws IOException;
+
+	/**
+	 * Asset backed by a file. The content is streamed with {@code FileChannel.transferTo}, so the file is never loaded into memory as a
+	 * whole. The servlet output stream is not a channel the JVM can write to directly, so the data is still copied through a small
+	 * temporary buffer; this is not a zero-copy transfer.
+	 */
+	private static final class FileAsset extends Asset {
+
+		/**
+		 * File storing the asset content.
+		 */
+		private final File file;
+
+		/**
+		 * Creates the {@code FileAsset} object.
+		 * 
+		 * @param name
+		 *        the name of the asset.
+		 * @param file
+		 *        the file storing the asset content.
+		 * @param lastModified
+		 *        the time of the last modification of the asset.
+		 * @param etag
+		 *        the entity tag of the asset, including quotes.
+		 */
+		FileAsset( final String name, final File file, final long lastModified, final String etag ) {
+			super( name, file.length(), lastModified, etag );
+			this.file = file;
+		}
+
+		@Override
+		void writeTo( final OutputStream out, final long offset, final long count ) throws IOException {
+			FileInputStream in = new FileInputStream( file );
+			try {
+				FileChannel channel = in.getChannel();
+				WritableByteChannel target = Channels.newChannel( out );
+				long position = offset;
+				long remaining = count;
+				while ( remaining > 0 ) {
+					long sent = channel.transferTo( position, remaining, target );
+					if ( sent <= 0 ) {
+						throw new IOException( "Unexpected end of file: " + file );
+					}
+					position += sent;
+					remaining -= sent;
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Asset kept in memory, either in a heap array or in a direct buffer.
+	 */
+	private static final class MemoryAsset extends Asset {
+
+		/**
+		 * Asset content. Never modified; duplicates are used for writing.
+		 */
+		private final ByteBuffer data;
+
+		/**
+		 * Creates the {@code MemoryAsset} object.
+		 * 
+		 * @param name
+		 *        the name of the asset.
+		 * @param data
+		 *        the asset content.
+		 * @param lastModified
+		 *        the time of the last modification of the asset.
+		 * @param etag
+		 *        the entity tag of the asset, including quotes.
+		 * @param offHeap
+		 *        {@code true} if the content should be copied to a direct buffer.
+		 */
+		MemoryAsset( final String name, final byte[] data, final long lastModified, final String etag, final boolean offHeap ) {
+			super( name, data.length, lastModified, etag );
+			if ( offHeap ) {
+				this.data = ByteBuffer.allocateDirect( data.length );
+				this.data.put( data ).flip();
+			} else {
+				this.data = ByteBuffer.wrap( data );
+			}
+		}
+
+		@Override
+		void writeTo( final OutputStream out, final long offset, final long count ) throws IOException {
+			if ( data.hasArray() ) {
+				out.write( data.array(), data.arrayOffset() + ( int ) offset, ( int ) count );
+				return;
+			}
+			ByteBuffer part = data.duplicate();
+			part.position( ( int ) offset ).limit( ( int ) ( offset + count ) );
+			WritableByteChannel target = Channels.newChannel( out );
+			while ( part.hasRemaining() ) {
+				target.write( part );
+			}
+		}
+
+		/**
+		 * Returns the entity tag built from the CRC32 checksum and the length of the data.
+		 * 
+		 * @param data
+		 *        the data to check.
+		 * @return the entity tag, including quotes.
+		 */
+		static String createETag( final byte[] data ) {
+			CRC32 crc = new CRC32();
+			crc.update( data );
+			return "\"" + Long.toHexString( crc.getValue() ) + "-" + Integer.toHexString( data.length ) + "\"";
+		}
+	}
+}
@@ -0,0 +1,342 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The {@code AssetPrecompressor} class creates gzip variants of the text files from the CKEditor distribution. Variants are stored in a
+ * cache directory under the hash of the original content, so they survive restarts and are shared by identical files. Files are processed
+ * in parallel by a pool of worker threads. Variants which no longer belong to any file are removed from the cache directory after a
+ * complete run.
+ */
+final class AssetPrecompressor {
+
+	/**
+	 * Private logger.
+	 */
+	private static final Logger assetPrecompressorLogger = Logger.getLogger( AssetPrecompressor.class.getName() );
+	/**
+	 * Extensions of files worth compressing.
+	 */
+	private static final String[] COMPRESSIBLE_EXTENSIONS = { ".js", ".css", ".html", ".htm", ".json", ".svg", ".txt", ".md", ".xml" };
+	/**
+	 * Files smaller than this number of bytes are not compressed.
+	 */
+	private static final long MIN_LENGTH = 256;
+	/**
+	 * Variants which do not save at least this fraction of the original size are not used.
+	 */
+	private static final double MAX_RATIO = 0.9;
+	/**
+	 * Names of files in the cache directory which store gzip variants.
+	 */
+	private static final Pattern VARIANT_NAME = Pattern.compile( "[0-9a-f]{40}\\.gz" );
+	/**
+	 * CKEditor installation directory.
+	 */
+	private final File directory;
+	/**
+	 * Directory storing gzip variants.
+	 */
+	private final File cacheDirectory;
+	/**
+	 * Gzip variants by the path of the original file relative to the CKEditor directory.
+	 */
+	private final ConcurrentMap< String, Variant > variants = new ConcurrentHashMap< String, Variant >();
+	/**
+	 * Names of the files in the cache directory which belong to the files processed during the last run, including variants which were
+	 * not used because they did not save enough.
+	 */
+	private final Set< String > referenced = Collections.newSetFromMap( new ConcurrentHashMap< String, Boolean >() );
+	/**
+	 * Total length of original files which have a gzip variant.
+	 */
+	private final AtomicLong originalBytes = new AtomicLong();
+	/**
+	 * Total length of gzip variants.
+	 */
+	private final AtomicLong compressedBytes = new AtomicLong();
+	/**
+	 * CPU time spent on compression in nanoseconds.
+	 */
+	private final AtomicLong cpuTime = new AtomicLong();
+	/**
+	 * Number of variants created during the last run.
+	 */
+	private final AtomicLong created = new AtomicLong();
+	/**
+	 * Number of variants reused from the cache directory during the last run.
+	 */
+	private final AtomicLong reused = new AtomicLong();
+
+	/**
+	 * Creates the {@code AssetPrecompressor} object.
+	 * 
+	 * @param directory
+	 *        the CKEditor installation directory.
+	 * @param cacheDirectory
+	 *        the directory storing gzip variants. It is created if it does not exist.
+	 */
+	AssetPrecompressor( final File directory, final File cacheDirectory ) {
+		this.directory = directory;
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * Creates gzip variants of all compressible files from the CKEditor directory, reusing the variants already present in the cache
+	 * directory. The summary is logged when all files are processed. If every file was processed, variants of files which no longer
+	 * exist or have changed are deleted from the cache directory.
+	 * 
+	 * @param threads
+	 *        the number of worker threads.
+	 * @throws IOException
+	 *         if the cache directory cannot be created.
+	 */
+	void run( final int threads ) throws IOException {
+		if ( !cacheDirectory.isDirectory() && !cacheDirectory.mkdirs() ) {
+			throw new IOException( "Could not create the cache directory: " + cacheDirectory );
+		}
+		List< String > paths = new ArrayList< String >();
+		collect( directory, "/", paths );
+
+		long start = System.currentTimeMillis();
+		boolean complete = true;
+		ExecutorService executor = Executors.newFixedThreadPool( Math.max( threads, 1 ) );
+		try {
+			List< Future< Void >> results = new ArrayList< Future< Void >>( paths.size() );
+			for ( final String path : paths ) {
+				results.add( executor.submit( new Callable< Void >() {
+					public Void call() throws IOException {
+						precompress( path );
+						return null;
+					}
+				} ) );
+			}
+			for ( int i = 0; i < results.size(); i++ ) {
+				try {
+					results.get( i ).get();
+				} catch ( ExecutionException e ) {
+					complete = false;
+					assetPrecompressorLogger.log( Level.WARNING, "Could not precompress " + paths.get( i ), e.getCause() );
+				}
+			}
+		} catch ( InterruptedException e ) {
+			complete = false;
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+		int pruned = complete ? prune() : 0;
+
+		long saved = originalBytes.get() - compressedBytes.get();
+		assetPrecompressorLogger.info( "Precompressed CKEditor assets in " + ( System.currentTimeMillis() - start ) + " ms: "
+				+ variants.size() + " variants (" + created.get() + " created, " + reused.get() + " reused), "
+				+ ( cpuTime.get() / 1000000 ) + " ms CPU, " + saved + " bytes saved ("
+				+ ( originalBytes.get() > 0 ? saved * 100 / originalBytes.get() : 0 ) + "%), " + pruned + " unused variants removed." );
+	}
+
+	/**
+	 * Returns the gzip variant of a file from the CKEditor directory.
+	 * 
+	 * @param path
+	 *        the path of the file relative to the CKEditor directory.
+	 * @param original
+	 *        the original file. The variant is returned only if the file did not change since it was compressed.
+	 * @return the gzip variant or {@code null} if there is none.
+	 */
+	File getVariant( final String path, final File original ) {
+		Variant variant = variants.get( path );
+		if ( variant == null || variant.length != original.length() || variant.lastModified != original.lastModified() ) {
+			return null;
+		}
+		return variant.file;
+	}
+
+	/**
+	 * Returns the number of bytes saved by gzip variants.
+	 * 
+	 * @return the difference between the total length of original files and their gzip variants.
+	 */
+	long getSavedBytes() {
+		return originalBytes.get() - compressedBytes.get();
+	}
+
+	/**
+	 * Returns the CPU time spent on compression.
+	 * 
+	 * @return the CPU time in nanoseconds.
+	 */
+	long getCpuTime() {
+		return cpuTime.get();
+	}
+
+	/**
+	 * Collects paths of compressible files from a directory and its subdirectories.
+	 * 
+	 * @param dir
+	 *        the directory to walk.
+	 * @param prefix
+	 *        the path of the directory relative to the CKEditor directory.
+	 * @param paths
+	 *        the {@code List} to which paths are added.
+	 */
+	private static void collect( final File dir, final String prefix, final List< String > paths ) {
+		File[] files = dir.listFiles();
+		if ( files == null ) {
+			return;
+		}
+		for ( File file : files ) {
+			if ( file.isDirectory() ) {
+				collect( file, prefix + file.getName() + "/", paths );
+			} else if ( file.length() >= MIN_LENGTH && isCompressible( file.getName() ) ) {
+				paths.add( prefix + file.getName() );
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a file is worth compressing based on its name.
+	 * 
+	 * @param name
+	 *        the name of the file.
+	 * @return {@code true} if the file should be compressed, {@code false} otherwise.
+	 */
+	private static boolean isCompressible( final String name ) {
+		String lowerName = name.toLowerCase( Locale.ENGLISH );
+		for ( String extension : COMPRESSIBLE_EXTENSIONS ) {
+			if ( lowerName.endsWith( extension ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Deletes gzip variants which do not belong to any file processed during the last run. Other files in the cache directory are left
+	 * untouched.
+	 * 
+	 * @return the number of deleted variants.
+	 */
+	private int prune() {
+		File[] files = cacheDirectory.listFiles();
+		if ( files == null ) {
+			return 0;
+		}
+		int pruned = 0;
+		for ( File file : files ) {
+			String name = file.getName();
+			if ( referenced.contains( name ) || !VARIANT_NAME.matcher( name ).matches() || !file.isFile() ) {
+				continue;
+			}
+			if ( file.delete() ) {
+				pruned++;
+			} else {
+				assetPrecompressorLogger.warning( "Could not delete the unused gzip variant " + file );
+			}
+		}
+		return pruned;
+	}
+
+	/**
+	 * Creates or reuses the gzip variant of a single file.
+	 * 
+	 * @param path
+	 *        the path of the file relative to the CKEditor directory.
+	 * @throws IOException
+	 *         if the file cannot be read or the variant cannot be written.
+	 */
+	private void precompress( final String path ) throws IOException {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		boolean measure = threadBean.isCurrentThreadCpuTimeSupported();
+		long cpuStart = measure ? threadBean.getCurrentThreadCpuTime() : 0;
+
+		File original = new File( directory, path.substring( 1 ) );
+		long length = original.length();
+		long lastModified = original.lastModified();
+		byte[] data = Utils.readFully( original );
+		File target = new File( cacheDirectory, Utils.sha1( data ) + ".gz" );
+		referenced.add( target.getName() );
+		if ( target.isFile() ) {
+			reused.incrementAndGet();
+		} else {
+			File temp = File.createTempFile( "ckeditor", ".tmp", cacheDirectory );
+			OutputStream out = new GZIPOutputStream( new FileOutputStream( temp ), 8192 );
+			try {
+				out.write( data );
+			} finally {
+				out.close();
+			}
+			if ( !temp.renameTo( target ) && !target.isFile() ) {
+				temp.delete();
+				throw new IOException( "Could not store the gzip variant of " + path );
+			}
+			temp.delete();
+			created.incrementAndGet();
+		}
+		if ( target.length() <= length * MAX_RATIO ) {
+			variants.put( path, new Variant( target, length, lastModified ) );
+			originalBytes.addAndGet( length );
+			compressedBytes.addAndGet( target.length() );
+		}
+		if ( measure ) {
+			cpuTime.addAndGet( threadBean.getCurrentThreadCpuTime() - cpuStart );
+		}
+	}
+
+	/**
+	 * Gzip variant of a file together with the length and modification time of the original file at the time it was compressed.
+	 */
+	private static final class Variant {
+
+		/**
+		 * File storing the gzip variant.
+		 */
+		private final File file;
+		/**
+		 * Length of the original file.
+		 */
+		private final long length;
+		/**
+		 * Modification time of the original file.
+		 */
+		private final long lastModified;
+
+		/**
+		 * Creates the {@code Variant} object.
+		 * 
+		 * @param file
+		 *        the file storing the gzip variant.
+		 * @param length
+		 *        the length of the original file.
+		 * @param lastModified
+		 *        the modification time of the original file.
+		 */
+		Variant( final File file, final long length, final long lastModified ) {
+			this.file = file;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+	}
+}
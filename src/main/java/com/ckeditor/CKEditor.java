@@ -1,7 +1,14 @@
 /* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
 package com.ckeditor;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -17,6 +24,11 @@ import javax.servlet.http.HttpSession;
  */
 public class CKEditor {
 
+	/**
+	 * Private logger.
+	 */
+	private static final Logger ckeditorLogger = Logger.getLogger( CKEditor.class.getName() );
+
 	/**
 	 * Enumeration of markers for CKEditor JavaScript creation methods.
 	 */
@@ -74,10 +86,35 @@ public class CKEditor {
 		};
 	}
 
+	/**
+	 * Enumeration of markers indicating when editor instances should be created on the client side.
+	 */
+	public enum Activation {
+
+		/**
+		 * {@code Enum} marker for creating editor instances as soon as the page is parsed (default behavior).
+		 */
+		IMMEDIATE,
+		/**
+		 * {@code Enum} marker for creating editor instances right after the page is parsed, in small batches spread across idle callbacks
+		 * or animation frames. Editors visible in the viewport are created first.
+		 */
+		SCHEDULED,
+		/**
+		 * {@code Enum} marker for creating an editor instance when its element scrolls into view or receives focus, whichever happens
+		 * first.
+		 */
+		VISIBLE,
+		/**
+		 * {@code Enum} marker for creating an editor instance when its element receives focus.
+		 */
+		FOCUS
+	}
+
 	/**
 	 * Attributes for the {@code <textarea>} element that will be inserted into JSP and replaced with CKEditor.
 	 */
-	private HashMap< String, String > textareaAttributes;
+	private Map< String, String > textareaAttributes;
 
 	/**
 	 * Field indicating which JavaScript method should be inserted into JSP to create CKEditor.
@@ -119,6 +156,11 @@ public class CKEditor {
 	 */
 	private String value;
 
+	/**
+	 * Source of the initial CKEditor value. If it is set, it is used instead of {@code value}.
+	 */
+	private ValueSource valueSource;
+
 	/**
 	 * Full or relative path to the CKEditor installation directory. If a full path is used, the {@code CKEDITOR_BASEPATH} global variable
 	 * will be inserted into JSP.
@@ -142,6 +184,42 @@ public class CKEditor {
 	 */
 	private GlobalEventHandler globalEvents;
 
+	/**
+	 * Field indicating when editor instances should be created on the client side.
+	 */
+	private Activation activation = Activation.IMMEDIATE;
+
+	/**
+	 * Number of scheduled editor instances created in a single batch. If it is not positive, the client-side default is used.
+	 */
+	private int batchSize;
+
+	/**
+	 * Flag indicating whether the value should be displayed as static HTML instead of creating a read-only editor.
+	 */
+	private boolean readOnlyStatic;
+
+	/**
+	 * Flag indicating whether static HTML should be upgraded to an editor instance when clicked.
+	 */
+	private boolean upgradeOnClick;
+	/**
+	 * Flag indicating whether plugins unused by the toolbar should be added to {@code removePlugins}.
+	 */
+	private boolean removeUnusedPlugins;
+	/**
+	 * Flag indicating whether the settings of {@code config.js} and {@code styles.js} should be sent inline with the configuration.
+	 */
+	private boolean inlineConfig;
+	/**
+	 * Flag indicating whether the {@code contentsCss} stylesheets should be aggregated into a single stylesheet.
+	 */
+	private boolean aggregateContentsCss;
+	/**
+	 * Flag indicating whether the value should be loaded out of band instead of being inserted into the {@code <textarea>} element.
+	 */
+	private boolean deferContent;
+
 	/**
 	 * Represents the JavaScript {@code replaceAll} method&#x2e; It replaces all {@code <textarea>} elements on JSP with CKEditor instances.
 	 * 
@@ -232,7 +310,7 @@ public class CKEditor {
 	 *        , {@code disabled} and {@code form}.
 	 */
 	public CKEditor( HttpServletRequest request, String basePath, String instanceName, String value,
-			HashMap< String, String > textareaAttributes ) {
+			Map< String, String > textareaAttributes ) {
 		this( request, basePath );
 		this.instanceName = instanceName;
 		this.creationMethod = Methods.INSERT;
@@ -263,7 +341,7 @@ public class CKEditor {
 	 *        the CKEditor configuration object storing this editor instance custom configuration.
 	 */
 	public CKEditor( HttpServletRequest request, String basePath, String instanceName, String value,
-			HashMap< String, String > textareaAttributes, CKEditorConfig config ) {
+			Map< String, String > textareaAttributes, CKEditorConfig config ) {
 		this( request, basePath, instanceName, value, textareaAttributes );
 		this.config = config;
 	}
@@ -341,7 +419,7 @@ public class CKEditor {
 	 *        the CKEditor configuration object storing this editor instance custom configuration.
 	 */
 	public CKEditor( HttpServletRequest request, String basePath, String instanceName, String value,
-			HashMap< String, String > textareaAttributes, boolean inline, CKEditorConfig config ) {
+			Map< String, String > textareaAttributes, boolean inline, CKEditorConfig config ) {
 		this( request, basePath, instanceName, value, textareaAttributes, inline );
 		this.config = config;
 	}
@@ -368,7 +446,7 @@ public class CKEditor {
 	 *        a Boolean flag indicating whether inline or classic editor should be used to replace the {@code <textarea>} on JSP.
 	 */
 	public CKEditor( HttpServletRequest request, String basePath, String instanceName, String value,
-			HashMap< String, String > textareaAttributes, boolean inline ) {
+			Map< String, String > textareaAttributes, boolean inline ) {
 		this( request, basePath, instanceName, value, textareaAttributes );
 		this.inline = inline;
 	}
@@ -380,13 +458,50 @@ public class CKEditor {
 	 */
 	@Override
 	public String toString() {
+		StringWriter out = new StringWriter();
+		try {
+			writeHtml( out );
+		} catch ( IOException e ) {
+			ckeditorLogger.log( Level.SEVERE, "Could not read the editor value.", e );
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Writes the HTML representation of this editor instance. If the value is read from a {@code ValueSource}, it is streamed to the
+	 * writer in chunks instead of being built in memory, which is what makes this method preferable to {@link #toString()} for large
+	 * documents.
+	 * 
+	 * @param out
+	 *        the writer to write to, for example the {@code JspWriter}.
+	 * @throws IOException
+	 *         if the value cannot be read or the HTML cannot be written.
+	 * @see #setValueSource(ValueSource)
+	 */
+	public void writeHtml( final Writer out ) throws IOException {
+		if ( creationMethod == Methods.INSERT && readOnlyStatic ) {
+			out.write( getStaticHtml( readValue() ) );
+			return;
+		}
+
 		StringBuilder sb = new StringBuilder();
 		StringBuilder sbInit = new StringBuilder();
 
 		sbInit.append( getInitParams() );
 
+		String contentUrl = null;
 		if ( creationMethod == Methods.INSERT ) {
-			sbInit.append( Utils.createTextareaTag( instanceName, value, textareaAttributes ) );
+			if ( deferContent ) {
+				String currentValue = readValue();
+				contentUrl = EditorBootstrap.storeContent( request.getSession().getServletContext(), request, basePath, currentValue );
+				sbInit.append( Utils.createTextareaTag( instanceName, ( contentUrl != null ) ? "" : currentValue, textareaAttributes ) );
+			} else if ( valueSource != null ) {
+				out.write( sbInit.toString() );
+				sbInit.setLength( 0 );
+				Utils.writeTextareaTag( out, instanceName, valueSource, TextareaAttributes.of( textareaAttributes ) );
+			} else {
+				sbInit.append( Utils.createTextareaTag( instanceName, value, textareaAttributes ) );
+			}
 			// Change the creation method if the user requested inline editor
 			// to be built on a textarea element.
 			if ( isInline() ) {
@@ -413,59 +528,178 @@ public class CKEditor {
 			}
 		}
 
+		if ( inlineConfig ) {
+			config = DistributionConfig.inline( request.getSession().getServletContext(), basePath, config, globalConfig, request );
+		}
+		if ( removeUnusedPlugins ) {
+			config = PluginAnalyzer.removeUnusedPlugins( request.getSession().getServletContext(), basePath, config, globalConfig );
+		}
+		if ( aggregateContentsCss ) {
+			config = ContentsCssAggregator.aggregate( request.getSession().getServletContext(), basePath, config, globalConfig );
+		}
+		ToolbarPresets presets = ToolbarPresets.getInstance( request.getSession().getServletContext() );
+		config = presets.resolve( config );
+		globalConfig = presets.resolve( globalConfig );
+		config = ExternalizedValues.externalize( request.getSession().getServletContext(), basePath, config, globalConfig, request, sbInit );
+
 		if ( request.getAttribute( "ckeditor_disable_auto_inline_set" ) == null && creationMethod == Methods.INLINE ) {
 			sb.append( "CKEDITOR.disableAutoInline = true;\n" );
 			request.setAttribute( "ckeditor_disable_auto_inline_set", new Boolean( true ) );
 		}
 
-		sb.append( getStartMethodTemplate( creationMethod ) );
-		if ( !Utils.isStringEmpty( className )
-				&& ( ( config != null && !config.isEmpty() ) || ( globalConfig != null && !globalConfig.isEmpty() ) ) ) {
-			sb.append( "function(textarea, config) {\n" ).append( "	var classRegex = new RegExp('(?:^| )' + '" ).append( className )
-					.append( "' + '(?:$| )');\n" ).append( "	if (!classRegex.test(textarea.className))\n" ).append( "		return false;\n" )
-					.append( "CKEDITOR.tools.extend( config," );
+		if ( contentUrl != null ) {
+			if ( request.getAttribute( EditorBootstrap.LOADER_SET_ATTRIBUTE ) == null ) {
+				sb.append( EditorBootstrap.getLoaderRuntime() );
+				request.setAttribute( EditorBootstrap.LOADER_SET_ATTRIBUTE, new Boolean( true ) );
+			}
+			sb.append( EditorBootstrap.load( instanceName, contentUrl ) );
+		}
 
-			if ( globalConfig != null ) {
-				config = globalConfig.mergeConfigValues( config );
+		if ( activation != Activation.IMMEDIATE ) {
+			if ( request.getAttribute( EditorBootstrap.ACTIVATION_SET_ATTRIBUTE ) == null ) {
+				sb.append( EditorBootstrap.getActivationRuntime() );
+				request.setAttribute( EditorBootstrap.ACTIVATION_SET_ATTRIBUTE, new Boolean( true ) );
+			}
+			if ( batchSize > 0 ) {
+				sb.append( EditorBootstrap.setBatchSize( batchSize ) );
 			}
-			sb.append( Utils.jsEncode( config ) ).append( ", true);\n" ).append( "}\n" );
+			sb.append( getActivationCall( globalConfig ) );
 		} else {
-			if ( !Utils.isStringEmpty( className ) || !Utils.isStringEmpty( instanceName ) ) {
-				sb.append( "'" );
-				if ( !Utils.isStringEmpty( className ) ) {
-					sb.append( className );
-				} else {
-					sb.append( instanceName );
+			sb.append( getStartMethodTemplate( creationMethod ) );
+			if ( !Utils.isStringEmpty( className )
+					&& ( ( config != null && !config.isEmpty() ) || ( globalConfig != null && !globalConfig.isEmpty() ) ) ) {
+				sb.append( "function(textarea, config) {\n" ).append( "	var classRegex = new RegExp('(?:^| )' + '" ).append( className )
+						.append( "' + '(?:$| )');\n" ).append( "	if (!classRegex.test(textarea.className))\n" ).append( "		return false;\n" )
+						.append( "CKEDITOR.tools.extend( config," );
+
+				if ( globalConfig != null ) {
+					config = new CKEditorConfig().mergeConfigValues( globalConfig ).mergeConfigValues( config );
 				}
-				sb.append( "'" );
-
-				if ( config != null ) {
-					if ( globalConfig != null ) {
-						config = globalConfig.mergeConfigValues( config );
+				sb.append( Utils.jsEncode( config ) ).append( ", true);\n" ).append( "}\n" );
+			} else {
+				if ( !Utils.isStringEmpty( className ) || !Utils.isStringEmpty( instanceName ) ) {
+					sb.append( "'" );
+					if ( !Utils.isStringEmpty( className ) ) {
+						sb.append( className );
+					} else {
+						sb.append( instanceName );
 					}
+					sb.append( "'" );
 
-					if ( !config.isEmpty() ) {
-						sb.append( "," );
-						sb.append( Utils.jsEncode( config ) );
+					if ( config != null ) {
+						if ( globalConfig != null ) {
+							config = new CKEditorConfig().mergeConfigValues( globalConfig ).mergeConfigValues( config );
+						}
+
+						if ( !config.isEmpty() ) {
+							sb.append( "," );
+							sb.append( Utils.jsEncode( config ) );
+						}
 					}
 				}
 			}
+			sb.append( ");\n" );
 		}
-		sb.append( ");\n" );
 
 		if ( ( creationMethod == Methods.INLINE_ALL || ( Utils.isStringEmpty( className ) && creationMethod == Methods.REPLACE_ALL ) )
 				&& globalConfig != null && !globalConfig.isEmpty() ) {
 			sb.append( "CKEDITOR.tools.extend( CKEDITOR.config," ).append( Utils.jsEncode( globalConfig ) ).append( ", true);" );
 		}
 
-		return ( sbInit.append( Utils.script( sb.toString() ) ) ).toString();
+		out.write( ( sbInit.append( Utils.script( sb.toString() ) ) ).toString() );
+	}
+
+	/**
+	 * Returns the initial value of the editor, reading it from the value source if one is set.
+	 * 
+	 * @return the initial HTML value for the editor.
+	 * @throws IOException
+	 *         if the value source cannot be read.
+	 */
+	private String readValue() throws IOException {
+		return ( valueSource != null ) ? valueSource.read() : value;
+	}
+
+	/**
+	 * Creates the static HTML representation of this editor instance. The value is displayed directly in a {@code <div>} element styled
+	 * with the editor content stylesheets, so neither {@code ckeditor.js} nor an editor instance is loaded. If the {@code upgradeOnClick}
+	 * flag is set, a small script which creates the editor on the first click is added.
+	 * 
+	 * @param htmlValue
+	 *        the value to display.
+	 * @return the static HTML representation of this editor instance.
+	 * @see #setReadOnlyStatic(boolean)
+	 */
+	private String getStaticHtml( final String htmlValue ) {
+		if ( events != null ) {
+			if ( config == null ) {
+				config = new CKEditorConfig();
+			}
+			config = config.configSettings( this.events );
+		}
+		CKEditorConfig globalConfig = getGlobalConfig();
+		if ( globalConfig != null ) {
+			config = new CKEditorConfig().mergeConfigValues( globalConfig ).mergeConfigValues( config );
+		}
+		config = ToolbarPresets.getInstance( request.getSession().getServletContext() ).resolve( config );
+
+		@SuppressWarnings( "unchecked" ) Set< String > linked = ( Set< String > ) request
+				.getAttribute( EditorBootstrap.STATIC_CSS_ATTRIBUTE );
+		if ( linked == null ) {
+			linked = new HashSet< String >();
+			request.setAttribute( EditorBootstrap.STATIC_CSS_ATTRIBUTE, linked );
+		}
+		StringBuilder sb = new StringBuilder( EditorBootstrap.createStaticContent( instanceName, htmlValue,
+				ContentsCssAggregator.getStaticStylesheets( request.getSession().getServletContext(), basePath, config ), linked ) );
+		if ( upgradeOnClick ) {
+			StringBuilder script = new StringBuilder();
+			if ( request.getAttribute( EditorBootstrap.UPGRADE_SET_ATTRIBUTE ) == null ) {
+				script.append( EditorBootstrap.getUpgradeRuntime() );
+				request.setAttribute( EditorBootstrap.UPGRADE_SET_ATTRIBUTE, new Boolean( true ) );
+			}
+			script.append( EditorBootstrap.upgrade( instanceName, isInline() ? "inline" : "replace", config, basePath, getTimestamp() ) );
+			sb.append( Utils.script( script.toString() ) );
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Creates the JavaScript call which defers the creation of editor instances until they are activated. The configuration passed to the
+	 * call is the same as the one used by the standard creation methods, so editors behave identically once activated.
+	 * 
+	 * @param globalConfig
+	 *        the global configuration object or {@code null} if there is none.
+	 * @return a string representing the JavaScript call.
+	 * @see Activation
+	 */
+	private String getActivationCall( final CKEditorConfig globalConfig ) {
+		int order = EditorBootstrap.nextOrder( request );
+		switch ( creationMethod ) {
+			case REPLACE_ALL:
+				if ( Utils.isStringEmpty( className ) ) {
+					return EditorBootstrap.activateAll( "replace", null, null, activation, order );
+				}
+				if ( globalConfig != null ) {
+					config = new CKEditorConfig().mergeConfigValues( globalConfig ).mergeConfigValues( config );
+				}
+				return EditorBootstrap.activateAll( "replace", className, config, activation, order );
+			case INLINE_ALL:
+				return EditorBootstrap.activateAll( "inline", null, null, activation, order );
+			default:
+				if ( config != null && globalConfig != null ) {
+					config = new CKEditorConfig().mergeConfigValues( globalConfig ).mergeConfigValues( config );
+				}
+				return EditorBootstrap.activate( instanceName, creationMethod == Methods.INLINE ? "inline" : "replace", config, activation,
+						order );
+		}
 	}
 
 	/**
 	 * Creates a string representing a set of CKEditor JavaScript base parameters.<br>
 	 * These parameters include:
 	 * <ul>
-	 * <li>The {@code script} tag pointing to an external {@code ckeditor.js} file.</li>
+	 * <li>The {@code script} tag pointing to an external {@code ckeditor.js} file or to a script bundle if editor configurations were
+	 * registered with {@link CKEditorBundles}.</li>
 	 * <li>The {@code window.CKEDITOR_BASEPATH} if an absolute path to the CKEditor folder was provided.</li>
 	 * <li>The {@code window.CKEDITOR.timestamp} if a timestamp string was provided.</li>
 	 * </ul>
@@ -496,8 +730,13 @@ public class CKEditor {
 		StringBuilder sb = new StringBuilder();
 		if ( !initialized && request.getAttribute( "ckeditor_initialized" ) == null ) {
 			String args = "";
-			if ( !Utils.isStringEmpty( timestamp ) ) {
-				args += "?t=" + timestamp;
+			String currentTimestamp = getTimestamp();
+			String bundleId = CKEditorBundles.findBundleId( request.getSession().getServletContext(), config );
+			if ( bundleId != null ) {
+				args += "?b=" + bundleId;
+			}
+			if ( !Utils.isStringEmpty( currentTimestamp ) ) {
+				args += ( args.length() > 0 ? "&t=" : "?t=" ) + currentTimestamp;
 			}
 			if ( !Utils.isStringEmpty( basePath ) ) {
 				if ( !basePath.startsWith( ".." ) && !basePath.startsWith( "./" ) ) {
@@ -508,9 +747,9 @@ public class CKEditor {
 
 			}
 
-			if ( !Utils.isStringEmpty( timestamp ) ) {
+			if ( !Utils.isStringEmpty( currentTimestamp ) ) {
 				sb.append( ( sb.length() > 0 ) ? "\n" : "" ).append(
-						Utils.script( new StringBuilder( "CKEDITOR.timestamp='" ).append( timestamp ).append( "';\n" ).toString() ) );
+						Utils.script( new StringBuilder( "CKEDITOR.timestamp='" ).append( currentTimestamp ).append( "';\n" ).toString() ) );
 			}
 			request.setAttribute( "ckeditor_initialized", new Boolean( true ) );
 		}
@@ -635,7 +874,7 @@ public class CKEditor {
 	 * 
 	 * @return the {@code Map} of {@code <textarea>} attributes.
 	 */
-	public HashMap< String, String > getTextareaAttributes() {
+	public Map< String, String > getTextareaAttributes() {
 		return textareaAttributes;
 	}
 
@@ -648,9 +887,11 @@ public class CKEditor {
 	 * {@code disabled} and {@code form}.
 	 * 
 	 * @param textareaAttributes
-	 *        the {@code Map} of {@code <textarea>} attributes.
+	 *        the {@code Map} of {@code <textarea>} attributes. It is not modified. Other maps are rendered on every call of
+	 *        {@link #writeHtml(Writer)}, so attributes shared by many editors should be passed as a {@link TextareaAttributes} object,
+	 *        which is rendered once.
 	 */
-	public void setTextareaAttributes( HashMap< String, String > textareaAttributes ) {
+	public void setTextareaAttributes( Map< String, String > textareaAttributes ) {
 		this.textareaAttributes = textareaAttributes;
 	}
 
@@ -713,6 +954,28 @@ public class CKEditor {
 		this.value = value;
 	}
 
+	/**
+	 * Returns the source of the initial CKEditor value.
+	 * 
+	 * @return the {@code ValueSource} object or {@code null} if the value is set as a string.
+	 */
+	public ValueSource getValueSource() {
+		return valueSource;
+	}
+
+	/**
+	 * Sets the source of the initial CKEditor value, used instead of the value set with {@link #setValue(String)}. The value is streamed
+	 * into the {@code <textarea>} element by {@link #writeHtml(Writer)}, so large documents do not have to be loaded into a
+	 * {@code String}. It is only read as a whole in the {@code readOnlyStatic} and {@code deferContent} modes, and by
+	 * {@link #toString()}, which builds the whole HTML in memory.
+	 * 
+	 * @param valueSource
+	 *        the source of the initial HTML value for the editor.
+	 */
+	public void setValueSource( final ValueSource valueSource ) {
+		this.valueSource = valueSource;
+	}
+
 	/**
 	 * Returns the full or relative path to the CKEditor installation directory. If a full path is used, the JavaScript
 	 * {@code CKEDITOR_BASEPATH} global variable will be inserted into JSP.
@@ -740,18 +1003,26 @@ public class CKEditor {
 	 * Returns the timestamp value which is used to build the URL for all resources loaded by the editor code, guaranteeing clean cache
 	 * results when upgrading.
 	 * 
-	 * @return a string of characters representing a timestamp.
+	 * @return a string of characters representing a timestamp. If the timestamp is set to {@code auto}, the timestamp computed from the
+	 *         content of the CKEditor directory is returned.
 	 */
 	public String getTimestamp() {
+		if ( DistributionDigest.AUTO.equalsIgnoreCase( timestamp ) ) {
+			return DistributionDigest.getTimestamp( request.getSession().getServletContext(), basePath );
+		}
 		return timestamp;
 	}
 
 	/**
 	 * Sets the timestamp value which is used to build the URL for all resources loaded by the editor code, guaranteeing clean cache results
 	 * when upgrading.
+	 * <p>
+	 * If set to {@code auto}, the timestamp is computed from the content of the CKEditor directory, so it changes whenever the distribution
+	 * changes. The directory is found through the base path or, if the files are served by the {@code CKEditorAssetServlet}, through the
+	 * servlet.
 	 * 
 	 * @param timestamp
-	 *        a string of characters representing a timestamp.
+	 *        a string of characters representing a timestamp or {@code auto}.
 	 */
 	public void setTimestamp( final String timestamp ) {
 		this.timestamp = timestamp;
@@ -799,6 +1070,178 @@ public class CKEditor {
 		this.globalEvents = globalEvents;
 	}
 
+	/**
+	 * Returns the {@code Enum} marker indicating when editor instances should be created on the client side.
+	 * 
+	 * @return the {@code Enum} marker representing the activation mode.
+	 */
+	public Activation getActivation() {
+		return activation;
+	}
+
+	/**
+	 * Sets the {@code Enum} marker indicating when editor instances should be created on the client side. With a mode other than
+	 * {@code Activation.IMMEDIATE} only lightweight elements and a small bootstrap script are inserted into JSP, and the editor is created
+	 * once its element scrolls into view or receives focus, or in the next scheduled batch.
+	 * 
+	 * @param activation
+	 *        the {@code Enum} marker representing the activation mode.
+	 */
+	public void setActivation( final Activation activation ) {
+		this.activation = ( activation == null ) ? Activation.IMMEDIATE : activation;
+	}
+
+	/**
+	 * Returns the number of scheduled editor instances created in a single batch.
+	 * 
+	 * @return the batch size or {@code 0} if the client-side default is used.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of scheduled editor instances created in a single batch. The value applies to all scheduled editors on the page and
+	 * is only used with the {@code Activation.SCHEDULED} mode.
+	 * 
+	 * @param batchSize
+	 *        the number of editor instances created in a single batch.
+	 */
+	public void setBatchSize( final int batchSize ) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns a flag indicating whether the value is displayed as static HTML instead of creating a read-only editor.
+	 * 
+	 * @return {@code true} if static HTML is displayed, {@code false} otherwise.
+	 */
+	public boolean isReadOnlyStatic() {
+		return readOnlyStatic;
+	}
+
+	/**
+	 * Sets a flag indicating whether the value should be displayed as static HTML instead of creating a read-only editor. In this mode
+	 * neither {@code ckeditor.js} nor any editor creation code is inserted into JSP. It applies to editors created with the
+	 * {@code Methods.INSERT} creation method only. <strong>Security:</strong> the value is
+	 * inserted into the page without any filtering and the Advanced Content Filter of the editor does not apply, so scripts and event
+	 * handlers stored in it are executed by the browser. Values which may come from untrusted users have to be sanitized on the server
+	 * before they are displayed in this mode. Content stylesheets are scoped to the static element through a stylesheet generated by the
+	 * {@code CKEditorAssetServlet}; without the servlet they are not linked.
+	 * 
+	 * @param readOnlyStatic
+	 *        a Boolean flag indicating whether static HTML should be displayed.
+	 */
+	public void setReadOnlyStatic( final boolean readOnlyStatic ) {
+		this.readOnlyStatic = readOnlyStatic;
+	}
+
+	/**
+	 * Returns a flag indicating whether static HTML is upgraded to an editor instance when clicked.
+	 * 
+	 * @return {@code true} if static HTML is upgraded on click, {@code false} otherwise.
+	 */
+	public boolean isUpgradeOnClick() {
+		return upgradeOnClick;
+	}
+
+	/**
+	 * Sets a flag indicating whether static HTML displayed in the {@code readOnlyStatic} mode should be upgraded to an editor instance when
+	 * clicked. The editor is created with the same configuration as it would be without the {@code readOnlyStatic} mode.
+	 * 
+	 * @param upgradeOnClick
+	 *        a Boolean flag indicating whether static HTML should be upgraded to an editor.
+	 */
+	public void setUpgradeOnClick( final boolean upgradeOnClick ) {
+		this.upgradeOnClick = upgradeOnClick;
+	}
+
+	/**
+	 * Returns a flag indicating whether plugins unused by the toolbar are removed.
+	 * 
+	 * @return {@code true} if unused plugins are added to {@code removePlugins}, {@code false} otherwise.
+	 */
+	public boolean isRemoveUnusedPlugins() {
+		return removeUnusedPlugins;
+	}
+
+	/**
+	 * Sets a flag indicating whether plugins unused by the toolbar should be removed. If set, plugins which provide toolbar items, have none
+	 * of their items in the {@code toolbar} list and are not required by other plugins are added to {@code removePlugins}. The analysis
+	 * needs access to the CKEditor directory and is cached per configuration.
+	 * 
+	 * @param removeUnusedPlugins
+	 *        a Boolean flag indicating whether unused plugins should be removed.
+	 */
+	public void setRemoveUnusedPlugins( final boolean removeUnusedPlugins ) {
+		this.removeUnusedPlugins = removeUnusedPlugins;
+	}
+
+	/**
+	 * Returns a flag indicating whether the settings of {@code config.js} and {@code styles.js} are sent inline with the configuration.
+	 * 
+	 * @return {@code true} if the distribution configuration is inlined, {@code false} otherwise.
+	 */
+	public boolean isInlineConfig() {
+		return inlineConfig;
+	}
+
+	/**
+	 * Sets a flag indicating whether the settings of {@code config.js} and {@code styles.js} should be sent inline with the configuration.
+	 * If set, the files are read from the CKEditor directory once, their settings are merged into the configuration and
+	 * {@code customConfig} is set to an empty string, so the editor does not request them. The language preferred by the client is also
+	 * resolved from the {@code Accept-Language} header unless set in the configuration.
+	 * 
+	 * @param inlineConfig
+	 *        a Boolean flag indicating whether the distribution configuration should be inlined.
+	 */
+	public void setInlineConfig( final boolean inlineConfig ) {
+		this.inlineConfig = inlineConfig;
+	}
+
+	/**
+	 * Returns a flag indicating whether the {@code contentsCss} stylesheets are aggregated.
+	 * 
+	 * @return {@code true} if the stylesheets are aggregated, {@code false} otherwise.
+	 */
+	public boolean isAggregateContentsCss() {
+		return aggregateContentsCss;
+	}
+
+	/**
+	 * Sets a flag indicating whether the {@code contentsCss} stylesheets should be aggregated. If set, the stylesheets are combined into a
+	 * single minified stylesheet served by the {@code CKEditorAssetServlet}, which has to be mapped to the base path, and
+	 * {@code contentsCss} is changed to point at it.
+	 * 
+	 * @param aggregateContentsCss
+	 *        a Boolean flag indicating whether the stylesheets should be aggregated.
+	 */
+	public void setAggregateContentsCss( final boolean aggregateContentsCss ) {
+		this.aggregateContentsCss = aggregateContentsCss;
+	}
+
+	/**
+	 * Returns a flag indicating whether the value is loaded out of band.
+	 * 
+	 * @return {@code true} if the value is loaded out of band, {@code false} otherwise.
+	 */
+	public boolean isDeferContent() {
+		return deferContent;
+	}
+
+	/**
+	 * Sets a flag indicating whether the value should be loaded out of band. It is used with the {@code Methods.INSERT} creation method.
+	 * If set, an empty {@code <textarea>} element is inserted into JSP and the value is downloaded by a small script from the
+	 * {@code CKEditorAssetServlet}, which has to be mapped to the base path. The value is served only to the HTTP session which rendered
+	 * the editor and is never stored by shared caches. If the servlet is not running, the value is inserted into JSP as usual.
+	 * 
+	 * @param deferContent
+	 *        a Boolean flag indicating whether the value should be loaded out of band.
+	 */
+	public void setDeferContent( final boolean deferContent ) {
+		this.deferContent = deferContent;
+	}
+
 	/**
 	 * Returns a flag informing the {@code CKEditor} object whether base parameters like the {@code ckeditor.js} script have already been
 	 * inserted into JSP.
@@ -0,0 +1,731 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The {@code CKEditorAssetServlet} class serves the files of the CKEditor distribution, either from a directory or from the classpath (for
+ * example from a WebJar). It supports conditional requests ({@code ETag} and {@code Last-Modified}) and single byte ranges. Files are
+ * streamed in small chunks, so they are never loaded into memory as a whole.
+ * <p>
+ * Requests carrying the {@code t} parameter, which CKEditor tags append when a timestamp is set, are answered with a far-future
+ * {@code Cache-Control: immutable} header. Other requests are revalidated after {@code maxAge} seconds.
+ * <p>
+ * When files are served from a directory, the servlet computes the hash of the distribution at startup and registers it for CKEditor
+ * tags using {@code timestamp="auto"}.
+ * <p>
+ * The servlet also serves resources generated by CKEditor tags, such as the stylesheet created by the {@code aggregateContentsCss}
+ * attribute. Their names contain the hash of their content, so they are always sent with a far-future {@code Cache-Control} header.
+ * Editor contents loaded out of band (see the {@code deferContent} attribute) are served only to the session which rendered them and
+ * are sent with {@code Cache-Control: private, no-cache}, so shared caches never store them and browsers revalidate them with the
+ * {@code ETag}. Generated resources are compressed in memory and sent with gzip to clients accepting it.
+ * <p>
+ * The servlet should be mapped to the path used as the {@code basePath} of CKEditor tags.<br>
+ * <strong>Usage in web.xml:</strong>
+ * 
+ * <pre>
+ * &lt;servlet&gt;
+ * 	&lt;servlet-name&gt;ckeditor&lt;/servlet-name&gt;
+ * 	&lt;servlet-class&gt;com.ckeditor.CKEditorAssetServlet&lt;/servlet-class&gt;
+ * 	&lt;init-param&gt;
+ * 		&lt;param-name&gt;classpath&lt;/param-name&gt;
+ * 		&lt;param-value&gt;META-INF/resources/webjars/ckeditor/4.5.11/standard&lt;/param-value&gt;
+ * 	&lt;/init-param&gt;
+ * &lt;/servlet&gt;
+ * &lt;servlet-mapping&gt;
+ * 	&lt;servlet-name&gt;ckeditor&lt;/servlet-name&gt;
+ * 	&lt;url-pattern&gt;/ckeditor/*&lt;/url-pattern&gt;
+ * &lt;/servlet-mapping&gt;
+ * </pre>
+ * 
+ * Supported initialization parameters:
+ * <ul>
+ * <li>{@code directory} &ndash; the CKEditor directory. A path inside the web application is resolved with
+ * {@code ServletContext.getRealPath}, otherwise it is treated as a file system path.</li>
+ * <li>{@code classpath} &ndash; the classpath location of the CKEditor distribution. Used when {@code directory} is not set.</li>
+ * <li>{@code maxAge} &ndash; the number of seconds for which responses to requests without the {@code t} parameter may be cached. The
+ * default value is {@code 0}.</li>
+ * <li>{@code precompress} &ndash; if set to {@code true}, gzip variants of text files are created at startup and sent to clients which
+ * accept the gzip encoding. Only supported together with {@code directory}.</li>
+ * <li>{@code precompressCache} &ndash; the directory storing gzip variants. Variants are kept under the hash of the original content,
+ * so they are reused after a restart. Variants of files which were removed or changed are deleted at startup, so the directory should
+ * not be shared by servlets serving different CKEditor directories. The default value is the {@code ckeditor-gzip} subdirectory of the
+ * web application temporary directory.</li>
+ * <li>{@code bundleCacheSize} &ndash; the maximum number of bytes of script bundles (see {@link CKEditorBundles}) kept in memory. Bundles
+ * evicted from the cache are built again when requested. The default value is {@code 4194304}.</li>
+ * <li>{@code bundleOffHeap} &ndash; if set to {@code true}, script bundles are kept in direct buffers outside of the Java heap.</li>
+ * <li>{@code contentCacheSize} &ndash; the maximum number of bytes of editor contents loaded out of band (see the {@code deferContent}
+ * attribute) kept in memory. The default value is {@code 33554432}.</li>
+ * <li>{@code dataCacheSize} &ndash; the maximum number of bytes of scripts with externalized configuration values (see
+ * {@link CKEditorConfig#externalizeConfigValue(String)}) kept in memory. Evicted scripts are stored again when an editor refers to them.
+ * The default value is {@code 16777216}.</li>
+ * </ul>
+ */
+public class CKEditorAssetServlet extends HttpServlet {
+
+	/**
+	 * Private logger.
+	 */
+	private static final Logger ckeditorAssetServletLogger = Logger.getLogger( CKEditorAssetServlet.class.getName() );
+	/**
+	 * Serial identifier.
+	 */
+	private static final long serialVersionUID = 2807261483593421052L;
+	/**
+	 * Value of the {@code Cache-Control} header sent for requests carrying the {@code t} parameter.
+	 */
+	private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+	/**
+	 * Value of the {@code Cache-Control} header sent with editor contents, which are private to a user.
+	 */
+	private static final String CONTENT_CACHE_CONTROL = "private, no-cache";
+	/**
+	 * Default maximum number of bytes of cached script bundles.
+	 */
+	private static final long DEFAULT_BUNDLE_CACHE_SIZE = 4L * 1024 * 1024;
+	/**
+	 * CKEditor installation directory or {@code null} if the distribution is read from the classpath.
+	 */
+	private File directory;
+	/**
+	 * Classpath location of the CKEditor distribution (with a slash at the end) or {@code null} if it is read from a directory.
+	 */
+	private String classpath;
+	/**
+	 * Value of the {@code Cache-Control} header sent for requests without the {@code t} parameter.
+	 */
+	private String cacheControl;
+	/**
+	 * Assets read from the classpath. Classpath resources do not change while the application is running, so they are read only once.
+	 */
+	private final ConcurrentMap< String, Asset > classpathAssets = new ConcurrentHashMap< String, Asset >();
+	/**
+	 * Source of gzip variants or {@code null} if precompression is disabled.
+	 */
+	private AssetPrecompressor precompressor;
+	/**
+	 * Script bundles by identifier.
+	 */
+	private LruCache< String, Asset > bundles;
+	/**
+	 * Flag indicating whether script bundles are kept outside of the Java heap.
+	 */
+	private boolean bundleOffHeap;
+	/**
+	 * Resources generated by CKEditor tags, such as aggregated stylesheets.
+	 */
+	private GeneratedAssets generatedAssets;
+
+	/**
+	 * Reads the initialization parameters of the servlet.
+	 * 
+	 * @throws ServletException
+	 *         if neither the {@code directory} nor the {@code classpath} parameter points to an existing location or if the
+	 *         {@code maxAge}, {@code bundleCacheSize}, {@code contentCacheSize} or {@code dataCacheSize} parameter is not a number.
+	 */
+	@Override
+	public void init() throws ServletException {
+		String dir = getInitParameter( "directory" );
+		String cp = getInitParameter( "classpath" );
+		if ( !Utils.isStringEmpty( dir ) ) {
+			String realPath = getServletContext().getRealPath( dir );
+			directory = ( realPath != null && new File( realPath ).isDirectory() ) ? new File( realPath ) : new File( dir );
+			if ( !directory.isDirectory() ) {
+				throw new ServletException( "CKEditor directory does not exist: " + dir );
+			}
+		} else if ( !Utils.isStringEmpty( cp ) ) {
+			classpath = Utils.appendSlash( cp.startsWith( "/" ) ? cp.substring( 1 ) : cp );
+		} else {
+			throw new ServletException( "Either the directory or the classpath parameter has to be set." );
+		}
+		String maxAge = getInitParameter( "maxAge" );
+		try {
+			int seconds = Utils.isStringEmpty( maxAge ) ? 0 : Integer.parseInt( maxAge.trim() );
+			cacheControl = "public, max-age=" + seconds + ", must-revalidate";
+		} catch ( NumberFormatException e ) {
+			throw new ServletException( "Invalid maxAge parameter: " + maxAge, e );
+		}
+		if ( directory != null ) {
+			getServletContext().setAttribute( DistributionDigest.DIRECTORY_ATTRIBUTE, directory );
+			String timestamp = DistributionDigest.getTimestamp( directory, DistributionDigest.getStateDirectory( getServletContext() ) );
+			if ( timestamp != null ) {
+				getServletContext().setAttribute( DistributionDigest.TIMESTAMP_ATTRIBUTE, timestamp );
+			}
+		}
+		if ( Boolean.parseBoolean( getInitParameter( "precompress" ) ) ) {
+			if ( directory == null ) {
+				ckeditorAssetServletLogger.warning( "The precompress parameter is only supported together with the directory parameter." );
+			} else {
+				precompress();
+			}
+		}
+		String bundleCacheSize = getInitParameter( "bundleCacheSize" );
+		try {
+			long size = Utils.isStringEmpty( bundleCacheSize ) ? DEFAULT_BUNDLE_CACHE_SIZE : Long.parseLong( bundleCacheSize.trim() );
+			bundles = new LruCache< String, Asset >( size, new LruCache.Weigher< Asset >() {
+				public long weigh( final Asset asset ) {
+					return asset.getLength();
+				}
+			} );
+		} catch ( NumberFormatException e ) {
+			throw new ServletException( "Invalid bundleCacheSize parameter: " + bundleCacheSize, e );
+		}
+		bundleOffHeap = Boolean.parseBoolean( getInitParameter( "bundleOffHeap" ) );
+		buildBundles();
+		String contentCacheSize = getInitParameter( "contentCacheSize" );
+		long contentCacheLimit;
+		try {
+			contentCacheLimit = Utils.isStringEmpty( contentCacheSize ) ? GeneratedAssets.DEFAULT_CONTENT_CACHE_SIZE : Long
+					.parseLong( contentCacheSize.trim() );
+		} catch ( NumberFormatException e ) {
+			throw new ServletException( "Invalid contentCacheSize parameter: " + contentCacheSize, e );
+		}
+		String dataCacheSize = getInitParameter( "dataCacheSize" );
+		long dataCacheLimit;
+		try {
+			dataCacheLimit = Utils.isStringEmpty( dataCacheSize ) ? GeneratedAssets.DEFAULT_DATA_CACHE_SIZE : Long.parseLong( dataCacheSize
+					.trim() );
+		} catch ( NumberFormatException e ) {
+			throw new ServletException( "Invalid dataCacheSize parameter: " + dataCacheSize, e );
+		}
+		generatedAssets = GeneratedAssets.create( getServletContext(), contentCacheLimit, dataCacheLimit );
+	}
+
+	/**
+	 * Serves the requested asset.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @param response
+	 *        the current response.
+	 * @throws IOException
+	 *         if the asset cannot be read or sent.
+	 */
+	@Override
+	protected void doGet( final HttpServletRequest request, final HttpServletResponse response ) throws IOException {
+		String path = request.getPathInfo();
+		if ( GeneratedAssets.isContentPath( path ) ) {
+			String owner = GeneratedAssets.getContentOwner( request.getSession( false ), false );
+			Asset content = generatedAssets.getContent( path, owner );
+			if ( content == null ) {
+				response.sendError( HttpServletResponse.SC_NOT_FOUND );
+				return;
+			}
+			serve( request, response, selectVariant( request, response, content, generatedAssets.getContentGzipVariant( path, owner ) ),
+					CONTENT_CACHE_CONTROL );
+			return;
+		}
+		Asset generated = generatedAssets.get( path );
+		if ( generated != null ) {
+			serve( request, response, selectVariant( request, response, generated, generatedAssets.getGzipVariant( path ) ),
+					IMMUTABLE_CACHE_CONTROL );
+			return;
+		}
+		String bundleId = request.getParameter( "b" );
+		if ( bundleId != null && "/ckeditor.js".equals( path ) ) {
+			Asset bundle = findBundle( bundleId );
+			if ( bundle != null ) {
+				serve( request, response, bundle );
+				return;
+			}
+		}
+		Asset asset = findAsset( path );
+		if ( asset == null ) {
+			response.sendError( HttpServletResponse.SC_NOT_FOUND );
+			return;
+		}
+		serve( request, response, selectVariant( request, response, asset, findGzipVariant( path, asset ) ) );
+	}
+
+	/**
+	 * Chooses between the asset and its gzip variant based on the {@code Accept-Encoding} header and sets the response headers
+	 * describing the choice.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @param response
+	 *        the current response.
+	 * @param asset
+	 *        the original asset.
+	 * @param variant
+	 *        the gzip variant of the asset or {@code null} if there is none.
+	 * @return the asset to send.
+	 */
+	private static Asset selectVariant( final HttpServletRequest request, final HttpServletResponse response, final Asset asset,
+			final Asset variant ) {
+		if ( variant == null ) {
+			return asset;
+		}
+		response.setHeader( "Vary", "Accept-Encoding" );
+		if ( acceptsGzip( request ) ) {
+			response.setHeader( "Content-Encoding", "gzip" );
+			return variant;
+		}
+		return asset;
+	}
+
+	/**
+	 * Sends the asset to the client, taking conditional and range headers into account.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @param response
+	 *        the current response.
+	 * @param asset
+	 *        the asset to send.
+	 * @throws IOException
+	 *         if the asset cannot be read or sent.
+	 */
+	void serve( final HttpServletRequest request, final HttpServletResponse response, final Asset asset ) throws IOException {
+		serve( request, response, asset, ( request.getParameter( "t" ) != null ) ? IMMUTABLE_CACHE_CONTROL : cacheControl );
+	}
+
+	/**
+	 * Sends the asset to the client, taking conditional and range headers into account.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @param response
+	 *        the current response.
+	 * @param asset
+	 *        the asset to send.
+	 * @param cacheControlHeader
+	 *        the value of the {@code Cache-Control} header.
+	 * @throws IOException
+	 *         if the asset cannot be read or sent.
+	 */
+	void serve( final HttpServletRequest request, final HttpServletResponse response, final Asset asset, final String cacheControlHeader )
+			throws IOException {
+		response.setHeader( "Cache-Control", cacheControlHeader );
+		response.setHeader( "ETag", asset.getETag() );
+		response.setDateHeader( "Last-Modified", asset.getLastModified() );
+		response.setHeader( "Accept-Ranges", "bytes" );
+
+		if ( isNotModified( request, asset ) ) {
+			response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+			return;
+		}
+
+		long length = asset.getLength();
+		long start = 0;
+		long end = length - 1;
+		String range = request.getHeader( "Range" );
+		if ( range != null && isRangeApplicable( request, asset ) ) {
+			long[] bounds = parseRange( range, length );
+			if ( bounds == null ) {
+				response.setHeader( "Content-Range", "bytes */" + length );
+				response.sendError( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
+				return;
+			}
+			if ( bounds.length == 2 ) {
+				start = bounds[ 0 ];
+				end = bounds[ 1 ];
+				response.setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+				response.setHeader( "Content-Range", "bytes " + start + "-" + end + "/" + length );
+			}
+		}
+
+		response.setContentType( getContentType( asset.getName() ) );
+		setContentLength( response, end - start + 1 );
+		if ( !"HEAD".equals( request.getMethod() ) && end >= start ) {
+			OutputStream out = response.getOutputStream();
+			asset.writeTo( out, start, end - start + 1 );
+			out.flush();
+		}
+	}
+
+	/**
+	 * Returns the asset stored under the given path of the CKEditor distribution.
+	 * 
+	 * @param path
+	 *        the path of the asset relative to the CKEditor directory.
+	 * @return the {@code Asset} object or {@code null} if there is no such asset.
+	 * @throws IOException
+	 *         if the asset cannot be read from the classpath.
+	 */
+	Asset findAsset( final String path ) throws IOException {
+		if ( !isSafePath( path ) ) {
+			return null;
+		}
+		if ( directory != null ) {
+			File file = new File( directory, path.substring( 1 ) );
+			return file.isFile() ? Asset.forFile( path, file ) : null;
+		}
+		Asset asset = classpathAssets.get( path );
+		if ( asset == null ) {
+			asset = readClasspathAsset( path );
+			if ( asset != null ) {
+				Asset previous = classpathAssets.putIfAbsent( path, asset );
+				asset = ( previous != null ) ? previous : asset;
+			}
+		}
+		return asset;
+	}
+
+	/**
+	 * Returns the CKEditor installation directory.
+	 * 
+	 * @return the CKEditor directory or {@code null} if the distribution is read from the classpath.
+	 */
+	File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the gzip variant of an asset created by the precompressor.
+	 * 
+	 * @param path
+	 *        the path of the asset relative to the CKEditor directory.
+	 * @param asset
+	 *        the original asset.
+	 * @return the gzip variant or {@code null} if there is none or the original file changed since it was compressed.
+	 */
+	Asset findGzipVariant( final String path, final Asset asset ) {
+		if ( precompressor == null ) {
+			return null;
+		}
+		File variant = precompressor.getVariant( path, new File( directory, path.substring( 1 ) ) );
+		return variant != null ? Asset.forEncodedFile( asset, variant, "gzip" ) : null;
+	}
+
+	/**
+	 * Returns a script bundle, building it from the CKEditor distribution if it is not cached.
+	 * 
+	 * @param id
+	 *        the bundle identifier.
+	 * @return the bundle or {@code null} if there is no such bundle.
+	 * @throws IOException
+	 *         if a file of the bundle cannot be read.
+	 */
+	Asset findBundle( final String id ) throws IOException {
+		Asset bundle = bundles.get( id );
+		if ( bundle != null ) {
+			return bundle;
+		}
+		CKEditorBundles registry = CKEditorBundles.getInstance( getServletContext(), false );
+		List< String > paths = ( registry != null ) ? registry.getBundlePaths( id ) : null;
+		if ( paths == null ) {
+			return null;
+		}
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		long lastModified = 0;
+		for ( String path : paths ) {
+			Asset part = findAsset( path );
+			if ( part != null ) {
+				part.writeTo( data, 0, part.getLength() );
+				data.write( '\n' );
+				lastModified = Math.max( lastModified, part.getLastModified() );
+			}
+		}
+		bundle = Asset.forBytes( "ckeditor.js", data.toByteArray(), lastModified, bundleOffHeap );
+		bundles.put( id, bundle );
+		return bundle;
+	}
+
+	/**
+	 * Builds the script bundles derived from the registered editor configurations. Failures are logged; such bundles are built again when
+	 * requested.
+	 */
+	private void buildBundles() {
+		CKEditorBundles registry = CKEditorBundles.getInstance( getServletContext(), false );
+		if ( registry == null ) {
+			return;
+		}
+		for ( String id : registry.getBundleIds().values() ) {
+			try {
+				Asset bundle = findBundle( id );
+				ckeditorAssetServletLogger.info( "Built CKEditor bundle " + id + " (" + bundle.getLength() + " bytes)." );
+			} catch ( IOException e ) {
+				ckeditorAssetServletLogger.log( Level.WARNING, "Could not build CKEditor bundle " + id, e );
+			}
+		}
+	}
+
+	/**
+	 * Creates gzip variants of the CKEditor distribution. Failures are logged and leave precompression disabled, so the servlet still
+	 * serves uncompressed files.
+	 */
+	private void precompress() {
+		String cache = getInitParameter( "precompressCache" );
+		File cacheDirectory;
+		if ( !Utils.isStringEmpty( cache ) ) {
+			cacheDirectory = new File( cache );
+		} else {
+			File tempDir = ( File ) getServletContext().getAttribute( "javax.servlet.context.tempdir" );
+			cacheDirectory = new File( tempDir != null ? tempDir : new File( System.getProperty( "java.io.tmpdir" ) ), "ckeditor-gzip" );
+		}
+		AssetPrecompressor candidate = new AssetPrecompressor( directory, cacheDirectory );
+		try {
+			candidate.run( Runtime.getRuntime().availableProcessors() );
+			precompressor = candidate;
+		} catch ( IOException e ) {
+			ckeditorAssetServletLogger.log( Level.WARNING, "Could not precompress CKEditor files.", e );
+		}
+	}
+
+	/**
+	 * Checks whether the client accepts the gzip content encoding.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @return {@code true} if the {@code Accept-Encoding} header allows gzip, {@code false} otherwise.
+	 */
+	private static boolean acceptsGzip( final HttpServletRequest request ) {
+		String header = request.getHeader( "Accept-Encoding" );
+		if ( header == null ) {
+			return false;
+		}
+		for ( String coding : header.split( "," ) ) {
+			String[] parts = coding.split( ";" );
+			String name = parts[ 0 ].trim().toLowerCase( Locale.ENGLISH );
+			if ( "gzip".equals( name ) || "x-gzip".equals( name ) || "*".equals( name ) ) {
+				for ( int i = 1; i < parts.length; i++ ) {
+					String param = parts[ i ].trim();
+					if ( param.startsWith( "q=" ) && param.substring( 2 ).trim().matches( "0(\\.0*)?" ) ) {
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads an asset from the classpath.
+	 * 
+	 * @param path
+	 *        the path of the asset relative to the classpath location of the distribution.
+	 * @return the {@code Asset} object or {@code null} if there is no such resource.
+	 * @throws IOException
+	 *         if the resource cannot be read.
+	 */
+	private Asset readClasspathAsset( final String path ) throws IOException {
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		if ( loader == null ) {
+			loader = CKEditorAssetServlet.class.getClassLoader();
+		}
+		URL url = loader.getResource( classpath + path.substring( 1 ) );
+		if ( url == null || path.endsWith( "/" ) ) {
+			return null;
+		}
+		URLConnection connection = url.openConnection();
+		connection.setUseCaches( false );
+		InputStream in = connection.getInputStream();
+		try {
+			ByteArrayOutputStream data = new ByteArrayOutputStream( Math.max( connection.getContentLength(), 1024 ) );
+			byte[] buffer = new byte[ 8192 ];
+			for ( int read = in.read( buffer ); read != -1; read = in.read( buffer ) ) {
+				data.write( buffer, 0, read );
+			}
+			return Asset.forBytes( path, data.toByteArray(), connection.getLastModified() );
+		} catch ( IOException e ) {
+			ckeditorAssetServletLogger.log( Level.WARNING, "Could not read CKEditor resource: " + url, e );
+			throw e;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Checks whether the requested path stays inside the CKEditor distribution.
+	 * 
+	 * @param path
+	 *        the requested path.
+	 * @return {@code true} if the path is safe to serve, {@code false} otherwise.
+	 */
+	private static boolean isSafePath( final String path ) {
+		if ( path == null || !path.startsWith( "/" ) || path.indexOf( '\\' ) != -1 || path.indexOf( '\0' ) != -1 ) {
+			return false;
+		}
+		for ( String segment : path.split( "/" ) ) {
+			if ( "..".equals( segment ) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the {@code If-None-Match} and {@code If-Modified-Since} headers against the asset.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @param asset
+	 *        the requested asset.
+	 * @return {@code true} if the client copy of the asset is up to date, {@code false} otherwise.
+	 */
+	private static boolean isNotModified( final HttpServletRequest request, final Asset asset ) {
+		String ifNoneMatch = request.getHeader( "If-None-Match" );
+		if ( ifNoneMatch != null ) {
+			return matchesETag( ifNoneMatch, asset.getETag() );
+		}
+		long ifModifiedSince = getDateHeader( request, "If-Modified-Since" );
+		return ifModifiedSince != -1 && asset.getLastModified() / 1000 <= ifModifiedSince / 1000;
+	}
+
+	/**
+	 * Checks the {@code If-Range} header against the asset.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @param asset
+	 *        the requested asset.
+	 * @return {@code true} if the {@code Range} header should be honored, {@code false} if the full content should be sent.
+	 */
+	private static boolean isRangeApplicable( final HttpServletRequest request, final Asset asset ) {
+		String ifRange = request.getHeader( "If-Range" );
+		if ( ifRange == null ) {
+			return true;
+		}
+		if ( ifRange.trim().startsWith( "\"" ) ) {
+			return ifRange.trim().equals( asset.getETag() );
+		}
+		long date = getDateHeader( request, "If-Range" );
+		return date != -1 && asset.getLastModified() / 1000 <= date / 1000;
+	}
+
+	/**
+	 * Checks whether the list of entity tags from a conditional header matches the entity tag of the asset.
+	 * 
+	 * @param header
+	 *        the value of the conditional header.
+	 * @param etag
+	 *        the entity tag of the asset.
+	 * @return {@code true} if one of the entity tags matches, {@code false} otherwise.
+	 */
+	private static boolean matchesETag( final String header, final String etag ) {
+		for ( String candidate : header.split( "," ) ) {
+			candidate = candidate.trim();
+			if ( candidate.startsWith( "W/" ) ) {
+				candidate = candidate.substring( 2 );
+			}
+			if ( "*".equals( candidate ) || candidate.equals( etag ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parses the {@code Range} header. Only single byte ranges are supported; for multiple ranges the full content is sent.
+	 * 
+	 * @param header
+	 *        the value of the {@code Range} header.
+	 * @param length
+	 *        the length of the asset.
+	 * @return a two-element array with the first and the last byte position, an empty array if the full content should be sent or
+	 *         {@code null} if the range cannot be satisfied.
+	 */
+	private static long[] parseRange( final String header, final long length ) {
+		String value = header.trim();
+		if ( !value.startsWith( "bytes=" ) || value.indexOf( ',' ) != -1 ) {
+			return new long[ 0 ];
+		}
+		value = value.substring( 6 ).trim();
+		int dash = value.indexOf( '-' );
+		if ( dash == -1 ) {
+			return new long[ 0 ];
+		}
+		try {
+			long start;
+			long end;
+			if ( dash == 0 ) {
+				long suffix = Long.parseLong( value.substring( 1 ).trim() );
+				if ( suffix <= 0 ) {
+					return null;
+				}
+				start = Math.max( length - suffix, 0 );
+				end = length - 1;
+			} else {
+				start = Long.parseLong( value.substring( 0, dash ).trim() );
+				String last = value.substring( dash + 1 ).trim();
+				end = last.length() == 0 ? length - 1 : Math.min( Long.parseLong( last ), length - 1 );
+			}
+			if ( start >= length || start > end ) {
+				return null;
+			}
+			return new long[] { start, end };
+		} catch ( NumberFormatException e ) {
+			return new long[ 0 ];
+		}
+	}
+
+	/**
+	 * Returns the value of a date header or {@code -1} if the header is missing or malformed.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @param name
+	 *        the name of the header.
+	 * @return the date in milliseconds since the epoch or {@code -1}.
+	 */
+	private static long getDateHeader( final HttpServletRequest request, final String name ) {
+		try {
+			return request.getDateHeader( name );
+		} catch ( IllegalArgumentException e ) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Sets the {@code Content-Length} header, also for content longer than {@code Integer.MAX_VALUE} bytes.
+	 * 
+	 * @param response
+	 *        the current response.
+	 * @param length
+	 *        the length of the content.
+	 */
+	private static void setContentLength( final HttpServletResponse response, final long length ) {
+		if ( length <= Integer.MAX_VALUE ) {
+			response.setContentLength( ( int ) length );
+		} else {
+			response.setHeader( "Content-Length", Long.toString( length ) );
+		}
+	}
+
+	/**
+	 * Returns the content type of the asset based on its name. Text types are served as UTF-8 which is the encoding of all CKEditor files.
+	 * 
+	 * @param name
+	 *        the name of the asset.
+	 * @return a string representing the content type.
+	 */
+	private String getContentType( final String name ) {
+		String lowerName = name.toLowerCase( Locale.ENGLISH );
+		String type;
+		if ( lowerName.endsWith( ".js" ) ) {
+			type = "application/javascript";
+		} else if ( lowerName.endsWith( ".css" ) ) {
+			type = "text/css";
+		} else if ( lowerName.endsWith( ".txt" ) ) {
+			type = "text/plain";
+		} else {
+			type = getServletContext().getMimeType( lowerName );
+		}
+		if ( type == null ) {
+			return "application/octet-stream";
+		}
+		if ( type.startsWith( "text/" ) || type.endsWith( "javascript" ) || type.endsWith( "json" ) ) {
+			return type + ";charset=UTF-8";
+		}
+		return type;
+	}
+}
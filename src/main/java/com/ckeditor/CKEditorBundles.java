@@ -0,0 +1,263 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The {@code CKEditorBundles} class keeps the editor configurations used by the application and derives script bundles from them. A bundle
+ * combines {@code ckeditor.js} with the plugins from {@code extraPlugins} and the language files from {@code language}, so the browser
+ * downloads them in one request instead of loading every file after {@code ckeditor.js} starts.
+ * <p>
+ * One bundle is created for every language used by the registered configurations, and one without language files for configurations which
+ * do not set the language. Each bundle contains the union of extra plugins of all configurations, except plugins which every configuration
+ * listing them also removes with {@code removePlugins}.
+ * <p>
+ * Bundles are built and served by the {@code CKEditorAssetServlet}. When a bundle is available, CKEditor tags load it instead of the bare
+ * {@code ckeditor.js} file.<br>
+ * <strong>Usage (for example in a {@code ServletContextListener}):</strong>
+ * 
+ * <pre>
+ * CKEditorConfig config = new CKEditorConfig();
+ * config.addConfigValue( &quot;extraPlugins&quot;, &quot;autogrow,codesnippet&quot; );
+ * config.addConfigValue( &quot;language&quot;, &quot;de&quot; );
+ * CKEditorBundles.register( servletContext, config );
+ * </pre>
+ */
+public final class CKEditorBundles {
+
+	/**
+	 * Name of the application attribute storing the {@code CKEditorBundles} object.
+	 */
+	static final String BUNDLES_ATTRIBUTE = "ckeditor_bundles";
+	/**
+	 * Registered configurations.
+	 */
+	private final List< CKEditorConfig > configs = new ArrayList< CKEditorConfig >();
+	/**
+	 * Identifiers of bundles by language. An empty string stands for configurations without the language set.
+	 */
+	private Map< String, String > bundleIds;
+	/**
+	 * Paths of files making up bundles by bundle identifier.
+	 */
+	private Map< String, List< String >> bundlePaths;
+	/**
+	 * Number of registered configurations, used as the version of the bundle identifiers.
+	 */
+	private long version;
+
+	/**
+	 * Private constructor.
+	 */
+	private CKEditorBundles() {
+	}
+
+	/**
+	 * Registers an editor configuration used by the application. A copy of the configuration is stored, so later changes to the object do
+	 * not affect bundles.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param config
+	 *        the editor configuration.
+	 */
+	public static void register( final ServletContext context, final CKEditorConfig config ) {
+		getInstance( context, true ).add( new CKEditorConfig().mergeConfigValues( config ) );
+	}
+
+	/**
+	 * Returns the {@code CKEditorBundles} object of the web application.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param create
+	 *        {@code true} if the object should be created when it does not exist.
+	 * @return the {@code CKEditorBundles} object or {@code null} if no configuration was registered and {@code create} is {@code false}.
+	 */
+	static CKEditorBundles getInstance( final ServletContext context, final boolean create ) {
+		synchronized ( CKEditorBundles.class ) {
+			CKEditorBundles bundles = ( CKEditorBundles ) context.getAttribute( BUNDLES_ATTRIBUTE );
+			if ( bundles == null && create ) {
+				bundles = new CKEditorBundles();
+				context.setAttribute( BUNDLES_ATTRIBUTE, bundles );
+			}
+			return bundles;
+		}
+	}
+
+	/**
+	 * Returns the identifier of the bundle which should be loaded for an editor configuration.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param config
+	 *        the editor configuration. May be {@code null}.
+	 * @return the bundle identifier or {@code null} if no configuration was registered.
+	 */
+	static String findBundleId( final ServletContext context, final CKEditorConfig config ) {
+		CKEditorBundles bundles = getInstance( context, false );
+		if ( bundles == null ) {
+			return null;
+		}
+		Object language = ( config != null ) ? config.getConfigValue( "language" ) : null;
+		Map< String, String > ids = bundles.getBundleIds();
+		String id = ( language != null ) ? ids.get( language.toString() ) : null;
+		return ( id != null ) ? id : ids.get( "" );
+	}
+
+	/**
+	 * Returns the number of changes of the registered configurations. Output which refers to a bundle identifier may be cached only as long
+	 * as it does not change.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @return the version of the bundles or {@code 0} if no configuration was registered.
+	 */
+	static long getVersion( final ServletContext context ) {
+		CKEditorBundles bundles = getInstance( context, false );
+		return ( bundles != null ) ? bundles.getVersion() : 0;
+	}
+
+	/**
+	 * Returns the number of changes of the registered configurations.
+	 * 
+	 * @return the version of the bundles.
+	 */
+	synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the identifiers of all bundles.
+	 * 
+	 * @return the bundle identifiers by language.
+	 */
+	synchronized Map< String, String > getBundleIds() {
+		if ( bundleIds == null ) {
+			computeBundles();
+		}
+		return bundleIds;
+	}
+
+	/**
+	 * Returns the paths of files making up a bundle, relative to the CKEditor directory. Paths of plugin and language files which do not
+	 * exist in the distribution should be skipped by the caller.
+	 * 
+	 * @param id
+	 *        the bundle identifier.
+	 * @return the list of paths or {@code null} if there is no such bundle.
+	 */
+	synchronized List< String > getBundlePaths( final String id ) {
+		if ( bundlePaths == null ) {
+			computeBundles();
+		}
+		return bundlePaths.get( id );
+	}
+
+	/**
+	 * Adds a configuration and discards bundles derived from the previous ones.
+	 * 
+	 * @param config
+	 *        the editor configuration.
+	 */
+	private synchronized void add( final CKEditorConfig config ) {
+		configs.add( config );
+		version++;
+		bundleIds = null;
+		bundlePaths = null;
+	}
+
+	/**
+	 * Derives bundles from the registered configurations.
+	 */
+	private void computeBundles() {
+		Set< String > plugins = new TreeSet< String >();
+		Set< String > languages = new TreeSet< String >();
+		languages.add( "" );
+		for ( CKEditorConfig config : configs ) {
+			Set< String > removed = getNames( config, "removePlugins" );
+			for ( String plugin : getNames( config, "extraPlugins" ) ) {
+				if ( !removed.contains( plugin ) ) {
+					plugins.add( plugin );
+				}
+			}
+			Object language = config.getConfigValue( "language" );
+			if ( language != null && !Utils.isStringEmpty( language.toString() ) ) {
+				languages.add( language.toString() );
+			}
+		}
+
+		Map< String, String > ids = new HashMap< String, String >();
+		Map< String, List< String >> paths = new HashMap< String, List< String >>();
+		for ( String language : languages ) {
+			List< String > files = new ArrayList< String >();
+			files.add( "/ckeditor.js" );
+			if ( language.length() > 0 ) {
+				files.add( "/lang/" + language + ".js" );
+			}
+			for ( String plugin : plugins ) {
+				files.add( "/plugins/" + plugin + "/plugin.js" );
+				if ( language.length() > 0 ) {
+					files.add( "/plugins/" + plugin + "/lang/" + language + ".js" );
+				}
+			}
+			String id = getId( files );
+			ids.put( language, id );
+			paths.put( id, Collections.unmodifiableList( files ) );
+		}
+		bundleIds = Collections.unmodifiableMap( ids );
+		bundlePaths = paths;
+	}
+
+	/**
+	 * Returns the names from a comma-separated configuration value, such as {@code extraPlugins}.
+	 * 
+	 * @param config
+	 *        the editor configuration.
+	 * @param key
+	 *        the configuration option.
+	 * @return the set of names, empty if the option is not set.
+	 */
+	static Set< String > getNames( final CKEditorConfig config, final String key ) {
+		Set< String > names = new LinkedHashSet< String >();
+		Object value = config.getConfigValue( key );
+		if ( value != null ) {
+			for ( String name : value.toString().split( "," ) ) {
+				if ( name.trim().length() > 0 ) {
+					names.add( name.trim() );
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the identifier of a bundle based on the files it contains.
+	 * 
+	 * @param files
+	 *        the paths of files making up the bundle.
+	 * @return the bundle identifier.
+	 */
+	private static String getId( final List< String > files ) {
+		CRC32 crc = new CRC32();
+		try {
+			for ( String file : files ) {
+				crc.update( ( file + "\n" ).getBytes( "UTF-8" ) );
+			}
+		} catch ( UnsupportedEncodingException e ) {
+			throw new IllegalStateException( "UTF-8 is not supported.", e );
+		}
+		return Long.toHexString( crc.getValue() );
+	}
+}
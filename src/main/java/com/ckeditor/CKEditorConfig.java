@@ -1,10 +1,21 @@
 /* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
 package com.ckeditor;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,23 +23,77 @@ import java.util.logging.Logger;
  * The {@code CKEditorConfig} class is used to create a set of configuration options for a single editor instance. The
  * "configuration options" or "configuration parameters" terms refer to the {@code Map} of key-value pairs where each pair represents a
  * single configuration entry.
+ * <p>
+ * Configurations stored for a long time, for example global configurations in the session scope, can be made immutable with
+ * {@link #freeze()} and shared with {@link #intern()}, so equal configurations of many users take the memory of one.
+ * <p>
+ * Configurations can be stored in replicated sessions. They are serialized in a compact binary format in which the names of common
+ * options take one byte. Values computed by a {@code ConfigValueProvider} can only be serialized if the provider is
+ * {@code Serializable}.
  */
-public class CKEditorConfig implements Cloneable {
+public class CKEditorConfig implements Cloneable, Externalizable {
 
+	/**
+	 * Serial identifier.
+	 */
+	private static final long serialVersionUID = -1884326815317290538L;
 	/**
 	 * Private logger.
 	 */
 	private static final Logger ckeditorConfigLogger = Logger.getLogger( CKEditorConfig.class.getName() );
 	/**
-	 * {@code Map} storing the set of key-value pairs representing CKEditor configuration options.
+	 * Source of unique identifiers of configuration objects.
+	 */
+	private static final AtomicLong NEXT_ID = new AtomicLong();
+	/**
+	 * Pool of canonical frozen configurations.
+	 */
+	private static final WeakInterner< CKEditorConfig > CONFIG_POOL = new WeakInterner< CKEditorConfig >(
+			new WeakInterner.Equivalence< CKEditorConfig >() {
+				public int hash( final CKEditorConfig value ) {
+					return value.config.hashCode() * 31 + value.getExternalizedKeys().hashCode();
+				}
+
+				public boolean equivalent( final CKEditorConfig a, final CKEditorConfig b ) {
+					return a.getClass() == b.getClass() && a.config.equals( b.config ) && a.getExternalizedKeys().equals( b.getExternalizedKeys() );
+				}
+			} );
+	/**
+	 * Pool of canonical values of frozen configurations.
+	 */
+	private static final WeakInterner< Object > VALUE_POOL = new WeakInterner< Object >( WeakInterner.EQUALS );
+	/**
+	 * {@code Map} storing the set of key-value pairs representing CKEditor configuration options. It is backed by arrays, so
+	 * configurations with a few options are small and cheap to copy.
+	 */
+	private ConfigMap config;
+	/**
+	 * Names of configuration options whose values are sent to the browser as separate cacheable resources. It is created when the first
+	 * option is externalized.
+	 */
+	private Set< String > externalized;
+	/**
+	 * Unique identifier of this configuration object.
+	 */
+	private long id = NEXT_ID.incrementAndGet();
+	/**
+	 * Number of modifications made with the methods of this object.
+	 */
+	private AtomicInteger modCount = new AtomicInteger();
+	/**
+	 * Flag indicating whether this configuration is immutable.
+	 */
+	private volatile boolean frozen;
+	/**
+	 * JavaScript representation of this configuration, computed once if the configuration is frozen.
 	 */
-	private Map< String, Object > config;
+	private volatile String encoded;
 
 	/**
 	 * Creates the {@code CKEditorConfig} object and initializes the {@code Map} storing editor instance configuration options.
 	 */
 	public CKEditorConfig() {
-		config = new HashMap< String, Object >();
+		config = new ConfigMap();
 	}
 
 	/**
@@ -47,7 +112,9 @@ public class CKEditorConfig implements Cloneable {
 	 *        a string representing the configuration parameter value.
 	 */
 	public void addConfigValue( final String key, final Number value ) {
+		checkNotFrozen();
 		config.put( key, value );
+		modCount.incrementAndGet();
 	}
 
 	/**
@@ -66,7 +133,9 @@ public class CKEditorConfig implements Cloneable {
 	 *        a string representing the configuration parameter value.
 	 */
 	public void addConfigValue( final String key, final String value ) {
+		checkNotFrozen();
 		config.put( key, value );
+		modCount.incrementAndGet();
 	}
 
 	/**
@@ -88,7 +157,9 @@ public class CKEditorConfig implements Cloneable {
 	 *        a string representing the configuration parameter value.
 	 */
 	public void addConfigValue( final String key, final Map< String, ? extends Object > value ) {
+		checkNotFrozen();
 		config.put( key, value );
+		modCount.incrementAndGet();
 	}
 
 	/**
@@ -113,7 +184,9 @@ public class CKEditorConfig implements Cloneable {
 	 *        a string representing the configuration parameter value.
 	 */
 	public void addConfigValue( final String key, final List< ? extends Object > value ) {
+		checkNotFrozen();
 		config.put( key, value );
+		modCount.incrementAndGet();
 	}
 
 	/**
@@ -131,27 +204,76 @@ public class CKEditorConfig implements Cloneable {
 	 *        a string representing the configuration parameter value.
 	 */
 	public void addConfigValue( final String key, final Boolean value ) {
+		checkNotFrozen();
 		config.put( key, value );
+		modCount.incrementAndGet();
 	}
 
 	/**
-	 * Gets a configuration parameter value based on a configuration parameter name provided as the key.
+	 * Adds a parameter whose value is computed by the provider when the configuration is encoded for an editor instance. The value is
+	 * computed once and shared by all copies of this configuration.<br>
+	 * <strong>Usage:</strong>
+	 * 
+	 * <pre>
+	 * CKEditorConfig config = new CKEditorConfig();
+	 * config.addConfigValue( &quot;stylesSet&quot;, new ConfigValueProvider() {
+	 * 	public Object getValue() {
+	 * 		return loadStyles();
+	 * 	}
+	 * } );
+	 * </pre>
+	 * 
+	 * @param key
+	 *        a string representing the configuration parameter name.
+	 * @param provider
+	 *        the provider computing the configuration parameter value.
+	 */
+	public void addConfigValue( final String key, final ConfigValueProvider provider ) {
+		checkNotFrozen();
+		config.put( key, new LazyConfigValue( provider, 0 ) );
+		modCount.incrementAndGet();
+	}
+
+	/**
+	 * Adds a parameter whose value is computed by the provider when the configuration is encoded for an editor instance. The value is
+	 * cached for the given time and shared by all copies of this configuration, so the provider is called at most once per that time.
+	 * 
+	 * @param key
+	 *        a string representing the configuration parameter name.
+	 * @param provider
+	 *        the provider computing the configuration parameter value.
+	 * @param timeToLive
+	 *        the time for which the computed value is cached. If it is not positive, the value never expires.
+	 * @param unit
+	 *        the unit of {@code timeToLive}.
+	 */
+	public void addConfigValue( final String key, final ConfigValueProvider provider, final long timeToLive, final TimeUnit unit ) {
+		checkNotFrozen();
+		config.put( key, new LazyConfigValue( provider, unit.toNanos( timeToLive ) ) );
+		modCount.incrementAndGet();
+	}
+
+	/**
+	 * Gets a configuration parameter value based on a configuration parameter name provided as the key. If the value is computed by a
+	 * {@code ConfigValueProvider}, the computed value is returned.
 	 * 
 	 * @param key
 	 *        a string representing the configuration parameter name.
 	 * @return an object representing the configuration parameter value.
 	 */
 	public Object getConfigValue( final String key ) {
-		return config.get( key );
+		Object value = config.get( key );
+		return ( value instanceof LazyConfigValue ) ? ( ( LazyConfigValue ) value ).get() : value;
 	}
 
 	/**
-	 * Returns all editor instance configuration options.
+	 * Returns all editor instance configuration options. Values computed by a {@code ConfigValueProvider} are not computed by this method,
+	 * the returned {@code Map} contains objects wrapping their providers.
 	 * 
 	 * @return a {@code Map} storing all editor instance configuration options.
 	 */
 	public Map< String, Object > getConfigValues() {
-		return config;
+		return frozen ? Collections.unmodifiableMap( config ) : config;
 	}
 
 	/**
@@ -166,7 +288,78 @@ public class CKEditorConfig implements Cloneable {
 	 *        a string representing the configuration parameter name.
 	 */
 	public void removeConfigValue( final String key ) {
+		checkNotFrozen();
 		config.remove( key );
+		modCount.incrementAndGet();
+	}
+
+	/**
+	 * Marks a configuration parameter as externalized. The value of an externalized parameter is not inserted into JSP. Instead, it is
+	 * served by the {@code CKEditorAssetServlet} as a separate script which browsers download once and cache, and the configuration only
+	 * refers to it. This is useful for large values, such as style sets, templates or mention feeds, used on many pages.<br>
+	 * If the {@code CKEditorAssetServlet} is not mapped to the base path, the value is inserted into JSP as usual.<br>
+	 * <strong>Usage:</strong>
+	 * 
+	 * <pre>
+	 * config.addConfigValue( &quot;stylesSet&quot;, styles );
+	 * config.externalizeConfigValue( &quot;stylesSet&quot; );
+	 * </pre>
+	 * 
+	 * @param key
+	 *        a string representing the configuration parameter name.
+	 */
+	public void externalizeConfigValue( final String key ) {
+		checkNotFrozen();
+		if ( externalized == null ) {
+			externalized = new HashSet< String >();
+		}
+		externalized.add( key );
+		modCount.incrementAndGet();
+	}
+
+	/**
+	 * Sets the {@code toolbar} and {@code toolbarGroups} options to a preset registered in the {@link ToolbarPresets} of the web
+	 * application. The preset is encoded once when it is registered and its encoded form is inserted into every configuration referring to
+	 * it when an editor is created. Options which the preset does not define are left out, so CKEditor uses its defaults for them.<br>
+	 * <strong>Usage:</strong>
+	 * 
+	 * <pre>
+	 * config.useToolbarPreset( &quot;basic&quot; );
+	 * </pre>
+	 * 
+	 * @param name
+	 *        the name of the preset.
+	 */
+	public void useToolbarPreset( final String name ) {
+		checkNotFrozen();
+		if ( Utils.isStringEmpty( name ) ) {
+			throw new IllegalArgumentException( "The name of a toolbar preset cannot be empty." );
+		}
+		config.put( "toolbar", new ToolbarPresetReference( name, "toolbar" ) );
+		config.put( "toolbarGroups", new ToolbarPresetReference( name, "toolbarGroups" ) );
+		modCount.incrementAndGet();
+	}
+
+	/**
+	 * Checks if a configuration parameter is marked as externalized.
+	 * 
+	 * @param key
+	 *        a string representing the configuration parameter name.
+	 * @return {@code true} if the parameter is externalized, {@code false} otherwise.
+	 * @see #externalizeConfigValue(String)
+	 */
+	public boolean isExternalized( final String key ) {
+		return externalized != null && externalized.contains( key );
+	}
+
+	/**
+	 * Returns the names of configuration parameters marked as externalized.
+	 * 
+	 * @return an unmodifiable {@code Set} of parameter names.
+	 * @see #externalizeConfigValue(String)
+	 */
+	public Set< String > getExternalizedKeys() {
+		return ( externalized != null ) ? Collections.unmodifiableSet( externalized ) : Collections.< String > emptySet();
 	}
 
 	/**
@@ -219,6 +412,7 @@ public class CKEditorConfig implements Cloneable {
 	 * Configuration options from the {@code CKEditorConfig} parameter either overwrite existing values (if a given configuration parameter
 	 * exists in this {@code CKEditorConfig} object) or are added to this {@code CKEditorConfig} object's {@code Map} (if a given
 	 * configuration parameter does not exist in this {@code CKEditorConfig} object).
+	 * Parameters marked as externalized in the {@code CKEditorConfig} parameter are also marked as externalized in this object.
 	 * 
 	 * @param cfg
 	 *        the {@code CKEditorConfig} object whose configuration options {@code Map} will be merged with this {@code CKEditorConfig}
@@ -226,15 +420,235 @@ public class CKEditorConfig implements Cloneable {
 	 * @return the {@code CKEditorConfig} object with configuration options merged.
 	 */
 	public CKEditorConfig mergeConfigValues( final CKEditorConfig cfg ) {
+		checkNotFrozen();
 		if ( cfg != null ) {
-			Map< String, Object > configValues = cfg.getConfigValues();
-			for ( Map.Entry< String, Object > configEntry : configValues.entrySet() ) {
-				config.put( configEntry.getKey(), configEntry.getValue() );
+			config.putAll( cfg.getConfigValues() );
+			if ( cfg.externalized != null && !cfg.externalized.isEmpty() ) {
+				if ( externalized == null ) {
+					externalized = new HashSet< String >();
+				}
+				externalized.addAll( cfg.externalized );
+			}
+			modCount.incrementAndGet();
+		}
+		return this;
+	}
+
+	/**
+	 * Makes this configuration immutable. {@code Map} and {@code List} values, including nested ones, are replaced with unmodifiable
+	 * copies and equal values are shared with other frozen configurations. Afterwards, all methods modifying the configuration throw
+	 * {@code UnsupportedOperationException}. Copies created with {@link #mergeConfigValues(CKEditorConfig)} or by the tags are mutable.
+	 * 
+	 * @return this configuration.
+	 */
+	public synchronized CKEditorConfig freeze() {
+		if ( !frozen ) {
+			for ( Map.Entry< String, Object > configEntry : config.entrySet() ) {
+				configEntry.setValue( freezeValue( configEntry.getValue() ) );
 			}
+			frozen = true;
 		}
 		return this;
 	}
 
+	/**
+	 * Checks if this configuration is immutable.
+	 * 
+	 * @return {@code true} if the configuration was frozen, {@code false} otherwise.
+	 * @see #freeze()
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Freezes this configuration and returns the canonical instance equal to it. Configurations are equal if they have the same options
+	 * and externalized options. Canonical instances are referenced weakly, so unused ones are garbage collected. Storing interned
+	 * configurations, for example in the session scope, lets users with the same configuration share one object.<br>
+	 * <strong>Usage:</strong>
+	 * 
+	 * <pre>
+	 * session.setAttribute( &quot;ckeditor_global_config&quot;, createConfigForRole( role ).intern() );
+	 * </pre>
+	 * 
+	 * @return the canonical frozen configuration.
+	 * @see #freeze()
+	 */
+	public CKEditorConfig intern() {
+		return CONFIG_POOL.intern( freeze() );
+	}
+
+	/**
+	 * Returns an immutable version of a configuration value. {@code Map} and {@code List} values are copied recursively into unmodifiable
+	 * collections and all values are replaced with their canonical instances.
+	 * 
+	 * @param value
+	 *        the configuration value.
+	 * @return the immutable canonical value.
+	 */
+	static Object freezeValue( final Object value ) {
+		if ( value == null || value instanceof LazyConfigValue ) {
+			return value;
+		}
+		Object frozenValue = value;
+		if ( value instanceof Map ) {
+			Map< Object, Object > map = new LinkedHashMap< Object, Object >();
+			for ( Map.Entry< ?, ? > entry : ( ( Map< ?, ? > ) value ).entrySet() ) {
+				map.put( entry.getKey(), freezeValue( entry.getValue() ) );
+			}
+			frozenValue = Collections.unmodifiableMap( map );
+		} else if ( value instanceof List ) {
+			List< Object > list = new ArrayList< Object >();
+			for ( Object item : ( List< ? > ) value ) {
+				list.add( freezeValue( item ) );
+			}
+			frozenValue = Collections.unmodifiableList( list );
+		}
+		return VALUE_POOL.intern( frozenValue );
+	}
+
+	/**
+	 * Returns the JavaScript representation of this configuration if it was stored with {@link #setEncoded(String)}.
+	 * 
+	 * @return the JavaScript object or {@code null}.
+	 */
+	String getEncoded() {
+		return encoded;
+	}
+
+	/**
+	 * Stores the JavaScript representation of this configuration. It is only stored if the configuration is frozen and does not contain
+	 * values which may change, so it never becomes stale.
+	 * 
+	 * @param encoded
+	 *        the JavaScript object.
+	 */
+	void setEncoded( final String encoded ) {
+		if ( frozen && isCacheable() ) {
+			this.encoded = encoded;
+		}
+	}
+
+	/**
+	 * Throws an exception if this configuration is immutable.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *         if the configuration was frozen.
+	 */
+	private void checkNotFrozen() {
+		if ( frozen ) {
+			throw new UnsupportedOperationException( "The configuration is frozen and cannot be modified." );
+		}
+	}
+
+	/**
+	 * Writes the configuration in a compact binary format.
+	 * 
+	 * @param out
+	 *        the output to write to.
+	 * @throws IOException
+	 *         if the configuration cannot be written, for example if it contains a value which is not serializable.
+	 */
+	public void writeExternal( final ObjectOutput out ) throws IOException {
+		ConfigSerialization.writeHeader( out );
+		out.writeBoolean( frozen );
+		ConfigSerialization.writeVarInt( out, config.size() );
+		for ( Map.Entry< String, Object > configEntry : config.entrySet() ) {
+			ConfigSerialization.writeKey( out, configEntry.getKey() );
+			ConfigSerialization.writeValue( out, configEntry.getValue() );
+		}
+		Set< String > externalizedKeys = getExternalizedKeys();
+		ConfigSerialization.writeVarInt( out, externalizedKeys.size() );
+		for ( String key : externalizedKeys ) {
+			ConfigSerialization.writeKey( out, key );
+		}
+	}
+
+	/**
+	 * Reads the configuration written with {@link #writeExternal(ObjectOutput)}. A frozen configuration is frozen again after reading.
+	 * 
+	 * @param in
+	 *        the input to read from.
+	 * @throws IOException
+	 *         if the configuration cannot be read.
+	 * @throws ClassNotFoundException
+	 *         if the class of a value cannot be found.
+	 */
+	public void readExternal( final ObjectInput in ) throws IOException, ClassNotFoundException {
+		ConfigSerialization.readHeader( in, CKEditorConfig.class );
+		boolean wasFrozen = in.readBoolean();
+		config = new ConfigMap();
+		externalized = null;
+		frozen = false;
+		int size = ConfigSerialization.readVarInt( in );
+		for ( int i = 0; i < size; i++ ) {
+			String key = ConfigSerialization.readKey( in );
+			config.put( key, ConfigSerialization.readValue( in ) );
+		}
+		int externalizedSize = ConfigSerialization.readVarInt( in );
+		for ( int i = 0; i < externalizedSize; i++ ) {
+			externalizeConfigValue( ConfigSerialization.readKey( in ) );
+		}
+		modCount.incrementAndGet();
+		if ( wasFrozen ) {
+			freeze();
+		}
+	}
+
+	/**
+	 * Replaces a deserialized frozen configuration with the canonical instance, so configurations of replicated sessions are shared
+	 * as well.
+	 * 
+	 * @return the canonical configuration if this one is frozen, this configuration otherwise.
+	 */
+	protected Object readResolve() {
+		return frozen ? CONFIG_POOL.intern( this ) : this;
+	}
+
+	/**
+	 * Returns a string identifying this configuration object in its current state. It changes whenever the configuration is modified
+	 * with the methods of this class, so it can be used as a cheap cache key. Modifications of the {@code Map} returned by
+	 * {@link #getConfigValues()} and of {@code Map} or {@code List} values stored in the configuration are not detected.
+	 * 
+	 * @return a string representing the version of this configuration.
+	 */
+	String getVersion() {
+		return id + "." + modCount.get();
+	}
+
+	/**
+	 * Checks if the output created from this configuration may be cached. It may not be cached if it contains values computed by a
+	 * {@code ConfigValueProvider} or externalized values, because these change independently of the configuration.
+	 * 
+	 * @return {@code true} if the configuration can be cached, {@code false} otherwise.
+	 */
+	boolean isCacheable() {
+		if ( externalized != null && !externalized.isEmpty() ) {
+			return false;
+		}
+		for ( Object value : config.values() ) {
+			if ( value instanceof LazyConfigValue ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the configuration refers to a toolbar preset. Such a configuration is resolved against the presets of the web application
+	 * before it is encoded, so encoding it in advance is pointless.
+	 * 
+	 * @return {@code true} if any value refers to a toolbar preset, {@code false} otherwise.
+	 */
+	boolean usesToolbarPreset() {
+		for ( Object value : config.values() ) {
+			if ( value instanceof ToolbarPresetReference ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Checks if the configuration object is empty.
 	 * 
@@ -245,7 +659,8 @@ public class CKEditorConfig implements Cloneable {
 	}
 
 	/**
-	 * Clones this {@code CKEditorConfig} object together with its configuration options {@code Map}.
+	 * Clones this {@code CKEditorConfig} object together with its configuration options {@code Map}. The clone of a frozen configuration
+	 * is mutable.
 	 * 
 	 * @return new cloned {@code CKEditorConfig} object.
 	 * @throws CloneNotSupportedException
@@ -253,7 +668,12 @@ public class CKEditorConfig implements Cloneable {
 	 */
 	protected Object clone() throws CloneNotSupportedException {
 		CKEditorConfig cfg = ( CKEditorConfig ) super.clone();
-		cfg.config = new HashMap< String, Object >( this.config );
+		cfg.config = new ConfigMap( this.config );
+		cfg.externalized = ( this.externalized != null ) ? new HashSet< String >( this.externalized ) : null;
+		cfg.id = NEXT_ID.incrementAndGet();
+		cfg.modCount = new AtomicInteger();
+		cfg.frozen = false;
+		cfg.encoded = null;
 		return cfg;
 	}
 
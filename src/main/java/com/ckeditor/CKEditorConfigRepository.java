@@ -0,0 +1,39 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.IOException;
+
+/**
+ * The {@code CKEditorConfigRepository} interface is used to load named editor configurations from an external store, for example one
+ * configuration per tenant. A repository stored in the application scope under the {@code ckeditor_config_repository} name is used by
+ * tags to resolve their {@code profile} attribute instead of {@link ConfigProfiles}. Repositories which read slow stores should be
+ * wrapped with {@link CachingConfigRepository}.<br>
+ * <strong>Usage:</strong>
+ * 
+ * <pre>
+ * CKEditorConfigRepository repository = new CachingConfigRepository( new FileConfigRepository( directory ), 1000, 10, TimeUnit.MINUTES );
+ * servletContext.setAttribute( CKEditorConfigRepository.REPOSITORY_ATTRIBUTE, repository );
+ * </pre>
+ * 
+ * <pre>
+ * &lt;ckeditor:replace replace="editor1" basePath="/ckeditor/" profile="${tenant.id}" /&gt;
+ * </pre>
+ */
+public interface CKEditorConfigRepository {
+
+	/**
+	 * Name of the application attribute storing the repository used by tags.
+	 */
+	String REPOSITORY_ATTRIBUTE = "ckeditor_config_repository";
+
+	/**
+	 * Loads a configuration. The method may be called from many threads.
+	 * 
+	 * @param name
+	 *        the name of the configuration.
+	 * @return the configuration or {@code null} if there is no configuration with this name.
+	 * @throws IOException
+	 *         if the configuration cannot be loaded.
+	 */
+	CKEditorConfig load( String name ) throws IOException;
+}
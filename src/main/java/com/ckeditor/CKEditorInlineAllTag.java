@@ -38,7 +38,11 @@ public class CKEditorInlineAllTag extends CKEditorTag {
 	@Override
 	protected String getTagOutput( final CKEditorConfig config ) {
 		StringBuilder sb = new StringBuilder();
-		sb.append( "CKEDITOR.inlineAll();\n " );
+		if ( isOnDemand() ) {
+			sb.append( EditorBootstrap.activateAll( "inline", null, null, getActivation(), getEditorOrder() ) );
+		} else {
+			sb.append( "CKEDITOR.inlineAll();\n " );
+		}
 
 		if ( config != null && !config.isEmpty() ) {
 			sb.append( "CKEDITOR.tools.extend( CKEDITOR.config," ).append( Utils.jsEncode( config ) ).append( ", true);\n" );
@@ -43,11 +43,14 @@ public class CKEditorInlineTag extends CKEditorTag {
 	@Override
 	protected String getTagOutput( final CKEditorConfig config ) {
 		StringBuilder sb = new StringBuilder();
-		if ( pageContext.getAttribute( "ckeditor_disable_auto_inline_set" ) == null ) {
+		if ( !EditorBootstrap.isInserted( pageContext, "ckeditor_disable_auto_inline_set" ) ) {
 			sb.append( "CKEDITOR.disableAutoInline = true;\n" );
 			pageContext.setAttribute( "ckeditor_disable_auto_inline_set", new Boolean( true ) );
 		}
 
+		if ( isOnDemand() ) {
+			return sb.append( EditorBootstrap.activate( inline, "inline", config, getActivation(), getEditorOrder() ) ).toString();
+		}
 		if ( config != null && !config.isEmpty() ) {
 			return sb.append( "CKEDITOR.inline( '" ).append( inline ).append( "', " ).append( Utils.jsEncode( config ) ).append( ");" )
 					.toString();
@@ -76,4 +79,14 @@ public class CKEditorInlineTag extends CKEditorTag {
 	protected String getCKEditorName() {
 		return this.inline;
 	}
+
+	/**
+	 * Returns {@code true}, because the output of this tag depends only on its attributes, its configuration and the state of the page.
+	 * 
+	 * @return {@code true}.
+	 */
+	@Override
+	protected boolean isFragmentCacheable() {
+		return true;
+	}
 }
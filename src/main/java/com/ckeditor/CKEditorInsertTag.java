@@ -2,11 +2,12 @@
 package com.ckeditor;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.jsp.JspWriter;
 
@@ -46,6 +47,16 @@ public class CKEditorInsertTag extends CKEditorTag {
 	 */
 	private String value;
 
+	/**
+	 * Source of the initial value. If it is set, it is used instead of {@code value}.
+	 */
+	private ValueSource valueSource;
+
+	/**
+	 * Initial value used by the current tag invocation, read from the value source if the value is needed as a whole.
+	 */
+	private String currentValue;
+
 	/**
 	 * Attributes for the {@code <textarea>} element which will be inserted into JSP and replaced by the editor.
 	 */
@@ -56,11 +67,41 @@ public class CKEditorInsertTag extends CKEditorTag {
 	 */
 	private boolean inline;
 
+	/**
+	 * Flag indicating whether the value should be displayed as static HTML instead of creating a read-only editor.
+	 */
+	private boolean readOnlyStatic;
+
+	/**
+	 * Flag indicating whether static HTML should be upgraded to an editor instance when clicked.
+	 */
+	private boolean upgradeOnClick;
+
+	/**
+	 * Flag indicating whether the value should be loaded out of band instead of being inserted into the {@code <textarea>} element.
+	 */
+	private boolean deferContent;
+
+	/**
+	 * Flag indicating whether the escaped value should be stored in the {@code EscapedValueCache}.
+	 */
+	private boolean cacheEscapedValue;
+
+	/**
+	 * Version identifying the value in the {@code EscapedValueCache}.
+	 */
+	private String valueVersion;
+
+	/**
+	 * URL from which the value is loaded or {@code null} if the value is inserted into the {@code <textarea>} element.
+	 */
+	private String contentUrl;
+
 	/**
 	 * Creates the {@code CKEditorInsertTag} object.
 	 */
 	public CKEditorInsertTag() {
-		textareaAttributes = new HashMap< String, String >();
+		textareaAttributes = TextareaAttributes.DEFAULT;
 		editor = "";
 		value = "";
 	}
@@ -75,9 +116,32 @@ public class CKEditorInsertTag extends CKEditorTag {
 	 */
 	@Override
 	public int doStartTag() {
+		contentUrl = null;
+		currentValue = value;
 		JspWriter out = pageContext.getOut();
+		TextareaAttributes attributes = TextareaAttributes.of( textareaAttributes );
 		try {
-			out.write( Utils.createTextareaTag( editor, value, textareaAttributes ) );
+			if ( valueSource != null && ( readOnlyStatic || deferContent ) ) {
+				currentValue = valueSource.read();
+			}
+			if ( readOnlyStatic ) {
+				return EVAL_PAGE;
+			}
+			if ( deferContent ) {
+				contentUrl = EditorBootstrap.storeContent( pageContext.getServletContext(),
+						( HttpServletRequest ) pageContext.getRequest(), getBasePath(), currentValue );
+			}
+			if ( contentUrl != null ) {
+				out.write( Utils.createTextareaTag( editor, "", attributes ) );
+			} else if ( valueSource != null && !deferContent ) {
+				Utils.writeTextareaTag( out, editor, valueSource, attributes );
+			} else if ( cacheEscapedValue ) {
+				String escaped = EscapedValueCache.getInstance( pageContext.getServletContext() ).getEscapedValue( currentValue,
+						valueVersion );
+				Utils.writeEscapedTextareaTag( out, editor, escaped, attributes );
+			} else {
+				out.write( Utils.createTextareaTag( editor, currentValue, attributes ) );
+			}
 		} catch ( IOException ie ) {
 			ckeditorInsertTagLogger.log( Level.SEVERE, "Could not create CKEditorInsertTag.", ie );
 			try {
@@ -103,11 +167,23 @@ public class CKEditorInsertTag extends CKEditorTag {
 	protected String getTagOutput( final CKEditorConfig config ) {
 		StringBuilder sb = new StringBuilder();
 
-		if ( pageContext.getAttribute( "ckeditor_disable_auto_inline_set" ) == null && inline ) {
+		if ( !EditorBootstrap.isInserted( pageContext, "ckeditor_disable_auto_inline_set" ) && inline ) {
 			sb.append( "CKEDITOR.disableAutoInline = true;\n" );
 			pageContext.setAttribute( "ckeditor_disable_auto_inline_set", new Boolean( true ) );
 		}
 
+		if ( contentUrl != null ) {
+			if ( !EditorBootstrap.isInserted( pageContext, EditorBootstrap.LOADER_SET_ATTRIBUTE ) ) {
+				sb.append( EditorBootstrap.getLoaderRuntime() );
+				pageContext.setAttribute( EditorBootstrap.LOADER_SET_ATTRIBUTE, new Boolean( true ) );
+			}
+			sb.append( EditorBootstrap.load( editor, contentUrl ) );
+		}
+
+		if ( isOnDemand() ) {
+			sb.append( EditorBootstrap.activate( editor, inline ? "inline" : "replace", config, getActivation(), getEditorOrder() ) );
+			return sb.toString();
+		}
 		if ( config != null && !config.isEmpty() ) {
 			sb.append( getEditorMethod() ).append( "'" ).append( editor ).append( "', " ).append( Utils.jsEncode( config ) )
 					.append( ");\n" );
@@ -118,6 +194,35 @@ public class CKEditorInsertTag extends CKEditorTag {
 		}
 	}
 
+	/**
+	 * Creates the static HTML representation of this editor if the {@code readOnlyStatic} flag is set. The value is displayed directly in
+	 * a {@code <div>} element styled with the editor content stylesheets, so neither {@code ckeditor.js} nor an editor instance is loaded.
+	 * If the {@code upgradeOnClick} flag is set, a small script which creates the editor on the first click is added.
+	 * 
+	 * @param config
+	 *        the {@code CKEditorConfig} object used to find content stylesheets and to create the editor after the upgrade.
+	 * @return the static HTML representation of this tag or {@code null} if the {@code readOnlyStatic} flag is not set.
+	 */
+	@Override
+	protected String getStaticOutput( final CKEditorConfig config ) {
+		if ( !readOnlyStatic ) {
+			return null;
+		}
+		Set< String > linked = EditorBootstrap.getLinkedStylesheets( pageContext );
+		StringBuilder sb = new StringBuilder( EditorBootstrap.createStaticContent( editor, currentValue,
+				ContentsCssAggregator.getStaticStylesheets( pageContext.getServletContext(), getBasePath(), config ), linked ) );
+		if ( upgradeOnClick ) {
+			StringBuilder script = new StringBuilder();
+			if ( !EditorBootstrap.isInserted( pageContext, EditorBootstrap.UPGRADE_SET_ATTRIBUTE ) ) {
+				script.append( EditorBootstrap.getUpgradeRuntime() );
+				pageContext.setAttribute( EditorBootstrap.UPGRADE_SET_ATTRIBUTE, new Boolean( true ) );
+			}
+			script.append( EditorBootstrap.upgrade( editor, inline ? "inline" : "replace", config, getBasePath(), getTimestamp() ) );
+			sb.append( Utils.script( script.toString() ) );
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * Based on the {@code inline} flag this method returns a {@code String} representing the JavaScript (@code inline} or {@code replace}
 	 * method.
@@ -149,6 +254,18 @@ public class CKEditorInsertTag extends CKEditorTag {
 		this.value = value;
 	}
 
+	/**
+	 * Sets the source of the initial value, used instead of the {@code value} attribute. The value is escaped and written to JSP in
+	 * chunks, so large documents do not have to be loaded into a {@code String}. It is only read as a whole in the {@code readOnlyStatic}
+	 * and {@code deferContent} modes.
+	 * 
+	 * @param valueSource
+	 *        the source of the initial HTML value for the editor.
+	 */
+	public final void setValueSource( final ValueSource valueSource ) {
+		this.valueSource = valueSource;
+	}
+
 	/**
 	 * Sets the {@code Map} of key-value pairs representing attribute names and values for the {@code <textarea>} element which will be
 	 * inserted into JSP and replaced with the editor.
@@ -158,7 +275,9 @@ public class CKEditorInsertTag extends CKEditorTag {
 	 * {@code disabled} and {@code form}.
 	 * 
 	 * @param textareaAttr
-	 *        the {@code Map} of key-value pairs representing the {@code <textarea>} attribute names and values.
+	 *        the {@code Map} of key-value pairs representing the {@code <textarea>} attribute names and values. It is not modified. Other
+	 *        maps are rendered for every editor, so attributes shared by many pages should be passed as a {@link TextareaAttributes}
+	 *        object, which is rendered once.
 	 */
 	public final void setTextareaAttributes( final Map< String, String > textareaAttr ) {
 		this.textareaAttributes = textareaAttr;
@@ -174,6 +293,68 @@ public class CKEditorInsertTag extends CKEditorTag {
 		this.inline = inline;
 	}
 
+	/**
+	 * Sets a flag indicating whether the value should be displayed as static HTML instead of creating a read-only editor. In this mode
+	 * neither {@code ckeditor.js} nor any editor creation code is inserted into JSP. <strong>Security:</strong> the value is
+	 * inserted into the page without any filtering and the Advanced Content Filter of the editor does not apply, so scripts and event
+	 * handlers stored in it are executed by the browser. Values which may come from untrusted users have to be sanitized on the server
+	 * before they are displayed in this mode. Content stylesheets are scoped to the static element through a stylesheet generated by the
+	 * {@code CKEditorAssetServlet}; without the servlet they are not linked.
+	 * 
+	 * @param readOnlyStatic
+	 *        a {@code Boolean} flag indicating whether static HTML should be displayed.
+	 */
+	public final void setReadOnlyStatic( final boolean readOnlyStatic ) {
+		this.readOnlyStatic = readOnlyStatic;
+	}
+
+	/**
+	 * Sets a flag indicating whether static HTML displayed in the {@code readOnlyStatic} mode should be upgraded to an editor instance when
+	 * clicked. The editor is created with the same configuration as it would be without the {@code readOnlyStatic} mode.
+	 * 
+	 * @param upgradeOnClick
+	 *        a {@code Boolean} flag indicating whether static HTML should be upgraded to an editor.
+	 */
+	public final void setUpgradeOnClick( final boolean upgradeOnClick ) {
+		this.upgradeOnClick = upgradeOnClick;
+	}
+
+	/**
+	 * Sets a flag indicating whether the value should be loaded out of band. If set, an empty {@code <textarea>} element is inserted into
+	 * JSP and the value is downloaded by a small script from the {@code CKEditorAssetServlet}, which has to be mapped to the base path. The
+	 * value is served only to the HTTP session which rendered the tag and is never stored by shared caches. If the servlet is not running,
+	 * the value is inserted into JSP as usual.
+	 * 
+	 * @param deferContent
+	 *        a {@code Boolean} flag indicating whether the value should be loaded out of band.
+	 */
+	public final void setDeferContent( final boolean deferContent ) {
+		this.deferContent = deferContent;
+	}
+
+	/**
+	 * Sets a flag indicating whether the escaped value should be cached, so documents rendered often, such as templates, are escaped only
+	 * once. The value is identified by {@link #setValueVersion(String)} or, if it is not set, by its hash. Short values are not cached.
+	 * Cache statistics are available from {@link EscapedValueCache#getInstance(javax.servlet.ServletContext)}.
+	 * 
+	 * @param cacheEscapedValue
+	 *        a {@code Boolean} flag indicating whether the escaped value should be cached.
+	 */
+	public final void setCacheEscapedValue( final boolean cacheEscapedValue ) {
+		this.cacheEscapedValue = cacheEscapedValue;
+	}
+
+	/**
+	 * Sets the version identifying the value in the escaped value cache, for example the document identifier and its revision. It saves
+	 * hashing the value on every request. The same version must never be used for different values.
+	 * 
+	 * @param valueVersion
+	 *        the version of the value.
+	 */
+	public final void setValueVersion( final String valueVersion ) {
+		this.valueVersion = valueVersion;
+	}
+
 	/**
 	 * Returns the name of this editor instance. The name matches the ID or name of the {@code <textarea>} element which will be replaced by
 	 * the editor.
@@ -49,6 +49,9 @@ public class CKEditorReplaceAllTag extends CKEditorTag {
 	protected String getTagOutput( final CKEditorConfig config ) {
 		StringBuilder sb = new StringBuilder();
 
+		if ( isOnDemand() ) {
+			return EditorBootstrap.activateAll( "replace", className, config, getActivation(), getEditorOrder() );
+		}
 		if ( config == null || config.isEmpty() ) {
 			if ( className == null || "".equals( className ) ) {
 				sb.append( "CKEDITOR.replaceAll();\n" );
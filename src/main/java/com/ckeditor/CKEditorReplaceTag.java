@@ -43,6 +43,9 @@ public class CKEditorReplaceTag extends CKEditorTag {
 	@Override
 	protected String getTagOutput( final CKEditorConfig config ) {
 		StringBuilder sb = new StringBuilder();
+		if ( isOnDemand() ) {
+			return EditorBootstrap.activate( replace, "replace", config, getActivation(), getEditorOrder() );
+		}
 		if ( config != null && !config.isEmpty() ) {
 			sb.append( "CKEDITOR.replace( '" ).append( replace ).append( "', " ).append( Utils.jsEncode( config ) ).append( ");\n" );
 			return sb.toString();
@@ -74,4 +77,13 @@ public class CKEditorReplaceTag extends CKEditorTag {
 		return this.replace;
 	}
 
+	/**
+	 * Returns {@code true}, because the output of this tag depends only on its attributes, its configuration and the state of the page.
+	 * 
+	 * @return {@code true}.
+	 */
+	@Override
+	protected boolean isFragmentCacheable() {
+		return true;
+	}
 }
@@ -2,15 +2,22 @@
 package com.ckeditor;
 
 import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.servlet.jsp.JspWriter;
+import javax.servlet.jsp.PageContext;
 import javax.servlet.jsp.tagext.TagSupport;
 
 /**
@@ -26,6 +33,10 @@ public abstract class CKEditorTag extends TagSupport {
 	 * Serial identifier.
 	 */
 	private static final long serialVersionUID = -5642419066547779817L;
+	/**
+	 * Message displayed in place of the editor when its configuration profile cannot be loaded.
+	 */
+	private static final String PROFILE_ERROR_MESSAGE = "The editor is not available, because its configuration could not be loaded.";
 	/**
 	 * Full or relative path to the CKEditor installation directory. If a full path is used, the {@code CKEDITOR_BASEPATH} global variable
 	 * will be inserted into JSP.
@@ -53,6 +64,39 @@ public abstract class CKEditorTag extends TagSupport {
 	 * in an application (application scope).
 	 */
 	private GlobalEventHandler globalEvents;
+	/**
+	 * Flag indicating when editor instances should be created on the client side.
+	 */
+	private CKEditor.Activation activation;
+	/**
+	 * Number of scheduled editor instances created in a single batch. If it is not positive, the client-side default is used.
+	 */
+	private int batchSize;
+	/**
+	 * Position of this tag among the editors inserted into JSP. It is assigned when the tag output is created.
+	 */
+	private int editorOrder;
+	/**
+	 * Flag indicating whether plugins unused by the toolbar should be added to {@code removePlugins}.
+	 */
+	private boolean removeUnusedPlugins;
+	/**
+	 * Flag indicating whether the settings of {@code config.js} and {@code styles.js} should be sent inline with the configuration.
+	 */
+	private boolean inlineConfig;
+	/**
+	 * Flag indicating whether the {@code contentsCss} stylesheets should be aggregated into a single stylesheet.
+	 */
+	private boolean aggregateContentsCss;
+	/**
+	 * Flag indicating whether the output of the tag should be stored in the fragment cache and reused when the tag is rendered again with
+	 * the same inputs.
+	 */
+	private boolean fragmentCache;
+	/**
+	 * Name of the configuration profile used as the base of the editor configuration.
+	 */
+	private String profile;
 
 	/**
 	 * Creates the {@code CKEditorTag} objects and sets all properties to their default values.
@@ -63,6 +107,7 @@ public abstract class CKEditorTag extends TagSupport {
 		initialized = false;
 		config = null;
 		events = null;
+		activation = CKEditor.Activation.IMMEDIATE;
 	}
 
 	/**
@@ -74,19 +119,41 @@ public abstract class CKEditorTag extends TagSupport {
 	@Override
 	public int doEndTag() {
 		JspWriter out = pageContext.getOut();
+		CKEditorConfig tagConfig = config;
+		boolean contextParams = pageContext.getAttribute( "ckeditor-params" ) != null;
 		configureContextParams();
 		try {
-			String output = "";
-			if ( !initialized && !isInitializedParam() ) {
-				out.write( init() );
+			CKEditorConfig globalConfig = getGlobalConfig();
+			CKEditorConfig profileConfig;
+			try {
+				profileConfig = getProfileConfig();
+			} catch ( IOException e ) {
+				ckeditorTagLogger.log( Level.SEVERE, "Could not load configuration profile " + profile + ".", e );
+				out.write( Utils.createErrorTag( getCKEditorName(), PROFILE_ERROR_MESSAGE ) );
+				return EVAL_PAGE;
 			}
 
-			if ( globalEvents != null ) {
-				output += globalEvents.returnGlobalEvents();
+			FragmentCache cache = null;
+			String fragmentKey = ( fragmentCache && !contextParams ) ? getFragmentKey( globalConfig, profileConfig ) : null;
+			Set< String > pageAttributes = null;
+			if ( fragmentKey != null ) {
+				cache = FragmentCache.getInstance( pageContext.getServletContext() );
+				FragmentCache.Fragment fragment = cache.get( fragmentKey );
+				if ( fragment != null ) {
+					fragment.restorePageAttributes( pageContext );
+					if ( isOnDemand() ) {
+						editorOrder = EditorBootstrap.nextOrder( pageContext.getRequest() );
+					}
+					out.write( fragment.getOutput() );
+					return EVAL_PAGE;
+				}
+				pageAttributes = getPageAttributeNames();
 			}
 
-			CKEditorConfig globalConfig = getGlobalConfig();
-
+			if ( profileConfig != null ) {
+				config = ( config == null ) ? profileConfig : new CKEditorConfig().mergeConfigValues( profileConfig ).mergeConfigValues(
+						config );
+			}
 			if ( events != null ) {
 				if ( config == null ) {
 					config = new CKEditorConfig();
@@ -94,11 +161,62 @@ public abstract class CKEditorTag extends TagSupport {
 				config = config.configSettings( this.events );
 			}
 			if ( globalConfig != null ) {
-				config = globalConfig.mergeConfigValues( config );
+				config = new CKEditorConfig().mergeConfigValues( globalConfig ).mergeConfigValues( config );
+			}
+			if ( inlineConfig ) {
+				config = DistributionConfig.inline( pageContext.getServletContext(), basePath, config, null, pageContext.getRequest() );
+			}
+			if ( removeUnusedPlugins ) {
+				config = PluginAnalyzer.removeUnusedPlugins( pageContext.getServletContext(), basePath, config, null );
+			}
+			if ( aggregateContentsCss ) {
+				config = ContentsCssAggregator.aggregate( pageContext.getServletContext(), basePath, config, null );
+			}
+			config = ToolbarPresets.getInstance( pageContext.getServletContext() ).resolve( config );
+
+			String staticOutput = getStaticOutput( config );
+			if ( staticOutput != null ) {
+				out.write( staticOutput );
+				return EVAL_PAGE;
+			}
+			StringBuilder externalScripts = new StringBuilder();
+			config = ExternalizedValues.externalize( pageContext.getServletContext(), basePath, config, null, pageContext.getRequest(),
+					externalScripts );
+
+			StringBuilder html = new StringBuilder();
+			String output = "";
+			if ( !initialized && !isInitializedParam() ) {
+				html.append( init() );
+			}
+
+			if ( globalEvents != null ) {
+				output += globalEvents.returnGlobalEvents();
+			}
+
+			if ( activation != CKEditor.Activation.IMMEDIATE
+					&& !EditorBootstrap.isInserted( pageContext, EditorBootstrap.ACTIVATION_SET_ATTRIBUTE ) ) {
+				output += EditorBootstrap.getActivationRuntime();
+				pageContext.setAttribute( EditorBootstrap.ACTIVATION_SET_ATTRIBUTE, new Boolean( true ) );
+			}
+			if ( activation != CKEditor.Activation.IMMEDIATE ) {
+				editorOrder = EditorBootstrap.nextOrder( pageContext.getRequest() );
+				if ( batchSize > 0 ) {
+					output += EditorBootstrap.setBatchSize( batchSize );
+				}
 			}
 			output += getTagOutput( config );
 
-			out.write( Utils.script( output ) );
+			html.append( externalScripts ).append( Utils.script( output ) );
+			out.write( html.toString() );
+			if ( fragmentKey != null ) {
+				Map< String, Object > newAttributes = new HashMap< String, Object >();
+				for ( String name : getPageAttributeNames() ) {
+					if ( !pageAttributes.contains( name ) ) {
+						newAttributes.put( name, pageContext.getAttribute( name ) );
+					}
+				}
+				cache.put( fragmentKey, html.toString(), newAttributes );
+			}
 		} catch ( IOException ie ) {
 			ckeditorTagLogger.log( Level.SEVERE, "Could not create CKEditorTag.", ie );
 			try {
@@ -108,10 +226,101 @@ public abstract class CKEditorTag extends TagSupport {
 			} catch ( IOException ioe ) {
 				ckeditorTagLogger.log( Level.SEVERE, "Could not return response to the client.", ioe );
 			}
+		} finally {
+			config = tagConfig;
 		}
 		return EVAL_PAGE;
 	}
 
+	/**
+	 * Returns the key describing all inputs of the tag output: the tag attributes, the versions of the configuration and events objects and
+	 * the state of the page left by previous tags. Files read by the tag, such as {@code config.js}, are covered by the timestamp. Output
+	 * linking an aggregated {@code contentsCss} stylesheet is not cached, because the generated stylesheet may be replaced or evicted
+	 * while the fragment is still cached.
+	 * 
+	 * @param globalConfig
+	 *        the global configuration object. May be {@code null}.
+	 * @param profileConfig
+	 *        the configuration profile. May be {@code null}.
+	 * @return the key or {@code null} if the output of this tag cannot be cached.
+	 */
+	private String getFragmentKey( final CKEditorConfig globalConfig, final CKEditorConfig profileConfig ) {
+		if ( !isFragmentCacheable() || aggregateContentsCss || ( config != null && !config.isCacheable() )
+				|| ( globalConfig != null && !globalConfig.isCacheable() ) || ( profileConfig != null && !profileConfig.isCacheable() ) ) {
+			return null;
+		}
+		ServletRequest request = pageContext.getRequest();
+		StringBuilder key = new StringBuilder( getClass().getName() );
+		key.append( '\n' ).append( getCKEditorName() );
+		key.append( '\n' ).append( basePath ).append( '\n' ).append( getTimestamp() );
+		key.append( '\n' ).append( config != null ? config.getVersion() : "-" );
+		key.append( '\n' ).append( globalConfig != null ? globalConfig.getVersion() : "-" );
+		key.append( '\n' ).append( profileConfig != null ? profileConfig.getVersion() : "-" );
+		key.append( '\n' ).append( events != null ? events.getVersion() : "-" );
+		key.append( '\n' ).append( globalEvents != null ? globalEvents.getVersion() : "-" );
+		key.append( '\n' ).append( ToolbarPresets.getInstance( pageContext.getServletContext() ).getVersion() );
+		key.append( ',' ).append( CKEditorBundles.getVersion( pageContext.getServletContext() ) );
+		key.append( '\n' ).append( activation ).append( ',' ).append( batchSize );
+		key.append( ',' ).append( initialized ).append( ',' ).append( inlineConfig ).append( ',' ).append( removeUnusedPlugins );
+		key.append( ',' ).append( pageContext.getAttribute( "ckeditor_initialized" ) != null
+				|| request.getAttribute( "ckeditor_initialized" ) != null );
+		key.append( ',' ).append( EditorBootstrap.isInserted( pageContext, EditorBootstrap.ACTIVATION_SET_ATTRIBUTE ) );
+		key.append( ',' ).append( EditorBootstrap.isInserted( pageContext, "ckeditor_disable_auto_inline_set" ) );
+		if ( isOnDemand() ) {
+			key.append( ',' ).append( EditorBootstrap.peekOrder( request ) );
+		}
+		if ( inlineConfig && request instanceof HttpServletRequest ) {
+			key.append( '\n' ).append( ( ( HttpServletRequest ) request ).getHeader( "Accept-Language" ) );
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the names of the attributes in the page scope.
+	 * 
+	 * @return the set of attribute names.
+	 */
+	private Set< String > getPageAttributeNames() {
+		Set< String > names = new HashSet< String >();
+		@SuppressWarnings( "unchecked" ) Enumeration< String > e = pageContext.getAttributeNamesInScope( PageContext.PAGE_SCOPE );
+		while ( e.hasMoreElements() ) {
+			names.add( e.nextElement() );
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the configuration profile named by the {@code profile} attribute. The profile is loaded from the
+	 * {@code CKEditorConfigRepository} stored in the application scope or, if there is none, from {@code ConfigProfiles}.
+	 * 
+	 * @return the frozen profile configuration or {@code null} if no profile is used or it does not exist.
+	 * @throws IOException
+	 *         if the repository fails to load the profile. The editor is not created then, because creating it without the profile could
+	 *         enable features the profile disables.
+	 */
+	private CKEditorConfig getProfileConfig() throws IOException {
+		if ( Utils.isStringEmpty( profile ) ) {
+			return null;
+		}
+		ServletContext context = pageContext.getServletContext();
+		CKEditorConfigRepository repository = ( CKEditorConfigRepository ) context
+				.getAttribute( CKEditorConfigRepository.REPOSITORY_ATTRIBUTE );
+		CKEditorConfig profileConfig;
+		if ( repository != null ) {
+			try {
+				profileConfig = repository.load( profile );
+			} catch ( RuntimeException e ) {
+				throw new IOException( "The repository failed to load configuration profile " + profile + ".", e );
+			}
+		} else {
+			profileConfig = ConfigProfiles.getInstance( context ).getProfile( profile );
+		}
+		if ( profileConfig == null ) {
+			ckeditorTagLogger.log( Level.WARNING, "Configuration profile {0} does not exist.", profile );
+		}
+		return profileConfig;
+	}
+
 	/**
 	 * Returns the global configuration object if it is found in the page, request, session or application scope. The object is searched
 	 * under the {@code ckeditor_global_config} name.
@@ -183,6 +392,8 @@ public abstract class CKEditorTag extends TagSupport {
 	private void parseParamsFromContext( final Map< String, String > map ) {
 		if ( !map.isEmpty() && config == null ) {
 			config = new CKEditorConfig();
+		} else if ( !map.isEmpty() && config.isFrozen() ) {
+			config = new CKEditorConfig().mergeConfigValues( config );
 		}
 		for ( Map.Entry< String, String > configEntry : map.entrySet() ) {
 			config.addConfigValue( configEntry.getKey(), map.get( configEntry.getValue() ) );
@@ -218,11 +429,35 @@ public abstract class CKEditorTag extends TagSupport {
 	 */
 	protected abstract String getTagOutput( final CKEditorConfig config );
 
+	/**
+	 * Returns the static HTML representation of the tag which is inserted into JSP instead of an editor instance. If it is not
+	 * {@code null}, neither base parameters nor the editor creation code are inserted into JSP.
+	 * 
+	 * @param config
+	 *        the {@code CKEditorConfig} object storing configuration for the editor instance.
+	 * @return a string representing the static output of the tag or {@code null} if an editor instance should be created. This
+	 *         implementation always returns {@code null}.
+	 */
+	protected String getStaticOutput( final CKEditorConfig config ) {
+		return null;
+	}
+
+	/**
+	 * Returns whether the output of the tag depends only on its attributes, the configuration and events objects and the state of the page,
+	 * so that it can be stored in the fragment cache. Tags which read other state must return {@code false}.
+	 * 
+	 * @return {@code true} if the output can be cached, {@code false} otherwise.
+	 */
+	protected boolean isFragmentCacheable() {
+		return false;
+	}
+
 	/**
 	 * Creates a {@code String} representing the set of CKEditor JavaScript base parameters.<br>
 	 * These parameters include:
 	 * <ul>
-	 * <li>The {@code script} tag pointing to an external {@code ckeditor.js} file.</li>
+	 * <li>The {@code script} tag pointing to an external {@code ckeditor.js} file or to a script bundle if editor configurations were
+	 * registered with {@link CKEditorBundles}.</li>
 	 * <li>{@code window.CKEDITOR_BASEPATH} if an absolute path to the CKEditor directory was provided.</li>
 	 * <li>{@code window.CKEDITOR.timestamp} if a timestamp string was provided.</li>
 	 * </ul>
@@ -251,8 +486,13 @@ public abstract class CKEditorTag extends TagSupport {
 		StringBuilder out = new StringBuilder();
 		String args = "";
 		String ckeditorPath = getBasePath();
-		if ( timestamp != null ) {
-			args += "?t=" + timestamp;
+		String currentTimestamp = getTimestamp();
+		String bundleId = CKEditorBundles.findBundleId( pageContext.getServletContext(), config );
+		if ( bundleId != null ) {
+			args += "?b=" + bundleId;
+		}
+		if ( currentTimestamp != null ) {
+			args += ( args.length() > 0 ? "&t=" : "?t=" ) + currentTimestamp;
 		}
 		if ( !ckeditorPath.startsWith( ".." ) && !ckeditorPath.startsWith( "./" ) ) {
 			out.append( Utils.script( new StringBuilder( "window.CKEDITOR_BASEPATH='" ).append( basePath ).append( "';\n" ).toString() ) );
@@ -260,8 +500,9 @@ public abstract class CKEditorTag extends TagSupport {
 		out.append( Utils.createCKEditorIncJS( ckeditorPath, args ) );
 
 		StringBuilder extraCode = new StringBuilder();
-		if ( timestamp != null ) {
-			extraCode.append( ( extraCode.length() > 0 ) ? "\n" : "" ).append( "CKEDITOR.timestamp='" ).append( timestamp ).append( "';\n" );
+		if ( currentTimestamp != null ) {
+			extraCode.append( ( extraCode.length() > 0 ) ? "\n" : "" ).append( "CKEDITOR.timestamp='" ).append( currentTimestamp )
+					.append( "';\n" );
 		}
 		if ( extraCode.length() > 0 ) {
 			out.append( Utils.script( extraCode.toString() ) );
@@ -275,7 +516,7 @@ public abstract class CKEditorTag extends TagSupport {
 	 * 
 	 * @return a string representing the {@code basePath} (with the slash character at the end).
 	 */
-	private String getBasePath() {
+	protected final String getBasePath() {
 		return basePath;
 	}
 
@@ -296,18 +537,26 @@ public abstract class CKEditorTag extends TagSupport {
 	 * Returns the timestamp value which is used to build the URL for all resources loaded by the editor code, guaranteeing clean cache
 	 * results when upgrading.
 	 * 
-	 * @return a string of characters representing the timestamp.
+	 * @return a string of characters representing the timestamp. If the timestamp is set to {@code auto}, the timestamp computed from the
+	 *         content of the CKEditor directory is returned.
 	 */
 	public final String getTimestamp() {
+		if ( DistributionDigest.AUTO.equalsIgnoreCase( timestamp ) ) {
+			return DistributionDigest.getTimestamp( pageContext.getServletContext(), basePath );
+		}
 		return timestamp;
 	}
 
 	/**
 	 * Sets the timestamp value which is used to build the URL for all resources loaded by the editor code, guaranteeing clean cache results
 	 * when upgrading.
+	 * <p>
+	 * If set to {@code auto}, the timestamp is computed from the content of the CKEditor directory, so it changes whenever the distribution
+	 * changes. The directory is found through the base path or, if the files are served by the {@code CKEditorAssetServlet}, through the
+	 * servlet.
 	 * 
 	 * @param timestamp
-	 *        a string of characters representing the timestamp.
+	 *        a string of characters representing the timestamp or {@code auto}.
 	 */
 	public final void setTimestamp( final String timestamp ) {
 		this.timestamp = timestamp;
@@ -396,6 +645,128 @@ public abstract class CKEditorTag extends TagSupport {
 		this.events = events;
 	}
 
+	/**
+	 * Returns the {@code Enum} marker indicating when editor instances should be created on the client side.
+	 * 
+	 * @return the {@code Enum} marker representing the activation mode.
+	 */
+	protected final CKEditor.Activation getActivation() {
+		return activation;
+	}
+
+	/**
+	 * Sets the mode indicating when editor instances should be created on the client side. Accepted values are {@code immediate} (default),
+	 * {@code scheduled} (editors are created in small batches right after the page is parsed), {@code visible} (the editor is created when
+	 * its element scrolls into view or receives focus) and {@code focus} (the editor is created when its element receives focus).
+	 * 
+	 * @param activation
+	 *        a string representing the activation mode.
+	 * @see CKEditor.Activation
+	 */
+	public final void setActivation( final String activation ) {
+		if ( Utils.isStringEmpty( activation ) ) {
+			this.activation = CKEditor.Activation.IMMEDIATE;
+		} else {
+			this.activation = CKEditor.Activation.valueOf( activation.toUpperCase( Locale.ENGLISH ) );
+		}
+	}
+
+	/**
+	 * Sets the number of scheduled editor instances created in a single batch. The value applies to all scheduled editors on the page and
+	 * is only used with the {@code scheduled} activation mode.
+	 * 
+	 * @param batchSize
+	 *        the number of editor instances created in a single batch.
+	 */
+	public final void setBatchSize( final int batchSize ) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets a flag indicating whether plugins unused by the toolbar should be removed. If set, plugins which provide toolbar items, have none
+	 * of their items in the {@code toolbar} list and are not required by other plugins are added to {@code removePlugins}. The analysis
+	 * needs access to the CKEditor directory and is cached per configuration.
+	 * 
+	 * @param removeUnusedPlugins
+	 *        a Boolean flag indicating whether unused plugins should be removed.
+	 */
+	public final void setRemoveUnusedPlugins( final boolean removeUnusedPlugins ) {
+		this.removeUnusedPlugins = removeUnusedPlugins;
+	}
+
+	/**
+	 * Sets a flag indicating whether the settings of {@code config.js} and {@code styles.js} should be sent inline with the configuration.
+	 * If set, the files are read from the CKEditor directory once, their settings are merged into the configuration and
+	 * {@code customConfig} is set to an empty string, so the editor does not request them. The language preferred by the client is also
+	 * resolved from the {@code Accept-Language} header unless set in the configuration.
+	 * 
+	 * @param inlineConfig
+	 *        a Boolean flag indicating whether the distribution configuration should be inlined.
+	 */
+	public final void setInlineConfig( final boolean inlineConfig ) {
+		this.inlineConfig = inlineConfig;
+	}
+
+	/**
+	 * Sets a flag indicating whether the {@code contentsCss} stylesheets should be aggregated. If set, the stylesheets are combined into a
+	 * single minified stylesheet served by the {@code CKEditorAssetServlet}, which has to be mapped to the base path, and
+	 * {@code contentsCss} is changed to point at it.
+	 * 
+	 * @param aggregateContentsCss
+	 *        a Boolean flag indicating whether the stylesheets should be aggregated.
+	 */
+	public final void setAggregateContentsCss( final boolean aggregateContentsCss ) {
+		this.aggregateContentsCss = aggregateContentsCss;
+	}
+
+	/**
+	 * Sets the flag indicating whether the output of the tag should be stored in the fragment cache. A cached output is reused when the tag
+	 * is rendered again with the same attributes, unchanged configuration and events objects and the same state of the page. Configurations
+	 * with lazily computed or externalized values, editors with aggregated {@code contentsCss} stylesheets and editors configured with the
+	 * {@code ckeditor-params} page attribute are never cached.
+	 * Changes made directly to the map returned by {@link CKEditorConfig#getConfigValues()} are not detected, and neither are changes of
+	 * {@code Map} or {@code List} values stored in the configuration, such as a toolbar list modified in place. Such values have to be
+	 * replaced with one of the {@code CKEditorConfig.addConfigValue} methods, or the configuration has to be frozen.
+	 * 
+	 * @param fragmentCache
+	 *        {@code true} to cache the output of the tag.
+	 */
+	public final void setFragmentCache( final boolean fragmentCache ) {
+		this.fragmentCache = fragmentCache;
+	}
+
+	/**
+	 * Sets the name of the configuration profile used as the base of the editor configuration. Options set with the {@code config}
+	 * attribute override the options of the profile, which override the global configuration. Profiles are loaded from the
+	 * {@link CKEditorConfigRepository} stored in the application scope or, if there is none, from files by {@link ConfigProfiles}. If the
+	 * repository fails, an error message is displayed in place of the editor.
+	 * 
+	 * @param profile
+	 *        the name of the configuration profile.
+	 */
+	public final void setProfile( final String profile ) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Returns the position of this tag among the editors inserted into JSP. Scheduled editors are created in this order, except for the
+	 * editors visible in the viewport which are created first.
+	 * 
+	 * @return the zero-based position of this tag.
+	 */
+	protected final int getEditorOrder() {
+		return editorOrder;
+	}
+
+	/**
+	 * Returns {@code true} if editor instances created by this tag are created on demand rather than immediately.
+	 * 
+	 * @return {@code true} if the activation mode is other than {@code immediate}, {@code false} otherwise.
+	 */
+	protected final boolean isOnDemand() {
+		return activation != CKEditor.Activation.IMMEDIATE;
+	}
+
 	/**
 	 * Returns the name of this CKEditor instance.
 	 * 
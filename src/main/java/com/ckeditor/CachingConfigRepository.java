@@ -0,0 +1,237 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code CachingConfigRepository} class keeps recently used configurations of another repository in memory. The cache is bounded by
+ * the number of configurations, evicting the least recently used ones, and configurations expire after the given time, so changes in the
+ * store become visible. Concurrent requests for a configuration which is not cached wait for a single load. Loaded configurations are
+ * frozen and encoded once, and names without a configuration are cached as well.
+ * <p>
+ * Subscribed to an {@link InvalidationBus}, the repository drops configurations changed on any node of a cluster.
+ */
+public class CachingConfigRepository implements CKEditorConfigRepository, InvalidationListener {
+
+	/**
+	 * The repository loading configurations.
+	 */
+	private final CKEditorConfigRepository repository;
+	/**
+	 * Cached configurations by name.
+	 */
+	private final LruCache< String, Entry > cache;
+	/**
+	 * Time in nanoseconds after which cached configurations expire. If it is not positive, they never expire.
+	 */
+	private final long timeToLive;
+	/**
+	 * Loads in progress by name.
+	 */
+	private final ConcurrentMap< String, FutureTask< CKEditorConfig >> loading =
+			new ConcurrentHashMap< String, FutureTask< CKEditorConfig >>();
+	/**
+	 * Number of invalidations, used to avoid caching configurations whose load started before an invalidation.
+	 */
+	private final AtomicLong invalidations = new AtomicLong();
+
+	/**
+	 * Creates the {@code CachingConfigRepository} object.
+	 * 
+	 * @param repository
+	 *        the repository loading configurations.
+	 * @param maxSize
+	 *        the maximum number of cached configurations.
+	 * @param timeToLive
+	 *        the time after which cached configurations expire. If it is not positive, they never expire.
+	 * @param unit
+	 *        the unit of {@code timeToLive}.
+	 */
+	public CachingConfigRepository( final CKEditorConfigRepository repository, final int maxSize, final long timeToLive,
+			final TimeUnit unit ) {
+		if ( repository == null ) {
+			throw new IllegalArgumentException( "The repository cannot be null." );
+		}
+		this.repository = repository;
+		this.timeToLive = unit.toNanos( timeToLive );
+		this.cache = new LruCache< String, Entry >( maxSize, new LruCache.Weigher< Entry >() {
+			public long weigh( final Entry entry ) {
+				return 1;
+			}
+		} );
+	}
+
+	/**
+	 * Returns a configuration from the cache or loads it. If the configuration is being loaded by another thread, waits for its result.
+	 * 
+	 * @param name
+	 *        the name of the configuration.
+	 * @return the frozen configuration or {@code null} if there is no configuration with this name.
+	 * @throws IOException
+	 *         if the configuration cannot be loaded.
+	 */
+	public CKEditorConfig load( final String name ) throws IOException {
+		Entry entry = cache.get( name );
+		if ( entry != null && !entry.isExpired() ) {
+			return entry.config;
+		}
+		final long invalidation = invalidations.get();
+		FutureTask< CKEditorConfig > task = new FutureTask< CKEditorConfig >( new Callable< CKEditorConfig >() {
+			public CKEditorConfig call() throws IOException {
+				CKEditorConfig config = repository.load( name );
+				if ( config != null ) {
+					config = config.freeze();
+					if ( !config.usesToolbarPreset() ) {
+						Utils.jsEncode( config );
+					}
+				}
+				if ( invalidations.get() == invalidation ) {
+					cache.put( name, new Entry( config ) );
+				}
+				return config;
+			}
+		} );
+		FutureTask< CKEditorConfig > current = loading.putIfAbsent( name, task );
+		if ( current == null ) {
+			current = task;
+			try {
+				task.run();
+			} finally {
+				loading.remove( name, task );
+			}
+		}
+		try {
+			return current.get();
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "Interrupted while loading configuration " + name + "." );
+		} catch ( ExecutionException e ) {
+			Throwable cause = e.getCause();
+			if ( cause instanceof IOException ) {
+				throw ( IOException ) cause;
+			} else if ( cause instanceof RuntimeException ) {
+				throw ( RuntimeException ) cause;
+			} else if ( cause instanceof Error ) {
+				throw ( Error ) cause;
+			}
+			throw new IOException( "Could not load configuration " + name + ".", cause );
+		}
+	}
+
+	/**
+	 * Removes a configuration from the cache, so it is loaded again when it is requested. A load which is in progress is detached, so
+	 * later requests start a new load instead of waiting for the result read before the change. Requests already waiting for it still
+	 * receive that result.
+	 * 
+	 * @param name
+	 *        the name of the configuration.
+	 */
+	public void invalidate( final String name ) {
+		invalidations.incrementAndGet();
+		loading.remove( name );
+		cache.remove( name );
+	}
+
+	/**
+	 * Removes all configurations from the cache and detaches the loads in progress.
+	 */
+	public void invalidateAll() {
+		invalidations.incrementAndGet();
+		loading.clear();
+		cache.clear();
+	}
+
+	/**
+	 * Removes a configuration changed on any node from the cache.
+	 * 
+	 * @param name
+	 *        the name of the changed configuration or {@link InvalidationBus#ALL}.
+	 * @param version
+	 *        the version stamp of the change.
+	 */
+	public void invalidated( final String name, final long version ) {
+		if ( InvalidationBus.ALL.equals( name ) ) {
+			invalidateAll();
+		} else {
+			invalidate( name );
+		}
+	}
+
+	/**
+	 * Returns the number of cached configurations.
+	 * 
+	 * @return the number of configurations.
+	 */
+	public int getSize() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the number of requests which found a configuration in the cache, including expired ones.
+	 * 
+	 * @return the hit count.
+	 */
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	/**
+	 * Returns the number of requests which did not find a configuration in the cache.
+	 * 
+	 * @return the miss count.
+	 */
+	public long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	/**
+	 * Returns the number of configurations evicted because of the size limit.
+	 * 
+	 * @return the eviction count.
+	 */
+	public long getEvictionCount() {
+		return cache.getEvictionCount();
+	}
+
+	/**
+	 * Cached configuration together with its load time.
+	 */
+	private final class Entry {
+
+		/**
+		 * The configuration or {@code null} if there is no configuration with this name.
+		 */
+		private final CKEditorConfig config;
+		/**
+		 * Time in nanoseconds ({@code System.nanoTime}) at which the configuration was loaded.
+		 */
+		private final long loadedAt = System.nanoTime();
+
+		/**
+		 * Creates the {@code Entry} object.
+		 * 
+		 * @param config
+		 *        the loaded configuration.
+		 */
+		Entry( final CKEditorConfig config ) {
+			this.config = config;
+		}
+
+		/**
+		 * Checks if the configuration has expired.
+		 * 
+		 * @return {@code true} if the configuration is older than the time to live.
+		 */
+		boolean isExpired() {
+			return timeToLive > 0 && System.nanoTime() - loadedAt >= timeToLive;
+		}
+	}
+}
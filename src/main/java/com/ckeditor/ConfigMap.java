@@ -0,0 +1,391 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The {@code ConfigMap} class is a compact {@code Map} storing the options of a {@code CKEditorConfig} object in parallel key and value
+ * arrays. Editor configurations usually contain a handful of options, so a linear scan is as fast as hashing while no entry objects are
+ * allocated, and copying a configuration only copies the arrays. Names of known CKEditor options are replaced with shared instances, so
+ * most lookups are decided by comparing references. Entries are kept in insertion order.
+ * <p>
+ * Like {@code HashMap}, the class is not thread-safe and permits {@code null} keys and values.
+ */
+final class ConfigMap extends AbstractMap< String, Object > {
+
+	/**
+	 * Initial length of the arrays.
+	 */
+	private static final int INITIAL_CAPACITY = 8;
+	/**
+	 * Names of common CKEditor options. Their positions are used as codes in the serialized form of configurations, so new names must
+	 * be appended at the end.
+	 */
+	private static final String[] KNOWN_KEY_NAMES = {
+			"allowedContent", "autoGrow_maxHeight", "autoGrow_minHeight", "autoUpdateElement", "baseHref", "bodyClass", "bodyId",
+			"colorButton_backStyle", "colorButton_foreStyle", "contentsCss", "contentsLangDirection", "customConfig", "defaultLanguage",
+			"dialog_backgroundCoverOpacity", "disableNativeSpellChecker", "disallowedContent", "docType", "enterMode", "entities",
+			"extraAllowedContent", "extraPlugins", "filebrowserBrowseUrl", "filebrowserFlashBrowseUrl", "filebrowserFlashUploadUrl",
+			"filebrowserImageBrowseUrl", "filebrowserImageUploadUrl", "filebrowserUploadUrl", "filebrowserWindowHeight",
+			"filebrowserWindowWidth", "font_names", "fontSize_sizes", "forcePasteAsPlainText", "format_tags", "fullPage", "height",
+			"language", "language_list", "on", "plugins", "readOnly", "removeButtons", "removeDialogTabs", "removePlugins",
+			"resize_enabled", "shiftEnterMode", "skin", "startupFocus", "stylesSet", "tabSpaces", "templates", "templates_files", "title",
+			"toolbar", "toolbarCanCollapse", "toolbarGroups", "toolbarStartupExpanded", "uiColor", "width" };
+	/**
+	 * Shared instances of the names of common CKEditor options, with their positions in {@link #KNOWN_KEY_NAMES}.
+	 */
+	private static final Map< String, Integer > KNOWN_KEYS = new HashMap< String, Integer >();
+
+	static {
+		for ( int i = 0; i < KNOWN_KEY_NAMES.length; i++ ) {
+			KNOWN_KEYS.put( KNOWN_KEY_NAMES[ i ], Integer.valueOf( i ) );
+		}
+	}
+
+	/**
+	 * Keys of the entries.
+	 */
+	private String[] keys;
+	/**
+	 * Values of the entries, at the same positions as their keys.
+	 */
+	private Object[] values;
+	/**
+	 * Number of entries.
+	 */
+	private int size;
+	/**
+	 * Number of structural modifications, used to detect concurrent modifications during iteration.
+	 */
+	private int modCount;
+	/**
+	 * View of the entries, created when first requested.
+	 */
+	private transient Set< Map.Entry< String, Object >> entrySet;
+
+	/**
+	 * Creates an empty {@code ConfigMap} object.
+	 */
+	ConfigMap() {
+		keys = new String[ INITIAL_CAPACITY ];
+		values = new Object[ INITIAL_CAPACITY ];
+	}
+
+	/**
+	 * Creates a {@code ConfigMap} object with the same entries as the given one.
+	 * 
+	 * @param map
+	 *        the map to copy.
+	 */
+	ConfigMap( final ConfigMap map ) {
+		int capacity = Math.max( map.size, INITIAL_CAPACITY );
+		keys = Arrays.copyOf( map.keys, capacity );
+		values = Arrays.copyOf( map.values, capacity );
+		size = map.size;
+	}
+
+	/**
+	 * Returns the shared instance of a known option name.
+	 * 
+	 * @param key
+	 *        the option name.
+	 * @return the shared instance or {@code key} if the name is not known.
+	 */
+	static String internKey( final String key ) {
+		int code = getKeyCode( key );
+		return ( code != -1 ) ? KNOWN_KEY_NAMES[ code ] : key;
+	}
+
+	/**
+	 * Returns the code of a known option name.
+	 * 
+	 * @param key
+	 *        the option name.
+	 * @return the position of the name among known names or {@code -1} if the name is not known.
+	 */
+	static int getKeyCode( final String key ) {
+		Integer code = ( key != null ) ? KNOWN_KEYS.get( key ) : null;
+		return ( code != null ) ? code.intValue() : -1;
+	}
+
+	/**
+	 * Returns the known option name with the given code.
+	 * 
+	 * @param code
+	 *        the code of the name.
+	 * @return the option name or {@code null} if there is no name with this code.
+	 */
+	static String getKnownKey( final int code ) {
+		return ( code >= 0 && code < KNOWN_KEY_NAMES.length ) ? KNOWN_KEY_NAMES[ code ] : null;
+	}
+
+	/**
+	 * Returns the position of the key.
+	 * 
+	 * @param key
+	 *        the key to find.
+	 * @return the index of the entry or {@code -1} if there is no such key.
+	 */
+	private int indexOf( final Object key ) {
+		for ( int i = 0; i < size; i++ ) {
+			if ( keys[ i ] == key ) {
+				return i;
+			}
+		}
+		if ( key != null ) {
+			int hash = key.hashCode();
+			for ( int i = 0; i < size; i++ ) {
+				if ( keys[ i ] != null && keys[ i ].hashCode() == hash && key.equals( keys[ i ] ) ) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey( final Object key ) {
+		return indexOf( key ) != -1;
+	}
+
+	@Override
+	public Object get( final Object key ) {
+		int i = indexOf( key );
+		return ( i != -1 ) ? values[ i ] : null;
+	}
+
+	@Override
+	public Object put( final String key, final Object value ) {
+		int i = indexOf( key );
+		if ( i != -1 ) {
+			Object old = values[ i ];
+			values[ i ] = value;
+			return old;
+		}
+		if ( size == keys.length ) {
+			keys = Arrays.copyOf( keys, size * 2 );
+			values = Arrays.copyOf( values, size * 2 );
+		}
+		keys[ size ] = internKey( key );
+		values[ size ] = value;
+		size++;
+		modCount++;
+		return null;
+	}
+
+	@Override
+	public void putAll( final Map< ? extends String, ? extends Object > map ) {
+		if ( map instanceof ConfigMap ) {
+			ConfigMap other = ( ConfigMap ) map;
+			if ( size == 0 ) {
+				keys = Arrays.copyOf( other.keys, Math.max( other.size, INITIAL_CAPACITY ) );
+				values = Arrays.copyOf( other.values, keys.length );
+				size = other.size;
+				modCount++;
+			} else {
+				for ( int i = 0; i < other.size; i++ ) {
+					put( other.keys[ i ], other.values[ i ] );
+				}
+			}
+		} else {
+			super.putAll( map );
+		}
+	}
+
+	@Override
+	public Object remove( final Object key ) {
+		int i = indexOf( key );
+		return ( i != -1 ) ? removeAt( i ) : null;
+	}
+
+	/**
+	 * Removes the entry at the given position, keeping the order of other entries.
+	 * 
+	 * @param i
+	 *        the index of the entry.
+	 * @return the value of the removed entry.
+	 */
+	private Object removeAt( final int i ) {
+		Object old = values[ i ];
+		System.arraycopy( keys, i + 1, keys, i, size - i - 1 );
+		System.arraycopy( values, i + 1, values, i, size - i - 1 );
+		size--;
+		keys[ size ] = null;
+		values[ size ] = null;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill( keys, 0, size, null );
+		Arrays.fill( values, 0, size, null );
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set< Map.Entry< String, Object >> entrySet() {
+		if ( entrySet == null ) {
+			entrySet = new AbstractSet< Map.Entry< String, Object >>() {
+				@Override
+				public Iterator< Map.Entry< String, Object >> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+
+				@Override
+				public void clear() {
+					ConfigMap.this.clear();
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Iterator over the entries, creating entry objects on demand.
+	 */
+	private final class EntryIterator implements Iterator< Map.Entry< String, Object >> {
+
+		/**
+		 * Index of the next entry.
+		 */
+		private int next;
+		/**
+		 * Index of the entry returned last or {@code -1}.
+		 */
+		private int last = -1;
+		/**
+		 * Modification count expected by this iterator.
+		 */
+		private int expectedModCount = modCount;
+
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		public Map.Entry< String, Object > next() {
+			if ( modCount != expectedModCount ) {
+				throw new ConcurrentModificationException();
+			}
+			if ( next >= size ) {
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			return new Entry( last );
+		}
+
+		public void remove() {
+			if ( last == -1 ) {
+				throw new IllegalStateException();
+			}
+			if ( modCount != expectedModCount ) {
+				throw new ConcurrentModificationException();
+			}
+			removeAt( last );
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	/**
+	 * Entry returned by the iterator. It remembers its position, so setting its value does not search for the key.
+	 */
+	private final class Entry implements Map.Entry< String, Object > {
+
+		/**
+		 * Index of the entry when it was created.
+		 */
+		private final int index;
+		/**
+		 * Key of the entry.
+		 */
+		private final String key;
+		/**
+		 * Value of the entry.
+		 */
+		private Object value;
+
+		/**
+		 * Creates the {@code Entry} object.
+		 * 
+		 * @param index
+		 *        the index of the entry.
+		 */
+		Entry( final int index ) {
+			this.index = index;
+			this.key = keys[ index ];
+			this.value = values[ index ];
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+
+		public Object setValue( final Object value ) {
+			Object old = this.value;
+			this.value = value;
+			if ( index < size && keys[ index ] == key ) {
+				values[ index ] = value;
+			} else {
+				put( key, value );
+			}
+			return old;
+		}
+
+		@Override
+		public boolean equals( final Object o ) {
+			if ( !( o instanceof Map.Entry ) ) {
+				return false;
+			}
+			Map.Entry< ?, ? > e = ( Map.Entry< ?, ? > ) o;
+			return eq( getKey(), e.getKey() ) && eq( getValue(), e.getValue() );
+		}
+
+		@Override
+		public int hashCode() {
+			return ( getKey() == null ? 0 : getKey().hashCode() ) ^ ( getValue() == null ? 0 : getValue().hashCode() );
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+
+		/**
+		 * Compares two objects which may be {@code null}.
+		 * 
+		 * @param a
+		 *        the first object.
+		 * @param b
+		 *        the second object.
+		 * @return {@code true} if the objects are equal.
+		 */
+		private boolean eq( final Object a, final Object b ) {
+			return ( a == null ) ? b == null : a.equals( b );
+		}
+	}
+}
@@ -0,0 +1,336 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The {@code ConfigProfiles} class loads named editor configurations from files, so they are parsed once and shared by all editors
+ * instead of being built for every request. Tags refer to a profile with the {@code profile} attribute.
+ * <p>
+ * Each file in the profiles directory defines one profile named after the file:
+ * <ul>
+ * <li>{@code <name>.json} files contain a JSON object whose properties are configuration options. Strings starting with {@code @@} are
+ * inserted as JavaScript code, as with {@link CKEditorConfig#addConfigValue(String, String)}.</li>
+ * <li>{@code <name>.properties} files contain one option per line. The {@code true} and {@code false} values are read as booleans and
+ * integral values as numbers. The files are read with UTF-8.</li>
+ * </ul>
+ * The directory is {@code /WEB-INF/ckeditor-profiles} unless the {@code com.ckeditor.profilesDirectory} context parameter sets another
+ * path of the web application or an absolute file system path. Profiles are frozen (see {@link CKEditorConfig#freeze()}) and their
+ * JavaScript representation is computed once.
+ * <p>
+ * The files are checked for changes at most every {@code com.ckeditor.profilesCheckInterval} seconds (5 by default, a negative value
+ * disables reloading) by the request which reads a profile after the interval has passed. Changed profiles are parsed and the whole set
+ * is replaced at once, so reading a profile never takes a lock. If a file cannot be parsed, the previous version of its profile is kept.
+ */
+public final class ConfigProfiles {
+
+	/**
+	 * Private logger.
+	 */
+	private static final Logger configProfilesLogger = Logger.getLogger( ConfigProfiles.class.getName() );
+	/**
+	 * Name of the application attribute storing the {@code ConfigProfiles} object.
+	 */
+	static final String PROFILES_ATTRIBUTE = "ckeditor_config_profiles";
+	/**
+	 * Name of the context parameter setting the profiles directory.
+	 */
+	static final String DIRECTORY_PARAMETER = "com.ckeditor.profilesDirectory";
+	/**
+	 * Name of the context parameter setting the interval of checking the files for changes, in seconds.
+	 */
+	static final String CHECK_INTERVAL_PARAMETER = "com.ckeditor.profilesCheckInterval";
+	/**
+	 * Default profiles directory.
+	 */
+	static final String DEFAULT_DIRECTORY = "/WEB-INF/ckeditor-profiles";
+	/**
+	 * Default interval of checking the files for changes, in seconds.
+	 */
+	static final long DEFAULT_CHECK_INTERVAL = 5;
+	/**
+	 * Pattern matching integral values in properties files.
+	 */
+	private static final Pattern INTEGER = Pattern.compile( "-?[0-9]{1,9}" );
+	/**
+	 * The profiles directory.
+	 */
+	private final File directory;
+	/**
+	 * Interval of checking the files for changes in nanoseconds. If it is negative, the files are never checked again.
+	 */
+	private final long checkInterval;
+	/**
+	 * Loaded profiles by name. The map is never modified, it is replaced when profiles change.
+	 */
+	private volatile Map< String, Profile > profiles = Collections.emptyMap();
+	/**
+	 * Time in nanoseconds ({@code System.nanoTime}) at which the files were last checked.
+	 */
+	private volatile long lastCheck;
+	/**
+	 * Flag indicating whether a request is checking the files, so other requests do not wait for it.
+	 */
+	private final AtomicBoolean checking = new AtomicBoolean();
+	/**
+	 * Modification times of files which could not be loaded, so they are not loaded again until they change.
+	 */
+	private final Map< File, Long > failures = new HashMap< File, Long >();
+
+	/**
+	 * Creates the {@code ConfigProfiles} object and loads the profiles.
+	 * 
+	 * @param directory
+	 *        the profiles directory.
+	 * @param checkInterval
+	 *        the interval of checking the files for changes in nanoseconds. If it is negative, the files are never checked again.
+	 */
+	ConfigProfiles( final File directory, final long checkInterval ) {
+		this.directory = directory;
+		this.checkInterval = checkInterval;
+		reload();
+	}
+
+	/**
+	 * Returns the {@code ConfigProfiles} object of the web application, creating it and loading the profiles if it does not exist.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @return the {@code ConfigProfiles} object.
+	 */
+	public static ConfigProfiles getInstance( final ServletContext context ) {
+		ConfigProfiles instance = ( ConfigProfiles ) context.getAttribute( PROFILES_ATTRIBUTE );
+		if ( instance != null ) {
+			return instance;
+		}
+		synchronized ( ConfigProfiles.class ) {
+			instance = ( ConfigProfiles ) context.getAttribute( PROFILES_ATTRIBUTE );
+			if ( instance == null ) {
+				String path = context.getInitParameter( DIRECTORY_PARAMETER );
+				String interval = context.getInitParameter( CHECK_INTERVAL_PARAMETER );
+				try {
+					long seconds = Utils.isStringEmpty( interval ) ? DEFAULT_CHECK_INTERVAL : Long.parseLong( interval.trim() );
+					instance = new ConfigProfiles( findDirectory( context, Utils.isStringEmpty( path ) ? DEFAULT_DIRECTORY : path.trim() ),
+							( seconds < 0 ) ? -1 : TimeUnit.SECONDS.toNanos( seconds ) );
+				} catch ( NumberFormatException e ) {
+					throw new IllegalArgumentException( "Invalid " + CHECK_INTERVAL_PARAMETER + " parameter: " + interval, e );
+				}
+				context.setAttribute( PROFILES_ATTRIBUTE, instance );
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Resolves the profiles directory to a path of the web application or an absolute file system path.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param path
+	 *        the configured path.
+	 * @return the directory.
+	 */
+	private static File findDirectory( final ServletContext context, final String path ) {
+		String realPath = context.getRealPath( path );
+		File file = new File( path );
+		if ( ( realPath == null || !new File( realPath ).isDirectory() ) && file.isAbsolute() && file.isDirectory() ) {
+			return file;
+		}
+		return ( realPath != null ) ? new File( realPath ) : file;
+	}
+
+	/**
+	 * Returns a profile, reloading the profiles first if the check interval has passed.
+	 * 
+	 * @param name
+	 *        the name of the profile.
+	 * @return the frozen configuration or {@code null} if there is no such profile.
+	 */
+	public CKEditorConfig getProfile( final String name ) {
+		checkForChanges();
+		Profile profile = profiles.get( name );
+		return ( profile != null ) ? profile.config : null;
+	}
+
+	/**
+	 * Returns the names of loaded profiles.
+	 * 
+	 * @return an unmodifiable {@code Set} of profile names.
+	 */
+	public Set< String > getProfileNames() {
+		checkForChanges();
+		return profiles.keySet();
+	}
+
+	/**
+	 * Checks the files and loads the profiles which changed, regardless of the check interval.
+	 */
+	public synchronized void reload() {
+		Map< String, Profile > current = profiles;
+		Map< String, Profile > loaded = new HashMap< String, Profile >();
+		File[] files = ( directory != null ) ? directory.listFiles() : null;
+		if ( files != null ) {
+			Arrays.sort( files );
+			for ( File file : files ) {
+				String fileName = file.getName();
+				int dot = fileName.lastIndexOf( '.' );
+				String extension = ( dot != -1 ) ? fileName.substring( dot + 1 ) : "";
+				if ( !file.isFile() || !( "json".equals( extension ) || "properties".equals( extension ) ) ) {
+					continue;
+				}
+				String name = fileName.substring( 0, dot );
+				if ( loaded.containsKey( name ) ) {
+					configProfilesLogger.log( Level.WARNING, "Ignoring {0}, profile {1} is already defined.", new Object[] { file, name } );
+					continue;
+				}
+				Profile profile = current.get( name );
+				long lastModified = file.lastModified();
+				Long failure = failures.get( file );
+				if ( ( profile == null || !profile.isCurrent( file ) )
+						&& ( failure == null || failure.longValue() != lastModified ) ) {
+					long length = file.length();
+					try {
+						profile = new Profile( file, lastModified, length, load( file, extension ) );
+						failures.remove( file );
+					} catch ( IOException e ) {
+						failures.put( file, Long.valueOf( lastModified ) );
+						configProfilesLogger.log( Level.WARNING, "Could not read configuration profile " + file + ".", e );
+					} catch ( IllegalArgumentException e ) {
+						failures.put( file, Long.valueOf( lastModified ) );
+						configProfilesLogger.log( Level.WARNING, "Could not parse configuration profile " + file + ".", e );
+					}
+				}
+				if ( profile != null ) {
+					loaded.put( name, profile );
+				}
+			}
+		}
+		profiles = Collections.unmodifiableMap( loaded );
+		lastCheck = System.nanoTime();
+	}
+
+	/**
+	 * Reloads the profiles if the check interval has passed and no other request is reloading them.
+	 */
+	private void checkForChanges() {
+		if ( checkInterval >= 0 && System.nanoTime() - lastCheck >= checkInterval && checking.compareAndSet( false, true ) ) {
+			try {
+				reload();
+			} finally {
+				checking.set( false );
+			}
+		}
+	}
+
+	/**
+	 * Loads a profile file.
+	 * 
+	 * @param file
+	 *        the profile file.
+	 * @param extension
+	 *        the extension of the file, {@code json} or {@code properties}.
+	 * @return the frozen configuration.
+	 * @throws IOException
+	 *         if the file cannot be read.
+	 */
+	static CKEditorConfig load( final File file, final String extension ) throws IOException {
+		CKEditorConfig config = new CKEditorConfig();
+		Map< String, Object > values = config.getConfigValues();
+		if ( "json".equals( extension ) ) {
+			values.putAll( JsonParser.parseObject( new String( Utils.readFully( file ), "UTF-8" ) ) );
+		} else {
+			Properties properties = new Properties();
+			Reader reader = new InputStreamReader( new FileInputStream( file ), "UTF-8" );
+			try {
+				properties.load( reader );
+			} finally {
+				reader.close();
+			}
+			for ( String key : properties.stringPropertyNames() ) {
+				String value = properties.getProperty( key ).trim();
+				if ( "true".equals( value ) || "false".equals( value ) ) {
+					values.put( key, Boolean.valueOf( value ) );
+				} else if ( INTEGER.matcher( value ).matches() ) {
+					values.put( key, Integer.valueOf( value ) );
+				} else {
+					values.put( key, value );
+				}
+			}
+		}
+		config.freeze();
+		if ( !config.usesToolbarPreset() ) {
+			Utils.jsEncode( config );
+		}
+		return config;
+	}
+
+	/**
+	 * Loaded profile together with the state of its file.
+	 */
+	private static final class Profile {
+
+		/**
+		 * The profile file.
+		 */
+		private final File file;
+		/**
+		 * Modification time of the file when it was loaded.
+		 */
+		private final long lastModified;
+		/**
+		 * Length of the file when it was loaded.
+		 */
+		private final long length;
+		/**
+		 * The frozen configuration.
+		 */
+		private final CKEditorConfig config;
+
+		/**
+		 * Creates the {@code Profile} object.
+		 * 
+		 * @param file
+		 *        the profile file.
+		 * @param lastModified
+		 *        the modification time of the file before it was read.
+		 * @param length
+		 *        the length of the file before it was read.
+		 * @param config
+		 *        the configuration loaded from the file.
+		 */
+		Profile( final File file, final long lastModified, final long length, final CKEditorConfig config ) {
+			this.file = file;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.config = config;
+		}
+
+		/**
+		 * Checks if the profile was loaded from the current version of the file.
+		 * 
+		 * @param current
+		 *        the file found in the profiles directory.
+		 * @return {@code true} if the file has not changed since the profile was loaded.
+		 */
+		boolean isCurrent( final File current ) {
+			return file.equals( current ) && current.lastModified() == lastModified && current.length() == length;
+		}
+	}
+}
@@ -0,0 +1,368 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code ConfigSerialization} class implements the compact binary format used by {@code CKEditorConfig} and {@code EventHandler}
+ * to serialize themselves, so they can be stored in replicated sessions. Values of common types are written with a one-byte tag instead
+ * of Java class descriptors, numbers and lengths are written as variable-length integers and names of known CKEditor options are
+ * written as one-byte codes. Other values are written with Java serialization.
+ * <p>
+ * Every serialized object starts with a format version byte, so data written by older versions of the library can still be read.
+ */
+final class ConfigSerialization {
+
+	/**
+	 * Current version of the serialized format.
+	 */
+	static final int FORMAT_VERSION = 2;
+	/**
+	 * Tag of the {@code null} value.
+	 */
+	private static final int NULL = 0;
+	/**
+	 * Tag of a {@code String} value.
+	 */
+	private static final int STRING = 1;
+	/**
+	 * Tag of the {@code Boolean.TRUE} value.
+	 */
+	private static final int TRUE = 2;
+	/**
+	 * Tag of the {@code Boolean.FALSE} value.
+	 */
+	private static final int FALSE = 3;
+	/**
+	 * Tag of an {@code Integer} value.
+	 */
+	private static final int INTEGER = 4;
+	/**
+	 * Tag of a {@code Long} value.
+	 */
+	private static final int LONG = 5;
+	/**
+	 * Tag of a {@code Double} value.
+	 */
+	private static final int DOUBLE = 6;
+	/**
+	 * Tag of a {@code Map} value.
+	 */
+	private static final int MAP = 7;
+	/**
+	 * Tag of a {@code List} value.
+	 */
+	private static final int LIST = 8;
+	/**
+	 * Tag of a value computed by a {@code ConfigValueProvider}.
+	 */
+	private static final int LAZY = 9;
+	/**
+	 * Tag of a value written with Java serialization.
+	 */
+	private static final int OBJECT = 10;
+	/**
+	 * Tag of a reference to a toolbar preset, added in version 2.
+	 */
+	private static final int PRESET = 11;
+
+	/**
+	 * Private constructor.
+	 */
+	private ConfigSerialization() {
+	}
+
+	/**
+	 * Writes the format version.
+	 * 
+	 * @param out
+	 *        the output to write to.
+	 * @throws IOException
+	 *         if the data cannot be written.
+	 */
+	static void writeHeader( final ObjectOutput out ) throws IOException {
+		out.writeByte( FORMAT_VERSION );
+	}
+
+	/**
+	 * Reads the format version and checks if it is supported.
+	 * 
+	 * @param in
+	 *        the input to read from.
+	 * @param type
+	 *        the class of the object being read, used in the error message.
+	 * @throws IOException
+	 *         if the data cannot be read or the version is not supported.
+	 */
+	static void readHeader( final ObjectInput in, final Class< ? > type ) throws IOException {
+		int version = in.readUnsignedByte();
+		if ( version < 1 || version > FORMAT_VERSION ) {
+			throw new InvalidClassException( type.getName(), "Unsupported serialized format version: " + version );
+		}
+	}
+
+	/**
+	 * Writes an option name, using its code if it is a known name.
+	 * 
+	 * @param out
+	 *        the output to write to.
+	 * @param key
+	 *        the option name.
+	 * @throws IOException
+	 *         if the data cannot be written.
+	 */
+	static void writeKey( final ObjectOutput out, final String key ) throws IOException {
+		int code = ConfigMap.getKeyCode( key );
+		if ( code != -1 ) {
+			writeVarInt( out, code + 1 );
+		} else {
+			writeVarInt( out, 0 );
+			writeString( out, key );
+		}
+	}
+
+	/**
+	 * Reads an option name written with {@link #writeKey(ObjectOutput, String)}.
+	 * 
+	 * @param in
+	 *        the input to read from.
+	 * @return the option name.
+	 * @throws IOException
+	 *         if the data cannot be read or is corrupted.
+	 */
+	static String readKey( final ObjectInput in ) throws IOException {
+		int code = readVarInt( in );
+		if ( code == 0 ) {
+			return readString( in );
+		}
+		String key = ConfigMap.getKnownKey( code - 1 );
+		if ( key == null ) {
+			throw new StreamCorruptedException( "Unknown option code: " + code );
+		}
+		return key;
+	}
+
+	/**
+	 * Writes a configuration value.
+	 * 
+	 * @param out
+	 *        the output to write to.
+	 * @param value
+	 *        the value to write.
+	 * @throws IOException
+	 *         if the data cannot be written, for example if the value is not serializable.
+	 */
+	static void writeValue( final ObjectOutput out, final Object value ) throws IOException {
+		if ( value == null ) {
+			out.writeByte( NULL );
+		} else if ( value instanceof String ) {
+			out.writeByte( STRING );
+			writeString( out, ( String ) value );
+		} else if ( value instanceof Boolean ) {
+			out.writeByte( ( ( Boolean ) value ).booleanValue() ? TRUE : FALSE );
+		} else if ( value instanceof Integer ) {
+			out.writeByte( INTEGER );
+			writeVarInt( out, zigZag( ( ( Integer ) value ).intValue() ) );
+		} else if ( value instanceof Long ) {
+			out.writeByte( LONG );
+			out.writeLong( ( ( Long ) value ).longValue() );
+		} else if ( value instanceof Double ) {
+			out.writeByte( DOUBLE );
+			out.writeDouble( ( ( Double ) value ).doubleValue() );
+		} else if ( value instanceof Map ) {
+			Map< ?, ? > map = ( Map< ?, ? > ) value;
+			out.writeByte( MAP );
+			writeVarInt( out, map.size() );
+			for ( Map.Entry< ?, ? > entry : map.entrySet() ) {
+				writeValue( out, entry.getKey() );
+				writeValue( out, entry.getValue() );
+			}
+		} else if ( value instanceof List ) {
+			List< ? > list = ( List< ? > ) value;
+			out.writeByte( LIST );
+			writeVarInt( out, list.size() );
+			for ( Object item : list ) {
+				writeValue( out, item );
+			}
+		} else if ( value instanceof LazyConfigValue ) {
+			LazyConfigValue lazy = ( LazyConfigValue ) value;
+			out.writeByte( LAZY );
+			out.writeObject( lazy.getProvider() );
+			out.writeLong( lazy.getTimeToLive() );
+		} else if ( value instanceof ToolbarPresetReference ) {
+			ToolbarPresetReference reference = ( ToolbarPresetReference ) value;
+			out.writeByte( PRESET );
+			writeString( out, reference.getName() );
+			writeString( out, reference.getOption() );
+		} else {
+			out.writeByte( OBJECT );
+			out.writeObject( value );
+		}
+	}
+
+	/**
+	 * Reads a configuration value written with {@link #writeValue(ObjectOutput, Object)}. Maps and lists are read as mutable
+	 * {@code LinkedHashMap} and {@code ArrayList} objects.
+	 * 
+	 * @param in
+	 *        the input to read from.
+	 * @return the value.
+	 * @throws IOException
+	 *         if the data cannot be read or is corrupted.
+	 * @throws ClassNotFoundException
+	 *         if the class of a value written with Java serialization cannot be found.
+	 */
+	static Object readValue( final ObjectInput in ) throws IOException, ClassNotFoundException {
+		int tag = in.readUnsignedByte();
+		switch ( tag ) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString( in );
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case INTEGER:
+				return Integer.valueOf( unZigZag( readVarInt( in ) ) );
+			case LONG:
+				return Long.valueOf( in.readLong() );
+			case DOUBLE:
+				return Double.valueOf( in.readDouble() );
+			case MAP:
+				int mapSize = readVarInt( in );
+				Map< Object, Object > map = new LinkedHashMap< Object, Object >();
+				for ( int i = 0; i < mapSize; i++ ) {
+					Object key = readValue( in );
+					map.put( key, readValue( in ) );
+				}
+				return map;
+			case LIST:
+				int listSize = readVarInt( in );
+				List< Object > list = new ArrayList< Object >( Math.min( listSize, 1024 ) );
+				for ( int i = 0; i < listSize; i++ ) {
+					list.add( readValue( in ) );
+				}
+				return list;
+			case LAZY:
+				ConfigValueProvider provider = ( ConfigValueProvider ) in.readObject();
+				return new LazyConfigValue( provider, in.readLong() );
+			case OBJECT:
+				return in.readObject();
+			case PRESET:
+				String name = readString( in );
+				return new ToolbarPresetReference( name, readString( in ) );
+			default:
+				throw new StreamCorruptedException( "Unknown value tag: " + tag );
+		}
+	}
+
+	/**
+	 * Writes a string as its UTF-8 length and bytes. Unlike {@code writeUTF}, the length of the string is not limited.
+	 * 
+	 * @param out
+	 *        the output to write to.
+	 * @param value
+	 *        the string to write. May be {@code null}.
+	 * @throws IOException
+	 *         if the data cannot be written.
+	 */
+	static void writeString( final ObjectOutput out, final String value ) throws IOException {
+		if ( value == null ) {
+			writeVarInt( out, 0 );
+			return;
+		}
+		byte[] data = value.getBytes( "UTF-8" );
+		writeVarInt( out, data.length + 1 );
+		out.write( data );
+	}
+
+	/**
+	 * Reads a string written with {@link #writeString(ObjectOutput, String)}.
+	 * 
+	 * @param in
+	 *        the input to read from.
+	 * @return the string or {@code null}.
+	 * @throws IOException
+	 *         if the data cannot be read.
+	 */
+	static String readString( final ObjectInput in ) throws IOException {
+		int length = readVarInt( in );
+		if ( length == 0 ) {
+			return null;
+		}
+		byte[] data = new byte[ length - 1 ];
+		in.readFully( data );
+		return new String( data, "UTF-8" );
+	}
+
+	/**
+	 * Writes a non-negative integer in seven-bit groups, so small values take one byte.
+	 * 
+	 * @param out
+	 *        the output to write to.
+	 * @param value
+	 *        the value to write, treated as unsigned.
+	 * @throws IOException
+	 *         if the data cannot be written.
+	 */
+	static void writeVarInt( final ObjectOutput out, final int value ) throws IOException {
+		int v = value;
+		while ( ( v & ~0x7F ) != 0 ) {
+			out.writeByte( ( v & 0x7F ) | 0x80 );
+			v >>>= 7;
+		}
+		out.writeByte( v );
+	}
+
+	/**
+	 * Reads an integer written with {@link #writeVarInt(ObjectOutput, int)}.
+	 * 
+	 * @param in
+	 *        the input to read from.
+	 * @return the value.
+	 * @throws IOException
+	 *         if the data cannot be read or is corrupted.
+	 */
+	static int readVarInt( final ObjectInput in ) throws IOException {
+		int value = 0;
+		for ( int shift = 0; shift < 35; shift += 7 ) {
+			int b = in.readUnsignedByte();
+			value |= ( b & 0x7F ) << shift;
+			if ( ( b & 0x80 ) == 0 ) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException( "Malformed variable-length integer." );
+	}
+
+	/**
+	 * Maps a signed integer to an unsigned one, so that values close to zero are written with few bytes.
+	 * 
+	 * @param value
+	 *        the signed value.
+	 * @return the encoded value.
+	 */
+	private static int zigZag( final int value ) {
+		return ( value << 1 ) ^ ( value >> 31 );
+	}
+
+	/**
+	 * Reverses {@link #zigZag(int)}.
+	 * 
+	 * @param value
+	 *        the encoded value.
+	 * @return the signed value.
+	 */
+	private static int unZigZag( final int value ) {
+		return ( value >>> 1 ) ^ -( value & 1 );
+	}
+}
@@ -0,0 +1,27 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+/**
+ * The {@code ConfigValueProvider} interface is used to compute configuration option values lazily, for example with a database lookup. A
+ * provider added with {@link CKEditorConfig#addConfigValue(String, ConfigValueProvider)} is only called when the configuration is encoded
+ * for an editor that is actually created, and its result is cached.<br>
+ * <strong>Usage:</strong>
+ * 
+ * <pre>
+ * config.addConfigValue( &quot;mentions&quot;, new ConfigValueProvider() {
+ * 	public Object getValue() {
+ * 		return loadMentionFeeds();
+ * 	}
+ * }, 5, TimeUnit.MINUTES );
+ * </pre>
+ */
+public interface ConfigValueProvider {
+
+	/**
+	 * Computes the value of the configuration option. It can be any object supported by {@link Utils#jsEncode(Object)}. The method may
+	 * be called from many threads, but never concurrently for the same configuration option.
+	 * 
+	 * @return the value of the configuration option.
+	 */
+	Object getValue();
+}
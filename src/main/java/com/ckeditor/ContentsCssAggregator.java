@@ -0,0 +1,457 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The {@code ContentsCssAggregator} class combines the stylesheets from the {@code contentsCss} option into a single minified stylesheet
+ * served by the {@code CKEditorAssetServlet}, so every classic editor loads one cached file instead of several. Relative URLs inside the
+ * stylesheets are rewritten, so they keep pointing at the same resources.
+ * <p>
+ * Stylesheets are aggregated only if all of them are files of the web application or of the CKEditor directory. The aggregated stylesheet
+ * is generated again when any of the files changes and replaces the stylesheet generated from their previous versions.
+ * <p>
+ * Static content displayed in the {@code readOnlyStatic} mode is part of the page, so its stylesheets are scoped with
+ * {@link #scope(String)} to the {@code .cke_static} element, and they do not style the rest of the page.
+ */
+final class ContentsCssAggregator {
+
+	/**
+	 * Private logger.
+	 */
+	private static final Logger contentsCssAggregatorLogger = Logger.getLogger( ContentsCssAggregator.class.getName() );
+	/**
+	 * Pattern matching URL references and imports in a stylesheet.
+	 */
+	private static final Pattern URL_REFERENCE = Pattern
+			.compile( "(url\\(\\s*)(['\"]?)([^'\")]*)(\\2\\s*\\))|(@import\\s+)(['\"])([^'\"]*)(\\6)" );
+	/**
+	 * Pattern matching {@code @charset} rules, which are only allowed at the start of a stylesheet.
+	 */
+	private static final Pattern CHARSET = Pattern.compile( "@charset\\s+['\"][^'\"]*['\"]\\s*;" );
+	/**
+	 * Pattern matching the {@code html} and {@code body} type selectors at the start of a selector.
+	 */
+	private static final Pattern ROOT_SELECTOR = Pattern.compile( "^(?:html|body)(?![-\\w])" );
+	/**
+	 * Pattern matching the {@code .cke_editable} class selector at the start of a selector.
+	 */
+	private static final Pattern EDITABLE_SELECTOR = Pattern.compile( "^\\.cke_editable(?![-\\w])" );
+	/**
+	 * Class of the element displaying static content, to which scoped stylesheets apply.
+	 */
+	private static final String STATIC_SCOPE = ".cke_static";
+
+	/**
+	 * Private constructor.
+	 */
+	private ContentsCssAggregator() {
+	}
+
+	/**
+	 * Returns a copy of the editor configuration with {@code contentsCss} pointing at the aggregated stylesheet. The configurations passed
+	 * as parameters are not modified.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param config
+	 *        the editor configuration. May be {@code null}.
+	 * @param globalConfig
+	 *        the global configuration merged with the editor configuration. May be {@code null}.
+	 * @return the configuration with {@code contentsCss} replaced, or {@code config} if the stylesheets cannot be aggregated.
+	 */
+	static CKEditorConfig aggregate( final ServletContext context, final String basePath, final CKEditorConfig config,
+			final CKEditorConfig globalConfig ) {
+		GeneratedAssets generatedAssets = GeneratedAssets.getInstance( context );
+		if ( generatedAssets == null ) {
+			return config;
+		}
+		CKEditorConfig effective = new CKEditorConfig().mergeConfigValues( globalConfig ).mergeConfigValues( config );
+		String path = generate( context, generatedAssets, basePath, Utils.getContentsCss( effective, basePath, null ), false );
+		if ( path == null ) {
+			return config;
+		}
+		CKEditorConfig result = new CKEditorConfig().mergeConfigValues( config );
+		result.addConfigValue( "contentsCss", Utils.appendSlash( basePath ) + path.substring( 1 ) );
+		return result;
+	}
+
+	/**
+	 * Returns the URLs of the stylesheets of static content displayed in the {@code readOnlyStatic} mode. The {@code contentsCss}
+	 * stylesheets are aggregated and scoped to the {@code .cke_static} element, so they do not style the rest of the page. Stylesheets
+	 * which cannot be scoped, because the {@code CKEditorAssetServlet} is not running or they are not files of the web application, are not
+	 * linked at all and the content inherits the styles of the page.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param config
+	 *        the editor configuration merged with the global configuration. May be {@code null}.
+	 * @return a {@code List} with the URL of the scoped stylesheet, or an empty {@code List}.
+	 */
+	static List< String > getStaticStylesheets( final ServletContext context, final String basePath, final CKEditorConfig config ) {
+		GeneratedAssets generatedAssets = GeneratedAssets.getInstance( context );
+		String path = ( generatedAssets != null ) ? generate( context, generatedAssets, basePath, Utils.getContentsCss( config, basePath,
+				null ), true ) : null;
+		if ( path == null ) {
+			contentsCssAggregatorLogger.fine( "Content stylesheets of static content could not be scoped and are not linked." );
+			return Collections.emptyList();
+		}
+		List< String > urls = new ArrayList< String >( 1 );
+		urls.add( Utils.appendSlash( basePath ) + path.substring( 1 ) );
+		return urls;
+	}
+
+	/**
+	 * Generates the aggregated stylesheet from the given stylesheets, unless it was already generated from their current versions.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param generatedAssets
+	 *        the storage of generated resources.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param urls
+	 *        the URLs of the stylesheets.
+	 * @param scoped
+	 *        {@code true} if the stylesheet is scoped to the {@code .cke_static} element.
+	 * @return the path of the aggregated stylesheet relative to the CKEditor directory, or {@code null} if the stylesheets cannot be
+	 *         aggregated.
+	 */
+	private static String generate( final ServletContext context, final GeneratedAssets generatedAssets, final String basePath,
+			final List< String > urls, final boolean scoped ) {
+		File[] files = new File[ urls.size() ];
+		StringBuilder sources = new StringBuilder( scoped ? "staticCss" : "contentsCss" );
+		StringBuilder version = new StringBuilder();
+		for ( int i = 0; i < files.length; i++ ) {
+			files[ i ] = findFile( context, basePath, urls.get( i ) );
+			if ( files[ i ] == null ) {
+				return null;
+			}
+			sources.append( '\n' ).append( files[ i ].getPath() );
+			version.append( files[ i ].lastModified() ).append( ',' );
+		}
+
+		String path = generatedAssets.getPath( sources.toString(), version.toString() );
+		if ( path == null ) {
+			try {
+				StringBuilder css = new StringBuilder();
+				for ( int i = 0; i < files.length; i++ ) {
+					String source = minify( rewriteUrls( new String( Utils.readFully( files[ i ] ), "UTF-8" ), getBaseUrl( basePath, urls
+							.get( i ) ) ) );
+					css.append( scoped ? scope( source ) : source ).append( '\n' );
+				}
+				byte[] data = css.toString().getBytes( "UTF-8" );
+				path = ( scoped ? "/static-" : "/contents-" ) + Utils.sha1( data ).substring( 0, 12 ) + ".css";
+				generatedAssets.put( sources.toString(), version.toString(), path, "contents.css", data );
+			} catch ( IOException e ) {
+				contentsCssAggregatorLogger.log( Level.WARNING, "Could not aggregate contentsCss stylesheets.", e );
+				return null;
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Resolves the URL of a stylesheet to a file of the CKEditor directory or of the web application.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param url
+	 *        the URL of the stylesheet.
+	 * @return the stylesheet file or {@code null} if the URL does not point at an existing file.
+	 */
+	private static File findFile( final ServletContext context, final String basePath, final String url ) {
+		String path = ( url.indexOf( '?' ) != -1 ) ? url.substring( 0, url.indexOf( '?' ) ) : url;
+		if ( path.indexOf( "://" ) != -1 || path.startsWith( "//" ) || path.indexOf( ".." ) != -1 ) {
+			return null;
+		}
+		File file = null;
+		String base = Utils.appendSlash( basePath );
+		if ( path.startsWith( base ) ) {
+			File directory = DistributionDigest.getDirectory( context, basePath );
+			file = ( directory != null ) ? new File( directory, path.substring( base.length() ) ) : null;
+		} else if ( path.startsWith( "/" ) ) {
+			String contextPath = context.getContextPath();
+			if ( !Utils.isStringEmpty( contextPath ) && path.startsWith( contextPath + "/" ) ) {
+				path = path.substring( contextPath.length() );
+			}
+			String realPath = context.getRealPath( path );
+			file = ( realPath != null ) ? new File( realPath ) : null;
+		}
+		return ( file != null && file.isFile() ) ? file : null;
+	}
+
+	/**
+	 * Returns the URL against which relative references of a stylesheet are resolved in the aggregated stylesheet. The aggregated
+	 * stylesheet is served from the CKEditor directory, so for stylesheets from that directory the URL is relative to it.
+	 * 
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param url
+	 *        the URL of the stylesheet.
+	 * @return the URL of the directory containing the stylesheet, with the slash character at the end.
+	 */
+	private static String getBaseUrl( final String basePath, final String url ) {
+		String base = Utils.appendSlash( basePath );
+		String path = url.startsWith( base ) ? url.substring( base.length() ) : url;
+		return path.substring( 0, path.lastIndexOf( '/' ) + 1 );
+	}
+
+	/**
+	 * Rewrites relative URLs in {@code url()} references and {@code @import} rules.
+	 * 
+	 * @param css
+	 *        the stylesheet.
+	 * @param baseUrl
+	 *        the URL prepended to relative URLs.
+	 * @return the stylesheet with URLs rewritten.
+	 */
+	static String rewriteUrls( final String css, final String baseUrl ) {
+		if ( baseUrl.length() == 0 ) {
+			return css;
+		}
+		Matcher matcher = URL_REFERENCE.matcher( css );
+		StringBuffer sb = new StringBuffer();
+		while ( matcher.find() ) {
+			int group = ( matcher.group( 1 ) != null ) ? 1 : 5;
+			String url = matcher.group( group + 2 ).trim();
+			if ( url.length() > 0 && !url.startsWith( "/" ) && !url.startsWith( "#" ) && url.indexOf( ':' ) == -1 ) {
+				url = baseUrl + url;
+			}
+			matcher.appendReplacement( sb, Matcher.quoteReplacement( matcher.group( group ) + matcher.group( group + 1 ) + url
+					+ matcher.group( group + 3 ) ) );
+		}
+		matcher.appendTail( sb );
+		return sb.toString();
+	}
+
+	/**
+	 * Scopes a minified stylesheet to the {@code .cke_static} element. The {@code html} and {@code body} selectors and selectors starting
+	 * with {@code .cke_editable} are applied to the element itself and other selectors to its descendants. Rules inside {@code @media} and
+	 * {@code @supports} rules are scoped as well, other at-rules with blocks are kept as they are and {@code @import} rules are removed,
+	 * because imported stylesheets cannot be scoped.
+	 * 
+	 * @param css
+	 *        the minified stylesheet.
+	 * @return the scoped stylesheet.
+	 */
+	static String scope( final String css ) {
+		StringBuilder sb = new StringBuilder( css.length() + css.length() / 4 );
+		int i = 0;
+		while ( i < css.length() ) {
+			int open = indexOutsideStrings( css, '{', i );
+			int semicolon = indexOutsideStrings( css, ';', i );
+			if ( css.charAt( i ) == '@' && semicolon != -1 && ( open == -1 || semicolon < open ) ) {
+				if ( !css.startsWith( "@import", i ) ) {
+					sb.append( css, i, semicolon + 1 );
+				}
+				i = semicolon + 1;
+				continue;
+			}
+			if ( open == -1 ) {
+				break;
+			}
+			int close = findBlockEnd( css, open );
+			String prelude = css.substring( i, open ).trim();
+			if ( prelude.startsWith( "@media" ) || prelude.startsWith( "@supports" ) ) {
+				sb.append( prelude ).append( '{' ).append( scope( css.substring( open + 1, close ) ) ).append( '}' );
+			} else if ( prelude.startsWith( "@" ) ) {
+				sb.append( css, i, Math.min( close + 1, css.length() ) );
+			} else if ( prelude.length() > 0 ) {
+				sb.append( scopeSelectors( prelude ) ).append( css, open, Math.min( close + 1, css.length() ) );
+			}
+			i = close + 1;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Scopes a comma-separated list of selectors to the {@code .cke_static} element.
+	 * 
+	 * @param selectors
+	 *        the selectors of a rule.
+	 * @return the scoped selectors.
+	 */
+	private static String scopeSelectors( final String selectors ) {
+		StringBuilder sb = new StringBuilder();
+		int depth = 0;
+		int start = 0;
+		for ( int i = 0; i <= selectors.length(); i++ ) {
+			char c = ( i < selectors.length() ) ? selectors.charAt( i ) : ',';
+			if ( c == '(' || c == '[' ) {
+				depth++;
+			} else if ( ( c == ')' || c == ']' ) && depth > 0 ) {
+				depth--;
+			} else if ( c == ',' && depth == 0 ) {
+				if ( sb.length() > 0 ) {
+					sb.append( ',' );
+				}
+				sb.append( scopeSelector( selectors.substring( start, i ).trim() ) );
+				start = i + 1;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Scopes a single selector to the {@code .cke_static} element.
+	 * 
+	 * @param selector
+	 *        the selector.
+	 * @return the scoped selector.
+	 */
+	private static String scopeSelector( final String selector ) {
+		String rest = selector;
+		String combinator = " ";
+		boolean root = false;
+		Matcher matcher = ROOT_SELECTOR.matcher( rest );
+		while ( matcher.find() ) {
+			root = true;
+			rest = rest.substring( matcher.end() );
+			String trimmed = rest.trim();
+			if ( trimmed.length() == rest.length() && rest.length() > 0 ) {
+				return STATIC_SCOPE + rest;
+			}
+			combinator = trimmed.startsWith( ">" ) || trimmed.startsWith( "+" ) || trimmed.startsWith( "~" ) ? trimmed.substring( 0, 1 )
+					: " ";
+			rest = ( combinator.equals( " " ) ? trimmed : trimmed.substring( 1 ) ).trim();
+			matcher = ROOT_SELECTOR.matcher( rest );
+		}
+		if ( rest.length() == 0 ) {
+			return STATIC_SCOPE;
+		}
+		if ( !root && EDITABLE_SELECTOR.matcher( rest ).find() ) {
+			return STATIC_SCOPE + rest;
+		}
+		return STATIC_SCOPE + combinator + rest;
+	}
+
+	/**
+	 * Finds the first occurrence of a character outside of strings.
+	 * 
+	 * @param css
+	 *        the stylesheet.
+	 * @param c
+	 *        the character to find.
+	 * @param from
+	 *        the index to start from.
+	 * @return the index of the character or {@code -1} if it does not occur.
+	 */
+	private static int indexOutsideStrings( final String css, final char c, final int from ) {
+		int i = from;
+		while ( i < css.length() ) {
+			char current = css.charAt( i );
+			if ( current == c ) {
+				return i;
+			}
+			i = ( current == '"' || current == '\'' ) ? skipString( css, i ) : i + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the brace closing a block.
+	 * 
+	 * @param css
+	 *        the stylesheet.
+	 * @param open
+	 *        the index of the opening brace.
+	 * @return the index of the closing brace or the length of the stylesheet if the block is not closed.
+	 */
+	private static int findBlockEnd( final String css, final int open ) {
+		int depth = 0;
+		int i = open;
+		while ( i < css.length() ) {
+			char c = css.charAt( i );
+			if ( c == '"' || c == '\'' ) {
+				i = skipString( css, i );
+				continue;
+			}
+			if ( c == '{' ) {
+				depth++;
+			} else if ( c == '}' && --depth == 0 ) {
+				return i;
+			}
+			i++;
+		}
+		return css.length();
+	}
+
+	/**
+	 * Skips a quoted string.
+	 * 
+	 * @param css
+	 *        the stylesheet.
+	 * @param start
+	 *        the index of the opening quote.
+	 * @return the index following the closing quote.
+	 */
+	private static int skipString( final String css, final int start ) {
+		char quote = css.charAt( start );
+		int end = start + 1;
+		while ( end < css.length() && css.charAt( end ) != quote ) {
+			end += ( css.charAt( end ) == '\\' ) ? 2 : 1;
+		}
+		return Math.min( end + 1, css.length() );
+	}
+
+	/**
+	 * Minifies a stylesheet by removing comments, {@code @charset} rules and unnecessary whitespace. Strings are kept intact.
+	 * 
+	 * @param css
+	 *        the stylesheet.
+	 * @return the minified stylesheet.
+	 */
+	static String minify( final String css ) {
+		String source = CHARSET.matcher( css ).replaceAll( "" );
+		StringBuilder sb = new StringBuilder( source.length() );
+		int i = 0;
+		while ( i < source.length() ) {
+			char c = source.charAt( i );
+			if ( c == '"' || c == '\'' ) {
+				int end = i + 1;
+				while ( end < source.length() && source.charAt( end ) != c ) {
+					end += ( source.charAt( end ) == '\\' ) ? 2 : 1;
+				}
+				end = Math.min( end + 1, source.length() );
+				sb.append( source, i, end );
+				i = end;
+			} else if ( source.startsWith( "/*", i ) ) {
+				int end = source.indexOf( "*/", i + 2 );
+				i = ( end == -1 ) ? source.length() : end + 2;
+			} else if ( Character.isWhitespace( c ) ) {
+				while ( i < source.length() && Character.isWhitespace( source.charAt( i ) ) ) {
+					i++;
+				}
+				char previous = ( sb.length() > 0 ) ? sb.charAt( sb.length() - 1 ) : '{';
+				char next = ( i < source.length() ) ? source.charAt( i ) : '}';
+				if ( "{};:,".indexOf( previous ) == -1 && "{};,".indexOf( next ) == -1 ) {
+					sb.append( ' ' );
+				}
+			} else if ( c == '}' && sb.length() > 0 && sb.charAt( sb.length() - 1 ) == ';' ) {
+				sb.setCharAt( sb.length() - 1, '}' );
+				i++;
+			} else {
+				sb.append( c );
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,359 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The {@code DistributionConfig} class holds the settings of the {@code config.js} and {@code styles.js} files from the CKEditor
+ * distribution, so they can be sent inline with the editor configuration. With the settings inlined and {@code customConfig} set to an
+ * empty string, the editor does not request these files, and with the language resolved from the {@code Accept-Language} header it does
+ * not need to detect it.
+ * <p>
+ * Only {@code config.js} files consisting of plain {@code config.name = value;} assignments are inlined. If the file contains other
+ * statements, the editor keeps loading it.
+ */
+final class DistributionConfig {
+
+	/**
+	 * Private logger.
+	 */
+	private static final Logger distributionConfigLogger = Logger.getLogger( DistributionConfig.class.getName() );
+	/**
+	 * Pattern matching the start of the function defined in {@code config.js}.
+	 */
+	private static final Pattern EDITOR_CONFIG = Pattern
+			.compile( "CKEDITOR\\.editorConfig\\s*=\\s*function\\s*\\(\\s*(\\w+)\\s*\\)\\s*\\{" );
+	/**
+	 * Pattern matching the start of the default styles definition in {@code styles.js}.
+	 */
+	private static final Pattern STYLES_SET = Pattern.compile( "CKEDITOR\\.stylesSet\\.add\\(\\s*['\"]default['\"]\\s*," );
+	/**
+	 * Pattern matching the name of a language file.
+	 */
+	private static final Pattern LANGUAGE_FILE = Pattern.compile( "([a-z]{2,3}(?:-[a-z]+)?)\\.js" );
+	/**
+	 * Instances by the absolute path of the CKEditor directory.
+	 */
+	private static final ConcurrentMap< String, DistributionConfig > instances = new ConcurrentHashMap< String, DistributionConfig >();
+	/**
+	 * Settings from {@code config.js} as JavaScript expressions, or {@code null} if the file cannot be inlined.
+	 */
+	private final Map< String, String > settings;
+	/**
+	 * The default styles definition from {@code styles.js} as a JavaScript expression, or {@code null} if there is none.
+	 */
+	private final String stylesSet;
+	/**
+	 * Languages available in the distribution.
+	 */
+	private final Set< String > languages;
+
+	/**
+	 * Creates the {@code DistributionConfig} object.
+	 * 
+	 * @param settings
+	 *        the settings from {@code config.js} or {@code null} if the file cannot be inlined.
+	 * @param stylesSet
+	 *        the default styles definition or {@code null} if there is none.
+	 * @param languages
+	 *        the languages available in the distribution.
+	 */
+	DistributionConfig( final Map< String, String > settings, final String stylesSet, final Set< String > languages ) {
+		this.settings = settings;
+		this.stylesSet = stylesSet;
+		this.languages = languages;
+	}
+
+	/**
+	 * Returns a copy of the editor configuration completed with the settings of the distribution, the default styles and the language
+	 * preferred by the client. Options set in the editor or global configuration take precedence. The configurations passed as parameters
+	 * are not modified.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param config
+	 *        the editor configuration. May be {@code null}.
+	 * @param globalConfig
+	 *        the global configuration merged with the editor configuration. May be {@code null}.
+	 * @param request
+	 *        the current request, used to resolve the language.
+	 * @return the completed configuration, or {@code config} if the CKEditor directory cannot be found or a custom configuration file is
+	 *         set.
+	 */
+	static CKEditorConfig inline( final ServletContext context, final String basePath, final CKEditorConfig config,
+			final CKEditorConfig globalConfig, final ServletRequest request ) {
+		CKEditorConfig effective = new CKEditorConfig().mergeConfigValues( globalConfig ).mergeConfigValues( config );
+		if ( effective.getConfigValue( "customConfig" ) != null ) {
+			return config;
+		}
+		File directory = DistributionDigest.getDirectory( context, basePath );
+		DistributionConfig distributionConfig = ( directory != null ) ? getInstance( directory ) : null;
+		if ( distributionConfig == null ) {
+			return config;
+		}
+
+		CKEditorConfig result = new CKEditorConfig().mergeConfigValues( config );
+		if ( distributionConfig.settings != null ) {
+			for ( Map.Entry< String, String > setting : distributionConfig.settings.entrySet() ) {
+				if ( effective.getConfigValue( setting.getKey() ) == null ) {
+					result.addConfigValue( setting.getKey(), "@@" + setting.getValue() );
+					effective.addConfigValue( setting.getKey(), "@@" + setting.getValue() );
+				}
+			}
+			result.addConfigValue( "customConfig", "" );
+		}
+		Object styles = effective.getConfigValue( "stylesSet" );
+		if ( distributionConfig.stylesSet != null && ( styles == null || "default".equals( styles ) ) ) {
+			result.addConfigValue( "stylesSet", "@@" + distributionConfig.stylesSet );
+		}
+		if ( effective.getConfigValue( "language" ) == null ) {
+			String language = distributionConfig.resolveLanguage( request );
+			if ( language != null ) {
+				result.addConfigValue( "language", language );
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the settings of a CKEditor directory. The files are read once and then kept in memory.
+	 * 
+	 * @param directory
+	 *        the CKEditor installation directory.
+	 * @return the {@code DistributionConfig} object or {@code null} if the distribution cannot be read.
+	 */
+	static DistributionConfig getInstance( final File directory ) {
+		String key = directory.getAbsolutePath();
+		DistributionConfig distributionConfig = instances.get( key );
+		if ( distributionConfig == null ) {
+			try {
+				distributionConfig = read( directory );
+				DistributionConfig previous = instances.putIfAbsent( key, distributionConfig );
+				distributionConfig = ( previous != null ) ? previous : distributionConfig;
+			} catch ( IOException e ) {
+				distributionConfigLogger.log( Level.WARNING, "Could not read CKEditor configuration from " + directory, e );
+			}
+		}
+		return distributionConfig;
+	}
+
+	/**
+	 * Returns the language of the distribution preferred by the client.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @return the language code or {@code null} if none of the preferred languages is available.
+	 */
+	String resolveLanguage( final ServletRequest request ) {
+		if ( request instanceof HttpServletRequest && ( ( HttpServletRequest ) request ).getHeader( "Accept-Language" ) == null ) {
+			return null;
+		}
+		@SuppressWarnings( "unchecked" ) Enumeration< Locale > locales = request.getLocales();
+		while ( locales.hasMoreElements() ) {
+			Locale locale = locales.nextElement();
+			String language = getLanguageCode( locale );
+			String country = locale.getCountry().toLowerCase( Locale.ENGLISH );
+			if ( country.length() > 0 && languages.contains( language + "-" + country ) ) {
+				return language + "-" + country;
+			}
+			if ( languages.contains( language ) ) {
+				return language;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the ISO 639 code of the locale language. {@code Locale} keeps the obsolete codes of Hebrew, Indonesian and Yiddish, which are
+	 * replaced with the current ones used by CKEditor.
+	 * 
+	 * @param locale
+	 *        the locale.
+	 * @return the lowercase language code.
+	 */
+	private static String getLanguageCode( final Locale locale ) {
+		String language = locale.getLanguage().toLowerCase( Locale.ENGLISH );
+		if ( "iw".equals( language ) ) {
+			return "he";
+		} else if ( "in".equals( language ) ) {
+			return "id";
+		} else if ( "ji".equals( language ) ) {
+			return "yi";
+		}
+		return language;
+	}
+
+	/**
+	 * Reads {@code config.js}, {@code styles.js} and the list of languages from a CKEditor directory.
+	 * 
+	 * @param directory
+	 *        the CKEditor installation directory.
+	 * @return the {@code DistributionConfig} object.
+	 * @throws IOException
+	 *         if one of the files exists but cannot be read.
+	 */
+	static DistributionConfig read( final File directory ) throws IOException {
+		Map< String, String > settings = Collections.emptyMap();
+		File configFile = new File( directory, "config.js" );
+		if ( configFile.isFile() ) {
+			settings = parseConfig( new String( Utils.readFully( configFile ), "UTF-8" ) );
+			if ( settings == null ) {
+				distributionConfigLogger.info( "CKEditor config.js contains statements other than assignments and will not be inlined." );
+			}
+		}
+
+		String stylesSet = null;
+		File stylesFile = new File( directory, "styles.js" );
+		if ( stylesFile.isFile() ) {
+			String script = new String( Utils.readFully( stylesFile ), "UTF-8" );
+			Matcher matcher = STYLES_SET.matcher( script );
+			if ( matcher.find() ) {
+				int end = scanExpression( script, matcher.end(), ')' );
+				if ( end != -1 ) {
+					stylesSet = script.substring( matcher.end(), end ).trim();
+				}
+			}
+		}
+
+		Set< String > languages = new HashSet< String >();
+		String[] langFiles = new File( directory, "lang" ).list();
+		if ( langFiles != null ) {
+			for ( String langFile : langFiles ) {
+				Matcher matcher = LANGUAGE_FILE.matcher( langFile );
+				if ( matcher.matches() ) {
+					languages.add( matcher.group( 1 ) );
+				}
+			}
+		}
+		return new DistributionConfig( settings, stylesSet, Collections.unmodifiableSet( languages ) );
+	}
+
+	/**
+	 * Parses the settings from the content of {@code config.js}.
+	 * 
+	 * @param script
+	 *        the content of {@code config.js}.
+	 * @return the settings as JavaScript expressions by option name, or {@code null} if the file contains statements other than
+	 *         assignments to the configuration object.
+	 */
+	static Map< String, String > parseConfig( final String script ) {
+		Matcher matcher = EDITOR_CONFIG.matcher( script );
+		if ( !matcher.find() ) {
+			return Collections.emptyMap();
+		}
+		Pattern assignment = Pattern.compile( "\\G" + Pattern.quote( matcher.group( 1 ) ) + "\\.(\\w+)\\s*=(?!=)" );
+		Map< String, String > settings = new LinkedHashMap< String, String >();
+		int position = matcher.end();
+		while ( true ) {
+			position = skipWhitespace( script, position );
+			if ( position >= script.length() ) {
+				return null;
+			}
+			if ( script.charAt( position ) == '}' ) {
+				return settings;
+			}
+			if ( script.charAt( position ) == ';' ) {
+				position++;
+				continue;
+			}
+			Matcher setting = assignment.matcher( script );
+			if ( !setting.find( position ) || setting.start() != position ) {
+				return null;
+			}
+			int end = scanExpression( script, setting.end(), ';' );
+			if ( end == -1 ) {
+				return null;
+			}
+			String value = script.substring( setting.end(), end ).trim();
+			if ( value.length() == 0 ) {
+				return null;
+			}
+			settings.put( setting.group( 1 ), value );
+			position = ( end < script.length() && script.charAt( end ) == ';' ) ? end + 1 : end;
+		}
+	}
+
+	/**
+	 * Skips whitespace and comments.
+	 * 
+	 * @param script
+	 *        the script.
+	 * @param start
+	 *        the position to start from.
+	 * @return the position of the first character which is neither whitespace nor a part of a comment.
+	 */
+	private static int skipWhitespace( final String script, final int start ) {
+		int i = start;
+		while ( i < script.length() ) {
+			char c = script.charAt( i );
+			if ( Character.isWhitespace( c ) ) {
+				i++;
+			} else if ( script.startsWith( "//", i ) ) {
+				int end = script.indexOf( '\n', i );
+				i = ( end == -1 ) ? script.length() : end + 1;
+			} else if ( script.startsWith( "/*", i ) ) {
+				int end = script.indexOf( "*/", i + 2 );
+				i = ( end == -1 ) ? script.length() : end + 2;
+			} else {
+				break;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the end of a JavaScript expression, taking strings, comments and brackets into account. The expression ends at the terminator
+	 * found outside of brackets or at the closing brace of the enclosing block.
+	 * 
+	 * @param script
+	 *        the script.
+	 * @param start
+	 *        the position where the expression starts.
+	 * @param terminator
+	 *        the character ending the expression.
+	 * @return the position of the terminator or closing brace, or {@code -1} if the expression is not terminated.
+	 */
+	static int scanExpression( final String script, final int start, final char terminator ) {
+		int depth = 0;
+		int i = start;
+		while ( i < script.length() ) {
+			char c = script.charAt( i );
+			if ( c == '\'' || c == '"' || c == '`' ) {
+				i++;
+				while ( i < script.length() && script.charAt( i ) != c ) {
+					i += ( script.charAt( i ) == '\\' ) ? 2 : 1;
+				}
+			} else if ( script.startsWith( "//", i ) || script.startsWith( "/*", i ) ) {
+				i = skipWhitespace( script, i ) - 1;
+			} else if ( c == '(' || c == '[' || c == '{' ) {
+				depth++;
+			} else if ( depth == 0 && ( c == terminator || c == '}' ) ) {
+				return i;
+			} else if ( c == ')' || c == ']' || c == '}' ) {
+				depth--;
+			}
+			i++;
+		}
+		return -1;
+	}
+}
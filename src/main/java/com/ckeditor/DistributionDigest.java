@@ -0,0 +1,424 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The {@code DistributionDigest} class computes the CKEditor timestamp from the content of the CKEditor directory. The timestamp changes
+ * whenever any file of the distribution changes, so resources requested with it can be cached forever.
+ * <p>
+ * Files are hashed in parallel. The hash of every file is stored in a state file together with its length and modification time, so after a
+ * restart only the files which changed are read again.
+ */
+final class DistributionDigest {
+
+	/**
+	 * Value of the {@code timestamp} property which turns on the automatic timestamp.
+	 */
+	static final String AUTO = "auto";
+	/**
+	 * Name of the application attribute under which the {@code CKEditorAssetServlet} registers the timestamp of the distribution it
+	 * serves.
+	 */
+	static final String TIMESTAMP_ATTRIBUTE = "ckeditor_timestamp";
+	/**
+	 * Name of the application attribute under which the {@code CKEditorAssetServlet} registers the CKEditor directory it serves.
+	 */
+	static final String DIRECTORY_ATTRIBUTE = "ckeditor_directory";
+	/**
+	 * Private logger.
+	 */
+	private static final Logger distributionDigestLogger = Logger.getLogger( DistributionDigest.class.getName() );
+	/**
+	 * Number of characters of the distribution hash used as the timestamp.
+	 */
+	private static final int TIMESTAMP_LENGTH = 10;
+	/**
+	 * Size of the buffer used to read files.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/**
+	 * Time in nanoseconds after which the timestamp of a directory which could not be read is computed again.
+	 */
+	private static final long RETRY_INTERVAL = TimeUnit.MINUTES.toNanos( 1 );
+	/**
+	 * Computations of timestamps by the canonical path of the CKEditor directory, finished or in progress.
+	 */
+	private static final ConcurrentMap< String, FutureTask< Timestamp >> timestamps =
+			new ConcurrentHashMap< String, FutureTask< Timestamp >>();
+
+	/**
+	 * Private constructor.
+	 */
+	private DistributionDigest() {
+	}
+
+	/**
+	 * Returns the automatic timestamp for the CKEditor installation available under the given base path. The base path is first resolved to
+	 * a directory of the web application. If that fails, the timestamp registered by the {@code CKEditorAssetServlet} is used.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @return the timestamp or {@code null} if the CKEditor directory cannot be found.
+	 */
+	static String getTimestamp( final ServletContext context, final String basePath ) {
+		File directory = findDirectory( context, basePath );
+		if ( directory != null ) {
+			return getTimestamp( directory, getStateDirectory( context ) );
+		}
+		String registered = ( String ) context.getAttribute( TIMESTAMP_ATTRIBUTE );
+		if ( registered == null ) {
+			distributionDigestLogger.warning( "Could not find the CKEditor directory for the automatic timestamp: " + basePath );
+		}
+		return registered;
+	}
+
+	/**
+	 * Returns the automatic timestamp for a CKEditor directory. The timestamp is computed once and then kept in memory. Concurrent requests
+	 * for the same directory wait for a single computation, while requests for other directories are not blocked. If the directory cannot
+	 * be read, no timestamp is used until the computation is retried after a minute.
+	 * 
+	 * @param directory
+	 *        the CKEditor installation directory.
+	 * @param stateDirectory
+	 *        the directory storing the hashes of files between restarts or {@code null} if they should not be stored.
+	 * @return the timestamp or {@code null} if the directory cannot be read.
+	 */
+	static String getTimestamp( final File directory, final File stateDirectory ) {
+		String key = directory.getAbsolutePath();
+		try {
+			key = directory.getCanonicalPath();
+		} catch ( IOException e ) {
+			distributionDigestLogger.log( Level.FINE, "Could not resolve the canonical path of " + directory, e );
+		}
+		FutureTask< Timestamp > current = timestamps.get( key );
+		if ( current != null && isRetryDue( current ) ) {
+			timestamps.remove( key, current );
+			current = null;
+		}
+		if ( current == null ) {
+			final File stateFile = ( stateDirectory != null ) ? new File( stateDirectory, "ckeditor-digest-"
+					+ Integer.toHexString( key.hashCode() ) + ".properties" ) : null;
+			FutureTask< Timestamp > task = new FutureTask< Timestamp >( new Callable< Timestamp >() {
+				public Timestamp call() {
+					try {
+						return new Timestamp( compute( directory, stateFile, Runtime.getRuntime().availableProcessors() ) );
+					} catch ( IOException e ) {
+						distributionDigestLogger.log( Level.WARNING, "Could not compute the timestamp of " + directory, e );
+					} catch ( RuntimeException e ) {
+						distributionDigestLogger.log( Level.WARNING, "Could not compute the timestamp of " + directory, e );
+					}
+					return new Timestamp( null );
+				}
+			} );
+			current = timestamps.putIfAbsent( key, task );
+			if ( current == null ) {
+				current = task;
+				task.run();
+			}
+		}
+		try {
+			return current.get().value;
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch ( ExecutionException e ) {
+			distributionDigestLogger.log( Level.WARNING, "Could not compute the timestamp of " + directory, e.getCause() );
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether a finished computation failed long enough ago to be started again.
+	 * 
+	 * @param task
+	 *        the computation of a timestamp.
+	 * @return {@code true} if the computation should be retried, {@code false} otherwise.
+	 */
+	private static boolean isRetryDue( final FutureTask< Timestamp > task ) {
+		if ( !task.isDone() ) {
+			return false;
+		}
+		try {
+			Timestamp timestamp = task.get();
+			return timestamp.value == null && System.nanoTime() - timestamp.computedAt >= RETRY_INTERVAL;
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch ( ExecutionException e ) {
+			return true;
+		}
+	}
+
+	/**
+	 * Computes the timestamp of a CKEditor directory. Files whose length and modification time match the state file are not read again.
+	 * 
+	 * @param directory
+	 *        the CKEditor installation directory.
+	 * @param stateFile
+	 *        the file storing the hashes of files between restarts or {@code null} if they should not be stored.
+	 * @param threads
+	 *        the number of threads reading files.
+	 * @return the timestamp.
+	 * @throws IOException
+	 *         if any of the files cannot be read.
+	 */
+	static String compute( final File directory, final File stateFile, final int threads ) throws IOException {
+		Properties state = new Properties();
+		if ( stateFile != null && stateFile.isFile() ) {
+			InputStream in = new FileInputStream( stateFile );
+			try {
+				state.load( in );
+			} finally {
+				in.close();
+			}
+		}
+
+		Map< String, File > files = new TreeMap< String, File >();
+		collect( directory, "/", files );
+		Map< String, String > hashes = new TreeMap< String, String >();
+		Map< String, Future< String >> pending = new TreeMap< String, Future< String >>();
+		ExecutorService executor = Executors.newFixedThreadPool( Math.max( threads, 1 ) );
+		try {
+			for ( Map.Entry< String, File > entry : files.entrySet() ) {
+				final File file = entry.getValue();
+				String signature = file.length() + "," + file.lastModified() + ",";
+				String stored = state.getProperty( entry.getKey() );
+				if ( stored != null && stored.startsWith( signature ) ) {
+					hashes.put( entry.getKey(), stored.substring( signature.length() ) );
+				} else {
+					pending.put( entry.getKey(), executor.submit( new Callable< String >() {
+						public String call() throws IOException {
+							return hash( file );
+						}
+					} ) );
+				}
+			}
+			for ( Map.Entry< String, Future< String >> entry : pending.entrySet() ) {
+				hashes.put( entry.getKey(), entry.getValue().get() );
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while hashing " + directory );
+		} catch ( ExecutionException e ) {
+			IOException ioe = new IOException( "Could not hash " + directory );
+			ioe.initCause( e.getCause() );
+			throw ioe;
+		} finally {
+			executor.shutdownNow();
+		}
+
+		MessageDigest digest = newDigest();
+		Properties newState = new Properties();
+		for ( Map.Entry< String, String > entry : hashes.entrySet() ) {
+			File file = files.get( entry.getKey() );
+			newState.setProperty( entry.getKey(), file.length() + "," + file.lastModified() + "," + entry.getValue() );
+			digest.update( ( entry.getKey() + "\0" + entry.getValue() + "\n" ).getBytes( "UTF-8" ) );
+		}
+		if ( stateFile != null && ( !pending.isEmpty() || !newState.equals( state ) ) ) {
+			store( newState, stateFile );
+		}
+		String timestamp = Utils.toHex( digest.digest() ).substring( 0, TIMESTAMP_LENGTH ).toUpperCase( Locale.ENGLISH );
+		distributionDigestLogger.info( "Computed CKEditor timestamp " + timestamp + " for " + directory + " (" + pending.size() + " of "
+				+ files.size() + " files hashed)." );
+		return timestamp;
+	}
+
+	/**
+	 * Returns the CKEditor directory available under the given base path. The base path is first resolved to a directory of the web
+	 * application. If that fails, the directory registered by the {@code CKEditorAssetServlet} is used.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @return the CKEditor directory or {@code null} if it cannot be found.
+	 */
+	static File getDirectory( final ServletContext context, final String basePath ) {
+		File directory = findDirectory( context, basePath );
+		return ( directory != null ) ? directory : ( File ) context.getAttribute( DIRECTORY_ATTRIBUTE );
+	}
+
+	/**
+	 * Resolves the base path to a directory of the web application. Absolute URLs and paths leaving the web application cannot be resolved.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @return the CKEditor directory or {@code null} if the base path does not point to a directory.
+	 */
+	private static File findDirectory( final ServletContext context, final String basePath ) {
+		if ( Utils.isStringEmpty( basePath ) || basePath.indexOf( "://" ) != -1 || basePath.startsWith( "//" )
+				|| basePath.startsWith( ".." ) ) {
+			return null;
+		}
+		String path = basePath.startsWith( "./" ) ? basePath.substring( 1 ) : basePath;
+		String contextPath = context.getContextPath();
+		if ( !Utils.isStringEmpty( contextPath ) && path.startsWith( contextPath + "/" ) ) {
+			path = path.substring( contextPath.length() );
+		}
+		String realPath = context.getRealPath( path.startsWith( "/" ) ? path : "/" + path );
+		if ( realPath == null ) {
+			return null;
+		}
+		File directory = new File( realPath );
+		return new File( directory, "ckeditor.js" ).isFile() ? directory : null;
+	}
+
+	/**
+	 * Returns the temporary directory of the web application, used to store the hashes of files between restarts.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @return the temporary directory or {@code null} if the container does not provide one.
+	 */
+	static File getStateDirectory( final ServletContext context ) {
+		Object tempDir = context.getAttribute( "javax.servlet.context.tempdir" );
+		return ( tempDir instanceof File ) ? ( File ) tempDir : null;
+	}
+
+	/**
+	 * Collects all files from a directory and its subdirectories.
+	 * 
+	 * @param dir
+	 *        the directory to walk.
+	 * @param prefix
+	 *        the path of the directory relative to the CKEditor directory.
+	 * @param files
+	 *        the {@code Map} to which files are added under their relative paths.
+	 */
+	private static void collect( final File dir, final String prefix, final Map< String, File > files ) {
+		File[] children = dir.listFiles();
+		if ( children == null ) {
+			return;
+		}
+		for ( File child : children ) {
+			if ( child.isDirectory() ) {
+				collect( child, prefix + child.getName() + "/", files );
+			} else {
+				files.put( prefix + child.getName(), child );
+			}
+		}
+	}
+
+	/**
+	 * Returns the hexadecimal hash of a file, read through a {@code FileChannel}.
+	 * 
+	 * @param file
+	 *        the file to hash.
+	 * @return a string representing the hash.
+	 * @throws IOException
+	 *         if the file cannot be read.
+	 */
+	private static String hash( final File file ) throws IOException {
+		MessageDigest digest = newDigest();
+		FileInputStream in = new FileInputStream( file );
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+			while ( channel.read( buffer ) != -1 ) {
+				buffer.flip();
+				digest.update( buffer );
+				buffer.clear();
+			}
+		} finally {
+			in.close();
+		}
+		return Utils.toHex( digest.digest() );
+	}
+
+	/**
+	 * Writes the hashes of files to the state file. The file is replaced atomically where the file system allows it.
+	 * 
+	 * @param state
+	 *        the hashes of files.
+	 * @param stateFile
+	 *        the file to write.
+	 */
+	private static void store( final Properties state, final File stateFile ) {
+		try {
+			File temp = File.createTempFile( "ckeditor", ".tmp", stateFile.getParentFile() );
+			OutputStream out = new FileOutputStream( temp );
+			try {
+				state.store( out, "CKEditor file hashes" );
+			} finally {
+				out.close();
+			}
+			if ( !temp.renameTo( stateFile ) ) {
+				stateFile.delete();
+				if ( !temp.renameTo( stateFile ) ) {
+					temp.delete();
+				}
+			}
+		} catch ( IOException e ) {
+			distributionDigestLogger.log( Level.WARNING, "Could not store CKEditor file hashes in " + stateFile, e );
+		}
+	}
+
+	/**
+	 * Creates the message digest used for hashing.
+	 * 
+	 * @return the SHA-1 {@code MessageDigest} object.
+	 */
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance( "SHA-1" );
+		} catch ( NoSuchAlgorithmException e ) {
+			throw new IllegalStateException( "SHA-1 is not supported.", e );
+		}
+	}
+
+	/**
+	 * Result of a timestamp computation.
+	 */
+	private static final class Timestamp {
+
+		/**
+		 * The timestamp or {@code null} if the directory could not be read.
+		 */
+		private final String value;
+		/**
+		 * Time in nanoseconds ({@code System.nanoTime}) at which the computation finished.
+		 */
+		private final long computedAt = System.nanoTime();
+
+		/**
+		 * Creates the {@code Timestamp} object.
+		 * 
+		 * @param value
+		 *        the timestamp or {@code null} if the directory could not be read.
+		 */
+		Timestamp( final String value ) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,587 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.jsp.PageContext;
+
+/**
+ * The {@code EditorBootstrap} class contains the client-side runtime used when editor creation is deferred, together with helper methods
+ * that create calls to this runtime. It is shared by the {@code CKEditor} object and CKEditor tags.
+ */
+final class EditorBootstrap {
+
+	/**
+	 * Name of the attribute informing that the on-demand activation runtime was already inserted into JSP.
+	 */
+	static final String ACTIVATION_SET_ATTRIBUTE = "ckeditor_activation_set";
+
+	/**
+	 * Name of the request attribute storing the position of the last editor inserted into JSP.
+	 */
+	private static final String ORDER_ATTRIBUTE = "ckeditor_editor_order";
+
+	/**
+	 * JavaScript code of the on-demand activation runtime. The {@code CKEDITOR_ACTIVATE} function creates an editor on the given element
+	 * once it receives focus or, in the {@code visible} mode, once it scrolls into view. Browsers without {@code IntersectionObserver}
+	 * support create the editor immediately.
+	 * <p>
+	 * In the {@code scheduled} mode editors are put into a queue which is processed in batches of {@code CKEDITOR_ACTIVATE.batchSize}
+	 * editors, one batch per idle callback (or animation frame if idle callbacks are not supported). Editors visible in the viewport are
+	 * created first, the rest follows in the order assigned on the server side.
+	 */
+	private static final String ACTIVATION_RUNTIME = "window.CKEDITOR_ACTIVATE = window.CKEDITOR_ACTIVATE || (function() {\n"
+			+ "	var queue = [], pending = false, sequence = 0;\n"
+			+ "	function create( element, method, config ) {\n"
+			+ "		return config ? CKEDITOR[ method ]( element, config ) : CKEDITOR[ method ]( element );\n"
+			+ "	}\n"
+			+ "	function isVisible( element ) {\n"
+			+ "		var rect = element.getBoundingClientRect ? element.getBoundingClientRect() : null;\n"
+			+ "		return !!rect && rect.bottom >= 0 && rect.top <= ( window.innerHeight || document.documentElement.clientHeight );\n"
+			+ "	}\n"
+			+ "	function next( callback ) {\n"
+			+ "		if ( window.requestIdleCallback )\n"
+			+ "			window.requestIdleCallback( callback, { timeout: 100 } );\n"
+			+ "		else if ( window.requestAnimationFrame )\n"
+			+ "			window.requestAnimationFrame( callback );\n"
+			+ "		else\n"
+			+ "			setTimeout( callback, 0 );\n"
+			+ "	}\n"
+			+ "	function runBatch() {\n"
+			+ "		var i, item;\n"
+			+ "		for ( i = 0; i < queue.length; i++ )\n"
+			+ "			queue[ i ].priority = isVisible( queue[ i ].element ) ? 0 : 1;\n"
+			+ "		queue.sort( function( a, b ) {\n"
+			+ "			return ( a.priority - b.priority ) || ( a.order - b.order ) || ( a.sequence - b.sequence );\n"
+			+ "		} );\n"
+			+ "		for ( i = 0; i < Math.max( activate.batchSize, 1 ) && queue.length; i++ ) {\n"
+			+ "			item = queue.shift();\n"
+			+ "			create( item.element, item.method, item.config );\n"
+			+ "		}\n"
+			+ "		pending = queue.length > 0;\n"
+			+ "		if ( pending )\n"
+			+ "			next( runBatch );\n"
+			+ "	}\n"
+			+ "	function schedule( element, method, config, order ) {\n"
+			+ "		queue.push( { element: element, method: method, config: config, order: order, sequence: sequence++ } );\n"
+			+ "		if ( !pending ) {\n"
+			+ "			pending = true;\n"
+			+ "			next( runBatch );\n"
+			+ "		}\n"
+			+ "	}\n"
+			+ "	function activate( element, method, config, mode, order ) {\n"
+			+ "		if ( typeof element == 'string' )\n"
+			+ "			element = document.getElementById( element ) || document.getElementsByName( element )[ 0 ];\n"
+			+ "		if ( !element )\n"
+			+ "			return;\n"
+			+ "		if ( mode == 'scheduled' )\n"
+			+ "			return schedule( element, method, config, order );\n"
+			+ "		var observer, done = false;\n"
+			+ "		function onActivate( ev ) {\n"
+			+ "			if ( done )\n"
+			+ "				return;\n"
+			+ "			done = true;\n"
+			+ "			if ( observer )\n"
+			+ "				observer.disconnect();\n"
+			+ "			if ( element.removeEventListener )\n"
+			+ "				element.removeEventListener( 'focus', onActivate, true );\n"
+			+ "			var editor = create( element, method, config );\n"
+			+ "			if ( editor && ev && ev.type == 'focus' )\n"
+			+ "				editor.on( 'instanceReady', function() { editor.focus(); } );\n"
+			+ "		}\n"
+			+ "		if ( !element.addEventListener )\n"
+			+ "			return onActivate();\n"
+			+ "		element.addEventListener( 'focus', onActivate, true );\n"
+			+ "		if ( mode == 'visible' ) {\n"
+			+ "			if ( !window.IntersectionObserver )\n"
+			+ "				return onActivate();\n"
+			+ "			observer = new IntersectionObserver( function( entries ) {\n"
+			+ "				for ( var i = 0; i < entries.length; i++ ) {\n"
+			+ "					if ( entries[ i ].isIntersecting )\n"
+			+ "						return onActivate();\n"
+			+ "				}\n"
+			+ "			} );\n"
+			+ "			observer.observe( element );\n"
+			+ "		}\n"
+			+ "	}\n"
+			+ "	activate.batchSize = 2;\n"
+			+ "	activate.all = function( method, className, config, mode, order ) {\n"
+			+ "		var elements = document.getElementsByTagName( method == 'inline' ? '*' : 'textarea' ),\n"
+			+ "			classRegex = className ? new RegExp( '(?:^| )' + className + '(?:$| )' ) : null,\n"
+			+ "			found = [];\n"
+			+ "		for ( var i = 0; i < elements.length; i++ ) {\n"
+			+ "			if ( method == 'inline' && elements[ i ].getAttribute( 'contenteditable' ) != 'true' )\n"
+			+ "				continue;\n"
+			+ "			if ( !classRegex || classRegex.test( elements[ i ].className ) )\n"
+			+ "				found.push( elements[ i ] );\n"
+			+ "		}\n"
+			+ "		for ( i = 0; i < found.length; i++ )\n"
+			+ "			activate( found[ i ], method, config, mode, order );\n"
+			+ "	};\n"
+			+ "	return activate;\n"
+			+ "})();\n";
+
+	/**
+	 * JavaScript code of the runtime which upgrades static content into an editor instance. The {@code CKEDITOR_UPGRADE} function waits
+	 * for the first click on the static content, loads {@code ckeditor.js} if needed and creates the editor. For the {@code replace}
+	 * method the content is moved into a new {@code <textarea>} element which takes the place of the static content.
+	 */
+	private static final String UPGRADE_RUNTIME = "window.CKEDITOR_UPGRADE = window.CKEDITOR_UPGRADE || "
+			+ "function( id, method, config, src, basePath ) {\n"
+			+ "	var container = document.getElementById( id );\n"
+			+ "	if ( !container )\n"
+			+ "		return;\n"
+			+ "	function create() {\n"
+			+ "		var element = container;\n"
+			+ "		CKEDITOR.disableAutoInline = true;\n"
+			+ "		if ( method == 'replace' ) {\n"
+			+ "			element = document.createElement( 'textarea' );\n"
+			+ "			element.name = element.id = id;\n"
+			+ "			element.value = container.innerHTML;\n"
+			+ "			container.parentNode.replaceChild( element, container );\n"
+			+ "		} else {\n"
+			+ "			container.setAttribute( 'contenteditable', 'true' );\n"
+			+ "		}\n"
+			+ "		var editor = config ? CKEDITOR[ method ]( element, config ) : CKEDITOR[ method ]( element );\n"
+			+ "		if ( editor )\n"
+			+ "			editor.on( 'instanceReady', function() { editor.focus(); } );\n"
+			+ "	}\n"
+			+ "	container.onclick = function() {\n"
+			+ "		container.onclick = null;\n"
+			+ "		if ( window.CKEDITOR )\n"
+			+ "			return create();\n"
+			+ "		if ( basePath )\n"
+			+ "			window.CKEDITOR_BASEPATH = window.CKEDITOR_BASEPATH || basePath;\n"
+			+ "		var script = document.createElement( 'script' );\n"
+			+ "		script.src = src;\n"
+			+ "		script.onload = create;\n"
+			+ "		document.getElementsByTagName( 'head' )[ 0 ].appendChild( script );\n"
+			+ "	};\n"
+			+ "};\n";
+
+	/**
+	 * Name of the attribute storing the set of stylesheets already linked by static content.
+	 */
+	static final String STATIC_CSS_ATTRIBUTE = "ckeditor_static_css";
+
+	/**
+	 * Name of the attribute informing that the upgrade runtime was already inserted into JSP.
+	 */
+	static final String UPGRADE_SET_ATTRIBUTE = "ckeditor_upgrade_set";
+
+	/**
+	 * JavaScript code of the runtime which loads editor content out of band. The {@code CKEDITOR_LOAD} function downloads the content and
+	 * passes it to the editor with {@code setData}. If the editor was not created yet, for example because its activation is deferred, the
+	 * content is put into the {@code <textarea>} element, from which the editor reads it when it is created.
+	 * <p>
+	 * Until the content is loaded, the {@code <textarea>} element and the editor are read-only and the form containing them cannot be
+	 * submitted, so an empty document is never saved in place of the real one. If the content cannot be loaded, for example because it was
+	 * evicted from the server cache, the editor stays read-only and an error with a link reloading the page is displayed. Reloading renders
+	 * the page again, together with a fresh copy of the content. Applications may handle errors themselves by setting
+	 * {@code CKEDITOR_LOAD.onerror} to a function returning {@code false}. The content is never passed to an editor which was already
+	 * changed.
+	 */
+	private static final String LOADER_RUNTIME = "window.CKEDITOR_LOAD = window.CKEDITOR_LOAD || (function() {\n"
+			+ "	var states = {};\n"
+			+ "	function getEditor( name ) {\n"
+			+ "		return window.CKEDITOR && CKEDITOR.instances[ name ];\n"
+			+ "	}\n"
+			+ "	function whenReady( state, callback ) {\n"
+			+ "		var editor = getEditor( state.name );\n"
+			+ "		if ( !editor )\n"
+			+ "			return false;\n"
+			+ "		if ( editor.status == 'ready' )\n"
+			+ "			callback( editor );\n"
+			+ "		else\n"
+			+ "			editor.once( 'instanceReady', function() { callback( editor ); } );\n"
+			+ "		return true;\n"
+			+ "	}\n"
+			+ "	function isPending( form ) {\n"
+			+ "		for ( var name in states ) {\n"
+			+ "			if ( states.hasOwnProperty( name ) && states[ name ].form == form && states[ name ].status != 'loaded' )\n"
+			+ "				return true;\n"
+			+ "		}\n"
+			+ "		return false;\n"
+			+ "	}\n"
+			+ "	function guard( form ) {\n"
+			+ "		if ( !form || form.ckeditorLoadGuard || !form.addEventListener )\n"
+			+ "			return;\n"
+			+ "		form.ckeditorLoadGuard = true;\n"
+			+ "		form.addEventListener( 'submit', function( ev ) {\n"
+			+ "			if ( isPending( form ) ) {\n"
+			+ "				ev.preventDefault();\n"
+			+ "				alert( load.submitMessage );\n"
+			+ "			}\n"
+			+ "		}, true );\n"
+			+ "	}\n"
+			+ "	function fail( state, status, message ) {\n"
+			+ "		state.status = 'failed';\n"
+			+ "		if ( load.onerror && load.onerror( state.name, status ) === false )\n"
+			+ "			return;\n"
+			+ "		var box = document.createElement( 'div' ), link = document.createElement( 'a' );\n"
+			+ "		box.className = 'cke_load_error';\n"
+			+ "		box.setAttribute( 'role', 'alert' );\n"
+			+ "		box.appendChild( document.createTextNode( message + ' ' ) );\n"
+			+ "		link.href = '#';\n"
+			+ "		link.onclick = function() {\n"
+			+ "			window.location.reload();\n"
+			+ "			return false;\n"
+			+ "		};\n"
+			+ "		link.appendChild( document.createTextNode( load.reloadMessage ) );\n"
+			+ "		box.appendChild( link );\n"
+			+ "		state.element.parentNode.insertBefore( box, state.element );\n"
+			+ "	}\n"
+			+ "	function apply( state, data ) {\n"
+			+ "		var created = whenReady( state, function( editor ) {\n"
+			+ "			if ( editor.checkDirty() )\n"
+			+ "				return fail( state, 0, load.conflictMessage );\n"
+			+ "			editor.setData( data, { callback: function() {\n"
+			+ "				editor.resetDirty();\n"
+			+ "				state.status = 'loaded';\n"
+			+ "				if ( !state.readOnly && !editor.config.readOnly )\n"
+			+ "					editor.setReadOnly( false );\n"
+			+ "			} } );\n"
+			+ "		} );\n"
+			+ "		if ( !created ) {\n"
+			+ "			state.element.value = data;\n"
+			+ "			state.element.readOnly = state.readOnly;\n"
+			+ "			state.status = 'loaded';\n"
+			+ "		}\n"
+			+ "	}\n"
+			+ "	function load( name, url ) {\n"
+			+ "		var element = document.getElementById( name ) || document.getElementsByName( name )[ 0 ];\n"
+			+ "		if ( !element )\n"
+			+ "			return;\n"
+			+ "		var state = states[ name ] = { name: name, element: element, form: element.form, readOnly: element.readOnly,\n"
+			+ "			status: 'loading' };\n"
+			+ "		element.readOnly = true;\n"
+			+ "		guard( state.form );\n"
+			+ "		whenReady( state, function( editor ) {\n"
+			+ "			if ( state.status != 'loaded' )\n"
+			+ "				editor.setReadOnly( true );\n"
+			+ "		} );\n"
+			+ "		var xhr = new XMLHttpRequest();\n"
+			+ "		xhr.open( 'GET', url, true );\n"
+			+ "		xhr.onreadystatechange = function() {\n"
+			+ "			if ( xhr.readyState != 4 )\n"
+			+ "				return;\n"
+			+ "			if ( xhr.status == 200 )\n"
+			+ "				apply( state, xhr.responseText );\n"
+			+ "			else\n"
+			+ "				fail( state, xhr.status, ( xhr.status == 404 || xhr.status == 410 ) ? load.goneMessage : load.errorMessage );\n"
+			+ "		};\n"
+			+ "		xhr.send();\n"
+			+ "	}\n"
+			+ "	load.isLoaded = function( name ) {\n"
+			+ "		return !states[ name ] || states[ name ].status == 'loaded';\n"
+			+ "	};\n"
+			+ "	load.onerror = null;\n"
+			+ "	load.errorMessage = 'The content of the editor could not be loaded.';\n"
+			+ "	load.goneMessage = 'The content of the editor is no longer available.';\n"
+			+ "	load.conflictMessage = 'The editor was changed before its content was loaded, so the content was not inserted.';\n"
+			+ "	load.submitMessage = 'The form cannot be submitted until the content of all editors is loaded.';\n"
+			+ "	load.reloadMessage = 'Reload the page to edit the content.';\n"
+			+ "	return load;\n"
+			+ "})();\n";
+
+	/**
+	 * Name of the attribute informing that the content loader runtime was already inserted into JSP.
+	 */
+	static final String LOADER_SET_ATTRIBUTE = "ckeditor_loader_set";
+
+	/**
+	 * This class contains only static members and cannot be instantiated.
+	 */
+	private EditorBootstrap() {
+	}
+
+	/**
+	 * Returns the JavaScript code of the on-demand activation runtime. The runtime has to be inserted into JSP once, before the first call
+	 * created with {@link #activate(String, String, CKEditorConfig, CKEditor.Activation, int)} or
+	 * {@link #activateAll(String, String, CKEditorConfig, CKEditor.Activation, int)}.
+	 * 
+	 * @return a string representing the JavaScript code of the activation runtime.
+	 */
+	static String getActivationRuntime() {
+		return ACTIVATION_RUNTIME;
+	}
+
+	/**
+	 * Creates the JavaScript call which defers the creation of a single editor instance until it is activated.
+	 * 
+	 * @param target
+	 *        the name or ID of the element on which the editor will be created.
+	 * @param method
+	 *        the name of the CKEditor JavaScript creation method, {@code replace} or {@code inline}.
+	 * @param config
+	 *        the {@code CKEditorConfig} object used to create the editor instance. May be {@code null}.
+	 * @param activation
+	 *        the {@code Enum} marker indicating when the editor should be created.
+	 * @param order
+	 *        the position of the editor on the page, used to order scheduled editors.
+	 * @return a string representing the JavaScript call.
+	 */
+	static String activate( final String target, final String method, final CKEditorConfig config,
+			final CKEditor.Activation activation, final int order ) {
+		StringBuilder sb = new StringBuilder( "CKEDITOR_ACTIVATE( '" );
+		sb.append( target ).append( "', '" ).append( method ).append( "', " ).append( encodeConfig( config ) ).append( ", '" )
+				.append( getModeName( activation ) ).append( "', " ).append( order ).append( " );\n" );
+		return sb.toString();
+	}
+
+	/**
+	 * Creates the JavaScript call which defers the creation of editor instances on all matching elements until each of them is activated.
+	 * For the {@code replace} method all {@code <textarea>} elements are matched and for the {@code inline} method all
+	 * {@code contenteditable} elements are matched.
+	 * 
+	 * @param method
+	 *        the name of the CKEditor JavaScript creation method, {@code replace} or {@code inline}.
+	 * @param className
+	 *        the name of the CSS marker class used to filter elements. May be {@code null} or empty.
+	 * @param config
+	 *        the {@code CKEditorConfig} object used to create editor instances. May be {@code null}.
+	 * @param activation
+	 *        the {@code Enum} marker indicating when editors should be created.
+	 * @param order
+	 *        the position of the tag on the page, used to order scheduled editors.
+	 * @return a string representing the JavaScript call.
+	 */
+	static String activateAll( final String method, final String className, final CKEditorConfig config,
+			final CKEditor.Activation activation, final int order ) {
+		StringBuilder sb = new StringBuilder();
+		if ( "inline".equals( method ) ) {
+			sb.append( "CKEDITOR.disableAutoInline = true;\n" );
+		}
+		sb.append( "CKEDITOR_ACTIVATE.all( '" ).append( method ).append( "', " );
+		if ( Utils.isStringEmpty( className ) ) {
+			sb.append( "null" );
+		} else {
+			sb.append( "'" ).append( className ).append( "'" );
+		}
+		sb.append( ", " ).append( encodeConfig( config ) ).append( ", '" ).append( getModeName( activation ) ).append( "', " )
+				.append( order ).append( " );\n" );
+		return sb.toString();
+	}
+
+	/**
+	 * Creates the JavaScript code which sets the number of scheduled editors created in a single batch.
+	 * 
+	 * @param batchSize
+	 *        the number of editors created in a single batch.
+	 * @return a string representing the JavaScript code.
+	 */
+	static String setBatchSize( final int batchSize ) {
+		return "CKEDITOR_ACTIVATE.batchSize = " + batchSize + ";\n";
+	}
+
+	/**
+	 * Checks if a runtime or another one-time part of the output was already inserted into JSP. Tags mark it in the page scope and the
+	 * {@code CKEditor} object in the request scope, so both scopes are checked, like for the {@code ckeditor_initialized} attribute.
+	 * 
+	 * @param pageContext
+	 *        the page context of the tag.
+	 * @param name
+	 *        the name of the marker attribute.
+	 * @return {@code true} if the attribute is present in the page or request scope, {@code false} otherwise.
+	 */
+	static boolean isInserted( final PageContext pageContext, final String name ) {
+		return pageContext.getAttribute( name ) != null || pageContext.getRequest().getAttribute( name ) != null;
+	}
+
+	/**
+	 * Returns the set of stylesheets already linked by static content, from the page scope or, if static content was inserted by the
+	 * {@code CKEditor} object, from the request scope. If there is none, an empty set is stored in the page scope.
+	 * 
+	 * @param pageContext
+	 *        the page context of the tag.
+	 * @return the {@code Set} of stylesheet URLs.
+	 */
+	@SuppressWarnings( "unchecked" )
+	static Set< String > getLinkedStylesheets( final PageContext pageContext ) {
+		Set< String > linked = ( Set< String > ) pageContext.getAttribute( STATIC_CSS_ATTRIBUTE );
+		if ( linked == null ) {
+			linked = ( Set< String > ) pageContext.getRequest().getAttribute( STATIC_CSS_ATTRIBUTE );
+		}
+		if ( linked == null ) {
+			linked = new HashSet< String >();
+			pageContext.setAttribute( STATIC_CSS_ATTRIBUTE, linked );
+		}
+		return linked;
+	}
+
+	/**
+	 * Returns the position of the next editor inserted into JSP. The position is counted per request, so editors from included pages are
+	 * ordered by the place where they appear in the final response.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @return the zero-based position of the next editor.
+	 */
+	static int nextOrder( final ServletRequest request ) {
+		int next = peekOrder( request );
+		request.setAttribute( ORDER_ATTRIBUTE, Integer.valueOf( next ) );
+		return next;
+	}
+
+	/**
+	 * Returns the position which the next editor inserted into JSP will get, without assigning it.
+	 * 
+	 * @param request
+	 *        the current request.
+	 * @return the zero-based position of the next editor.
+	 */
+	static int peekOrder( final ServletRequest request ) {
+		Integer order = ( Integer ) request.getAttribute( ORDER_ATTRIBUTE );
+		return ( order == null ) ? 0 : order.intValue() + 1;
+	}
+
+	/**
+	 * Returns the JavaScript code of the runtime which upgrades static content into an editor instance. The runtime has to be inserted
+	 * into JSP once, before the first call created with {@link #upgrade(String, String, CKEditorConfig, String, String)}.
+	 * 
+	 * @return a string representing the JavaScript code of the upgrade runtime.
+	 */
+	static String getUpgradeRuntime() {
+		return UPGRADE_RUNTIME;
+	}
+
+	/**
+	 * Creates the JavaScript call which upgrades static content into an editor instance on click.
+	 * 
+	 * @param target
+	 *        the ID of the element with static content.
+	 * @param method
+	 *        the name of the CKEditor JavaScript creation method, {@code replace} or {@code inline}.
+	 * @param config
+	 *        the {@code CKEditorConfig} object used to create the editor instance. May be {@code null}.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param timestamp
+	 *        the timestamp appended to the {@code ckeditor.js} URL. May be {@code null}.
+	 * @return a string representing the JavaScript call.
+	 */
+	static String upgrade( final String target, final String method, final CKEditorConfig config, final String basePath,
+			final String timestamp ) {
+		String args = Utils.isStringEmpty( timestamp ) ? "" : "?t=" + timestamp;
+		StringBuilder sb = new StringBuilder( "CKEDITOR_UPGRADE( '" );
+		sb.append( target ).append( "', '" ).append( method ).append( "', " ).append( encodeConfig( config ) ).append( ", '" )
+				.append( Utils.appendSlash( basePath ) ).append( "ckeditor.js" ).append( args ).append( "', " );
+		if ( !basePath.startsWith( ".." ) && !basePath.startsWith( "./" ) ) {
+			sb.append( "'" ).append( basePath ).append( "'" );
+		} else {
+			sb.append( "null" );
+		}
+		sb.append( " );\n" );
+		return sb.toString();
+	}
+
+	/**
+	 * Stores editor content so that it can be loaded out of band from the {@code CKEditorAssetServlet}. The content is bound to the HTTP
+	 * session of the request, which is created if needed, and is served only to that session.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param request
+	 *        the current request.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param value
+	 *        the editor content.
+	 * @return the URL of the content or {@code null} if the content is empty or the {@code CKEditorAssetServlet} is not running, in which
+	 *         case the content has to be inserted into JSP.
+	 */
+	static String storeContent( final ServletContext context, final HttpServletRequest request, final String basePath,
+			final String value ) {
+		GeneratedAssets generatedAssets = GeneratedAssets.getInstance( context );
+		if ( generatedAssets == null || Utils.isStringEmpty( value ) ) {
+			return null;
+		}
+		String owner = GeneratedAssets.getContentOwner( request.getSession(), true );
+		try {
+			return Utils.appendSlash( basePath ) + generatedAssets.putContent( value.getBytes( "UTF-8" ), owner ).substring( 1 );
+		} catch ( UnsupportedEncodingException e ) {
+			throw new IllegalStateException( "UTF-8 is not supported.", e );
+		}
+	}
+
+	/**
+	 * Returns the JavaScript code of the runtime which loads editor content out of band. The runtime has to be inserted into JSP once,
+	 * before the first call created with {@link #load(String, String)}.
+	 * 
+	 * @return a string representing the JavaScript code of the loader runtime.
+	 */
+	static String getLoaderRuntime() {
+		return LOADER_RUNTIME;
+	}
+
+	/**
+	 * Creates the JavaScript call which loads the content of an editor instance out of band.
+	 * 
+	 * @param target
+	 *        the name of the editor instance, matching the ID or name of its {@code <textarea>} element.
+	 * @param url
+	 *        the URL of the content returned by {@link #storeContent(ServletContext, HttpServletRequest, String, String)}.
+	 * @return a string representing the JavaScript call.
+	 */
+	static String load( final String target, final String url ) {
+		return new StringBuilder( "CKEDITOR_LOAD( '" ).append( target ).append( "', '" ).append( url ).append( "' );\n" ).toString();
+	}
+
+	/**
+	 * Creates the static HTML representation of an editor instance: links to the content stylesheets followed by the content itself.
+	 * Stylesheets already linked by previous static content in the same scope are skipped.
+	 * 
+	 * @param target
+	 *        the ID of the element with static content.
+	 * @param htmlValue
+	 *        the HTML content to display.
+	 * @param stylesheets
+	 *        the URLs of stylesheets used by the content.
+	 * @param linked
+	 *        the {@code Set} of stylesheet URLs already linked in the current scope. It is updated by this method.
+	 * @return a string representing the static HTML.
+	 */
+	static String createStaticContent( final String target, final String htmlValue, final List< String > stylesheets,
+			final Set< String > linked ) {
+		StringBuilder sb = new StringBuilder();
+		for ( String href : stylesheets ) {
+			if ( linked.add( href ) ) {
+				sb.append( Utils.createStylesheetLink( href ) );
+			}
+		}
+		sb.append( Utils.createStaticContentTag( target, htmlValue ) );
+		return sb.toString();
+	}
+
+	/**
+	 * Converts the configuration object into a JavaScript object or {@code null} if there is no configuration.
+	 * 
+	 * @param config
+	 *        the {@code CKEditorConfig} object to encode.
+	 * @return a string representing the JavaScript object or {@code null}.
+	 */
+	private static String encodeConfig( final CKEditorConfig config ) {
+		if ( config == null || config.isEmpty() ) {
+			return "null";
+		}
+		return Utils.jsEncode( config );
+	}
+
+	/**
+	 * Returns the name of the activation mode understood by the activation runtime.
+	 * 
+	 * @param activation
+	 *        the {@code Enum} marker indicating when editors should be created.
+	 * @return a string representing the activation mode.
+	 */
+	private static String getModeName( final CKEditor.Activation activation ) {
+		return activation.name().toLowerCase( Locale.ENGLISH );
+	}
+}
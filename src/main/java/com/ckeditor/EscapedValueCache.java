@@ -0,0 +1,160 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.UnsupportedEncodingException;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The {@code EscapedValueCache} class stores editor values escaped for the HTML {@code <textarea>} element, so documents opened by many
+ * users, such as templates or shared pages, are escaped only once. It is used by the {@code editor} tag when its
+ * {@code cacheEscapedValue} attribute is set.
+ * <p>
+ * Values are identified by the document version passed in the {@code valueVersion} attribute or, if it is not set, by the hash of the
+ * value. The cache is shared by the whole web application and bounded by the total size of escaped values, evicting the least recently
+ * used ones. Its size in bytes can be set with the {@code com.ckeditor.escapedValueCacheSize} context parameter.
+ */
+public final class EscapedValueCache {
+
+	/**
+	 * Name of the application attribute storing the {@code EscapedValueCache} object.
+	 */
+	static final String ESCAPED_VALUE_CACHE_ATTRIBUTE = "ckeditor_escaped_value_cache";
+	/**
+	 * Name of the context parameter setting the maximum size of the cache in bytes.
+	 */
+	static final String SIZE_PARAMETER = "com.ckeditor.escapedValueCacheSize";
+	/**
+	 * Default maximum size of the cache in bytes.
+	 */
+	static final long DEFAULT_SIZE = 16L * 1024 * 1024;
+	/**
+	 * Minimum length of a value which is cached. Shorter values are cheaper to escape than to look up.
+	 */
+	private static final int MIN_CACHED_LENGTH = 1024;
+	/**
+	 * Escaped values by key.
+	 */
+	private final LruCache< String, String > values;
+
+	/**
+	 * Creates the {@code EscapedValueCache} object.
+	 * 
+	 * @param maxSize
+	 *        the maximum size of the cache in bytes.
+	 */
+	private EscapedValueCache( final long maxSize ) {
+		values = new LruCache< String, String >( maxSize, new LruCache.Weigher< String >() {
+			public long weigh( final String value ) {
+				return 2L * value.length();
+			}
+		} );
+	}
+
+	/**
+	 * Returns the {@code EscapedValueCache} object of the web application, creating it if it does not exist.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @return the {@code EscapedValueCache} object.
+	 */
+	public static EscapedValueCache getInstance( final ServletContext context ) {
+		synchronized ( EscapedValueCache.class ) {
+			EscapedValueCache cache = ( EscapedValueCache ) context.getAttribute( ESCAPED_VALUE_CACHE_ATTRIBUTE );
+			if ( cache == null ) {
+				String size = context.getInitParameter( SIZE_PARAMETER );
+				try {
+					cache = new EscapedValueCache( Utils.isStringEmpty( size ) ? DEFAULT_SIZE : Long.parseLong( size.trim() ) );
+				} catch ( NumberFormatException e ) {
+					throw new IllegalArgumentException( "Invalid " + SIZE_PARAMETER + " parameter: " + size, e );
+				}
+				context.setAttribute( ESCAPED_VALUE_CACHE_ATTRIBUTE, cache );
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Returns the value escaped with {@link Utils#escapeHtml(String)}, escaping and storing it if it is not cached yet.
+	 * 
+	 * @param value
+	 *        the value to escape.
+	 * @param version
+	 *        the version identifying the value, for example the document identifier and its revision. If it is {@code null} or empty,
+	 *        the hash of the value is used. A version must not be reused for a different value.
+	 * @return the escaped value.
+	 */
+	String getEscapedValue( final String value, final String version ) {
+		if ( value == null || value.length() < MIN_CACHED_LENGTH ) {
+			return Utils.escapeHtml( value );
+		}
+		String key;
+		if ( Utils.isStringEmpty( version ) ) {
+			try {
+				key = "h:" + Utils.sha1( value.getBytes( "UTF-8" ) );
+			} catch ( UnsupportedEncodingException e ) {
+				throw new IllegalStateException( "UTF-8 is not supported.", e );
+			}
+		} else {
+			key = "v:" + version;
+		}
+		String escaped = values.get( key );
+		if ( escaped == null ) {
+			escaped = Utils.escapeHtml( value );
+			values.put( key, escaped );
+		}
+		return escaped;
+	}
+
+	/**
+	 * Removes all values from the cache.
+	 */
+	public void clear() {
+		values.clear();
+	}
+
+	/**
+	 * Returns the number of cached values.
+	 * 
+	 * @return the number of values.
+	 */
+	public int getEntryCount() {
+		return values.size();
+	}
+
+	/**
+	 * Returns the total size of cached values.
+	 * 
+	 * @return the size in bytes.
+	 */
+	public long getSize() {
+		return values.getWeight();
+	}
+
+	/**
+	 * Returns the number of lookups which found an escaped value.
+	 * 
+	 * @return the hit count.
+	 */
+	public long getHitCount() {
+		return values.getHitCount();
+	}
+
+	/**
+	 * Returns the number of lookups after which the value had to be escaped.
+	 * 
+	 * @return the miss count.
+	 */
+	public long getMissCount() {
+		return values.getMissCount();
+	}
+
+	/**
+	 * Returns the number of values evicted because of the size limit.
+	 * 
+	 * @return the eviction count.
+	 */
+	public long getEvictionCount() {
+		return values.getEvictionCount();
+	}
+}
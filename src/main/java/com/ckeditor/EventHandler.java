@@ -1,10 +1,16 @@
 /* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
 package com.ckeditor;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The {@code EventHandler} class is used to create a set of events which are applicable to a CKEditor instance.<br>
@@ -15,8 +21,27 @@ import java.util.Set;
  * 		eventHandler.addEventHandler( "instanceReady", "function ( event ) {
  * 			alert( \"Loaded: \" + event.editor.name ); }");
  * </pre>
+ * <p>
+ * Event handlers can be stored in replicated sessions. They are serialized in a compact binary format.
  */
-public class EventHandler {
+public class EventHandler implements Externalizable {
+
+	/**
+	 * Serial identifier.
+	 */
+	private static final long serialVersionUID = 6207393587617735154L;
+	/**
+	 * Source of unique identifiers of event handler objects.
+	 */
+	private static final AtomicLong NEXT_ID = new AtomicLong();
+	/**
+	 * Unique identifier of this object.
+	 */
+	private final long id = NEXT_ID.incrementAndGet();
+	/**
+	 * Number of modifications made with the methods of this object.
+	 */
+	private final AtomicInteger modCount = new AtomicInteger();
 
 	/**
 	 * {@code Map} storing all editor instance events.
@@ -43,6 +68,7 @@ public class EventHandler {
 			events.put( event, new LinkedHashSet< String >() );
 		}
 		events.get( event ).add( jsCode );
+		modCount.incrementAndGet();
 	}
 
 	/**
@@ -61,6 +87,7 @@ public class EventHandler {
 				events.get( event ).clear();
 			}
 		}
+		modCount.incrementAndGet();
 	}
 
 	/**
@@ -72,4 +99,60 @@ public class EventHandler {
 		return events;
 	}
 
+	/**
+	 * Returns a string identifying this object in its current state. It changes whenever events are added or removed with the methods of
+	 * this class, so it can be used as a cheap cache key.
+	 * 
+	 * @return a string representing the version of the events.
+	 */
+	final String getVersion() {
+		return id + "." + modCount.get();
+	}
+
+	/**
+	 * Writes the events in a compact binary format.
+	 * 
+	 * @param out
+	 *        the output to write to.
+	 * @throws IOException
+	 *         if the events cannot be written.
+	 */
+	public void writeExternal( final ObjectOutput out ) throws IOException {
+		ConfigSerialization.writeHeader( out );
+		ConfigSerialization.writeVarInt( out, events.size() );
+		for ( Map.Entry< String, Set< String >> eventEntry : events.entrySet() ) {
+			ConfigSerialization.writeString( out, eventEntry.getKey() );
+			ConfigSerialization.writeVarInt( out, eventEntry.getValue().size() );
+			for ( String code : eventEntry.getValue() ) {
+				ConfigSerialization.writeString( out, code );
+			}
+		}
+	}
+
+	/**
+	 * Reads the events written with {@link #writeExternal(ObjectOutput)}.
+	 * 
+	 * @param in
+	 *        the input to read from.
+	 * @throws IOException
+	 *         if the events cannot be read.
+	 * @throws ClassNotFoundException
+	 *         never, declared by the {@code Externalizable} interface.
+	 */
+	public void readExternal( final ObjectInput in ) throws IOException, ClassNotFoundException {
+		ConfigSerialization.readHeader( in, EventHandler.class );
+		events = new HashMap< String, Set< String >>();
+		int eventCount = ConfigSerialization.readVarInt( in );
+		for ( int i = 0; i < eventCount; i++ ) {
+			String event = ConfigSerialization.readString( in );
+			int codeCount = ConfigSerialization.readVarInt( in );
+			Set< String > codes = new LinkedHashSet< String >();
+			for ( int j = 0; j < codeCount; j++ ) {
+				codes.add( ConfigSerialization.readString( in ) );
+			}
+			events.put( event, codes );
+		}
+		modCount.incrementAndGet();
+	}
+
 }
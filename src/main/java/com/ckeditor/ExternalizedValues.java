@@ -0,0 +1,129 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+
+/**
+ * The {@code ExternalizedValues} class moves the values of externalized configuration options (see
+ * {@link CKEditorConfig#externalizeConfigValue(String)}) out of JSP. Each value is encoded once into a small script served by the
+ * {@code CKEditorAssetServlet} under a name containing the hash of the value, so browsers download it once and reuse it on every page.
+ * The script stores the value in the {@code window.CKEDITOR_DATA} object and the configuration refers to it there.
+ * <p>
+ * Scripts are kept in a cache bounded by the {@code dataCacheSize} servlet parameter. The hash of each value instance is remembered, so
+ * a value shared by many configurations is encoded only when its script is first stored or after it was evicted. Externalized values
+ * must therefore be replaced with the {@code CKEditorConfig.addConfigValue} methods rather than modified in place.
+ */
+final class ExternalizedValues {
+
+	/**
+	 * Name of the request attribute storing the paths of scripts already inserted into JSP.
+	 */
+	static final String INSERTED_ATTRIBUTE = "ckeditor_externalized_set";
+	/**
+	 * Number of hash characters used in script names.
+	 */
+	private static final int HASH_LENGTH = 12;
+
+	/**
+	 * Private constructor.
+	 */
+	private ExternalizedValues() {
+	}
+
+	/**
+	 * Returns a copy of the editor configuration in which the values of externalized options are replaced with references to scripts
+	 * served by the {@code CKEditorAssetServlet}. The {@code <script>} tags loading these scripts are appended to {@code scripts}, each of
+	 * them only once per request. They have to be inserted into JSP before the editor creation code. The configurations passed as
+	 * parameters are not modified.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param config
+	 *        the editor configuration. May be {@code null}.
+	 * @param globalConfig
+	 *        the global configuration merged with the editor configuration. May be {@code null}.
+	 * @param request
+	 *        the current request.
+	 * @param scripts
+	 *        the builder to which {@code <script>} tags are appended.
+	 * @return the configuration with externalized values replaced, or {@code config} if there is nothing to replace or the
+	 *         {@code CKEditorAssetServlet} is not running.
+	 */
+	static CKEditorConfig externalize( final ServletContext context, final String basePath, final CKEditorConfig config,
+			final CKEditorConfig globalConfig, final ServletRequest request, final StringBuilder scripts ) {
+		CKEditorConfig effective = new CKEditorConfig().mergeConfigValues( globalConfig ).mergeConfigValues( config );
+		if ( effective.getExternalizedKeys().isEmpty() ) {
+			return config;
+		}
+		GeneratedAssets generatedAssets = GeneratedAssets.getInstance( context );
+		if ( generatedAssets == null ) {
+			return config;
+		}
+
+		@SuppressWarnings( "unchecked" ) Set< String > inserted = ( Set< String > ) request.getAttribute( INSERTED_ATTRIBUTE );
+		if ( inserted == null ) {
+			inserted = new HashSet< String >();
+			request.setAttribute( INSERTED_ATTRIBUTE, inserted );
+		}
+		CKEditorConfig result = new CKEditorConfig().mergeConfigValues( config );
+		for ( String key : effective.getExternalizedKeys() ) {
+			Object value = effective.getConfigValue( key );
+			if ( value == null ) {
+				continue;
+			}
+			boolean stable = !( value instanceof ToolbarPresetReference );
+			String hash = stable ? generatedAssets.getValueHash( value ) : null;
+			if ( hash == null || generatedAssets.get( getPath( hash ) ) == null ) {
+				String encoded = Utils.jsEncode( value );
+				hash = Utils.sha1( getBytes( encoded ) ).substring( 0, HASH_LENGTH );
+				if ( generatedAssets.get( getPath( hash ) ) == null ) {
+					String script = "(window.CKEDITOR_DATA=window.CKEDITOR_DATA||{})['" + hash + "']=" + encoded + ";\n";
+					generatedAssets.putData( getPath( hash ), getBytes( script ) );
+				}
+				if ( stable ) {
+					generatedAssets.putValueHash( value, hash );
+				}
+			}
+			String path = getPath( hash );
+			if ( inserted.add( path ) ) {
+				scripts.append( "<script type=\"text/javascript\" src=\"" ).append( Utils.appendSlash( basePath ) ).append( path.substring( 1 ) )
+						.append( "\"></script>\n" );
+			}
+			result.addConfigValue( key, "@@window.CKEDITOR_DATA['" + hash + "']" );
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the path of the script storing a value.
+	 * 
+	 * @param hash
+	 *        the hash of the value.
+	 * @return the path relative to the CKEditor directory.
+	 */
+	private static String getPath( final String hash ) {
+		return "/data-" + hash + ".js";
+	}
+
+	/**
+	 * Encodes the string with UTF-8.
+	 * 
+	 * @param s
+	 *        the string to encode.
+	 * @return the encoded bytes.
+	 */
+	private static byte[] getBytes( final String s ) {
+		try {
+			return s.getBytes( "UTF-8" );
+		} catch ( UnsupportedEncodingException e ) {
+			throw new IllegalStateException( "UTF-8 is not supported.", e );
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The {@code FileConfigRepository} class loads configurations from files of a directory. The configuration named {@code name} is read from
+ * the {@code name.json} or {@code name.properties} file, in the format described in {@link ConfigProfiles}. Files are read on every call,
+ * so the repository is usually wrapped with {@link CachingConfigRepository}.
+ */
+public class FileConfigRepository implements CKEditorConfigRepository {
+
+	/**
+	 * The directory storing configuration files.
+	 */
+	private final File directory;
+
+	/**
+	 * Creates the {@code FileConfigRepository} object.
+	 * 
+	 * @param directory
+	 *        the directory storing configuration files.
+	 */
+	public FileConfigRepository( final File directory ) {
+		if ( directory == null ) {
+			throw new IllegalArgumentException( "The directory cannot be null." );
+		}
+		this.directory = directory;
+	}
+
+	/**
+	 * Loads a configuration from its file.
+	 * 
+	 * @param name
+	 *        the name of the configuration. It cannot contain path separators.
+	 * @return the frozen configuration or {@code null} if there is no file for this name.
+	 * @throws IOException
+	 *         if the file cannot be read or parsed.
+	 */
+	public CKEditorConfig load( final String name ) throws IOException {
+		if ( Utils.isStringEmpty( name ) || name.indexOf( '/' ) != -1 || name.indexOf( '\\' ) != -1 || name.startsWith( "." ) ) {
+			return null;
+		}
+		for ( String extension : new String[] { "json", "properties" } ) {
+			File file = new File( directory, name + "." + extension );
+			if ( file.isFile() ) {
+				try {
+					return ConfigProfiles.load( file, extension );
+				} catch ( IllegalArgumentException e ) {
+					throw new IOException( "Could not parse configuration file " + file + ".", e );
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,240 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code FileInvalidationBus} class exchanges messages through a directory shared by all nodes, for example on a network file
+ * system, so it works without additional services. Each message is a small file whose name contains its version stamp and the
+ * publishing node. Files are written under a temporary name and renamed, so they are never read partially.
+ * <p>
+ * Every node lists the directory once per poll interval in a daemon thread, starting at a random offset so nodes do not poll at the same
+ * moment, and delivers messages it has not seen yet. Changes are therefore seen by all nodes within one poll interval. A message which
+ * cannot be read or whose listeners fail is logged and delivered again on the next poll, so listeners have to tolerate repeated
+ * messages, which invalidation does anyway.
+ * <p>
+ * Message files are deleted after ten poll intervals, but not earlier than after a minute. The time is measured from the moment the
+ * polling node first listed the file, not from the version stamp written by the publisher, so clocks of the nodes do not have to be
+ * synchronized. The bus must be closed with {@link #close()} when the application stops.
+ */
+public class FileInvalidationBus implements InvalidationBus {
+
+	/**
+	 * Private logger.
+	 */
+	private static final Logger fileInvalidationBusLogger = Logger.getLogger( FileInvalidationBus.class.getName() );
+	/**
+	 * Extension of message files.
+	 */
+	private static final String SUFFIX = ".inv";
+	/**
+	 * Minimum time in milliseconds for which message files are kept.
+	 */
+	private static final long MIN_RETENTION = 60000;
+	/**
+	 * Filter accepting message files.
+	 */
+	private static final FilenameFilter MESSAGES = new FilenameFilter() {
+		public boolean accept( final File dir, final String name ) {
+			return name.endsWith( SUFFIX );
+		}
+	};
+	/**
+	 * The shared directory.
+	 */
+	private final File directory;
+	/**
+	 * Time in milliseconds for which message files are kept.
+	 */
+	private final long retention;
+	/**
+	 * Identifier of this node used in the names of message files.
+	 */
+	private final String nodeId;
+	/**
+	 * Source of sequence numbers distinguishing messages published in the same millisecond.
+	 */
+	private final AtomicLong sequence = new AtomicLong();
+	/**
+	 * Registered listeners.
+	 */
+	private final InvalidationListeners listeners = new InvalidationListeners();
+	/**
+	 * Names of message files which were already delivered. Guarded by this object.
+	 */
+	private final Set< String > delivered = new HashSet< String >();
+	/**
+	 * Local times in milliseconds at which message files were first listed, by the name of the file. Guarded by this object.
+	 */
+	private final Map< String, Long > firstSeen = new HashMap< String, Long >();
+	/**
+	 * Timer polling the directory.
+	 */
+	private final Timer timer;
+
+	/**
+	 * Creates the {@code FileInvalidationBus} object and starts polling the directory. Messages published before are not delivered.
+	 * 
+	 * @param directory
+	 *        the directory shared by all nodes. It is created if it does not exist.
+	 * @param pollInterval
+	 *        the interval of checking the directory for new messages.
+	 * @param unit
+	 *        the unit of {@code pollInterval}.
+	 * @throws IOException
+	 *         if the directory cannot be created.
+	 */
+	public FileInvalidationBus( final File directory, final long pollInterval, final TimeUnit unit ) throws IOException {
+		long interval = Math.max( 1, unit.toMillis( pollInterval ) );
+		if ( !directory.isDirectory() && !directory.mkdirs() ) {
+			throw new IOException( "Could not create directory " + directory + "." );
+		}
+		this.directory = directory;
+		this.retention = Math.max( MIN_RETENTION, 10 * interval );
+		Random random = new Random();
+		this.nodeId = Long.toString( random.nextLong() & Long.MAX_VALUE, 36 );
+		String[] existing = directory.list( MESSAGES );
+		if ( existing != null ) {
+			Long now = Long.valueOf( System.currentTimeMillis() );
+			for ( String fileName : existing ) {
+				delivered.add( fileName );
+				firstSeen.put( fileName, now );
+			}
+		}
+		timer = new Timer( "ckeditor-invalidation-bus", true );
+		timer.schedule( new TimerTask() {
+			@Override
+			public void run() {
+				poll();
+			}
+		}, ( random.nextLong() & Long.MAX_VALUE ) % interval, interval );
+	}
+
+	/**
+	 * Writes a message file and notifies the listeners of this node.
+	 * 
+	 * @param name
+	 *        the name of the changed configuration or {@link #ALL}.
+	 * @throws IOException
+	 *         if the message file cannot be written.
+	 */
+	public void publish( final String name ) throws IOException {
+		long version = System.currentTimeMillis();
+		String fileName = String.format( "%015d-%s-%d%s", Long.valueOf( version ), nodeId,
+				Long.valueOf( sequence.incrementAndGet() ), SUFFIX );
+		File temp = new File( directory, fileName + ".tmp" );
+		OutputStream out = new FileOutputStream( temp );
+		try {
+			out.write( name.getBytes( "UTF-8" ) );
+		} finally {
+			out.close();
+		}
+		synchronized ( this ) {
+			if ( !temp.renameTo( new File( directory, fileName ) ) ) {
+				temp.delete();
+				throw new IOException( "Could not create message file " + fileName + "." );
+			}
+			delivered.add( fileName );
+			firstSeen.put( fileName, Long.valueOf( System.currentTimeMillis() ) );
+		}
+		listeners.notify( name, version );
+	}
+
+	/**
+	 * Registers a listener notified about changed configurations.
+	 * 
+	 * @param listener
+	 *        the listener to register.
+	 */
+	public void subscribe( final InvalidationListener listener ) {
+		listeners.add( listener );
+	}
+
+	/**
+	 * Unregisters a listener.
+	 * 
+	 * @param listener
+	 *        the listener to unregister.
+	 */
+	public void unsubscribe( final InvalidationListener listener ) {
+		listeners.remove( listener );
+	}
+
+	/**
+	 * Stops polling the directory.
+	 */
+	public void close() {
+		timer.cancel();
+	}
+
+	/**
+	 * Delivers messages which were not delivered yet and deletes old message files. A message is marked as delivered only after it was
+	 * read and all listeners were notified successfully.
+	 */
+	synchronized void poll() {
+		String[] names = directory.list( MESSAGES );
+		if ( names == null ) {
+			fileInvalidationBusLogger.log( Level.WARNING, "Could not list directory {0}.", directory );
+			return;
+		}
+		Arrays.sort( names );
+		long now = System.currentTimeMillis();
+		Set< String > current = new HashSet< String >( Arrays.asList( names ) );
+		for ( String fileName : names ) {
+			File file = new File( directory, fileName );
+			Long seenAt = firstSeen.get( fileName );
+			if ( seenAt == null ) {
+				seenAt = Long.valueOf( now );
+				firstSeen.put( fileName, seenAt );
+			}
+			if ( !delivered.contains( fileName ) ) {
+				try {
+					if ( listeners.notify( new String( Utils.readFully( file ), "UTF-8" ), getVersion( fileName ) ) ) {
+						delivered.add( fileName );
+					} else {
+						fileInvalidationBusLogger.log( Level.WARNING, "Message {0} will be delivered again.", fileName );
+					}
+				} catch ( IOException e ) {
+					fileInvalidationBusLogger.log( Level.WARNING, "Could not read message file " + file + ".", e );
+				}
+			}
+			if ( now - seenAt.longValue() > retention && file.delete() ) {
+				current.remove( fileName );
+			}
+		}
+		delivered.retainAll( current );
+		firstSeen.keySet().retainAll( current );
+	}
+
+	/**
+	 * Returns the version stamp stored in the name of a message file.
+	 * 
+	 * @param fileName
+	 *        the name of the message file.
+	 * @return the version stamp or {@code -1} if the name is not valid.
+	 */
+	private static long getVersion( final String fileName ) {
+		int dash = fileName.indexOf( '-' );
+		try {
+			return ( dash > 0 ) ? Long.parseLong( fileName.substring( 0, dash ) ) : -1;
+		} catch ( NumberFormatException e ) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.jsp.PageContext;
+
+/**
+ * The {@code FragmentCache} class stores the complete output of CKEditor tags, so that a tag rendered again with the same inputs is
+ * written with a single string write. The inputs are described by a key built by the tag from the versions of its configuration and
+ * events objects, its attributes and the state of the page (see {@link CKEditorConfig#getVersion()}).
+ * <p>
+ * The cache is shared by the whole web application and bounded by the total length of cached output. Its size in bytes can be set with
+ * the {@code com.ckeditor.fragmentCacheSize} context parameter.
+ */
+final class FragmentCache {
+
+	/**
+	 * Name of the application attribute storing the {@code FragmentCache} object.
+	 */
+	static final String FRAGMENT_CACHE_ATTRIBUTE = "ckeditor_fragment_cache";
+	/**
+	 * Name of the context parameter setting the maximum size of the cache in bytes.
+	 */
+	static final String SIZE_PARAMETER = "com.ckeditor.fragmentCacheSize";
+	/**
+	 * Default maximum size of the cache in bytes.
+	 */
+	static final long DEFAULT_SIZE = 2L * 1024 * 1024;
+	/**
+	 * Cached fragments by key.
+	 */
+	private final LruCache< String, Fragment > fragments;
+
+	/**
+	 * Creates the {@code FragmentCache} object.
+	 * 
+	 * @param maxSize
+	 *        the maximum size of the cache in bytes.
+	 */
+	private FragmentCache( final long maxSize ) {
+		fragments = new LruCache< String, Fragment >( maxSize, new LruCache.Weigher< Fragment >() {
+			public long weigh( final Fragment fragment ) {
+				return 2L * fragment.output.length();
+			}
+		} );
+	}
+
+	/**
+	 * Returns the {@code FragmentCache} object of the web application, creating it if it does not exist.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @return the {@code FragmentCache} object.
+	 */
+	static FragmentCache getInstance( final ServletContext context ) {
+		synchronized ( FragmentCache.class ) {
+			FragmentCache cache = ( FragmentCache ) context.getAttribute( FRAGMENT_CACHE_ATTRIBUTE );
+			if ( cache == null ) {
+				String size = context.getInitParameter( SIZE_PARAMETER );
+				try {
+					cache = new FragmentCache( Utils.isStringEmpty( size ) ? DEFAULT_SIZE : Long.parseLong( size.trim() ) );
+				} catch ( NumberFormatException e ) {
+					throw new IllegalArgumentException( "Invalid " + SIZE_PARAMETER + " parameter: " + size, e );
+				}
+				context.setAttribute( FRAGMENT_CACHE_ATTRIBUTE, cache );
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Returns the cached fragment.
+	 * 
+	 * @param key
+	 *        the key describing the inputs of the tag.
+	 * @return the fragment or {@code null} if it is not cached.
+	 */
+	Fragment get( final String key ) {
+		return fragments.get( key );
+	}
+
+	/**
+	 * Stores the fragment.
+	 * 
+	 * @param key
+	 *        the key describing the inputs of the tag.
+	 * @param output
+	 *        the complete output of the tag.
+	 * @param pageAttributes
+	 *        the page attributes set by the tag while its output was created.
+	 */
+	void put( final String key, final String output, final Map< String, Object > pageAttributes ) {
+		fragments.put( key, new Fragment( output, pageAttributes ) );
+	}
+
+	/**
+	 * Returns the number of lookups which found a fragment.
+	 * 
+	 * @return the hit count.
+	 */
+	long getHitCount() {
+		return fragments.getHitCount();
+	}
+
+	/**
+	 * Returns the number of lookups which did not find a fragment.
+	 * 
+	 * @return the miss count.
+	 */
+	long getMissCount() {
+		return fragments.getMissCount();
+	}
+
+	/**
+	 * Output of a tag together with the page attributes which the tag sets to inform following tags, for example that
+	 * {@code ckeditor.js} was already inserted.
+	 */
+	static final class Fragment {
+
+		/**
+		 * The complete output of the tag.
+		 */
+		private final String output;
+		/**
+		 * The page attributes set by the tag.
+		 */
+		private final Map< String, Object > pageAttributes;
+
+		/**
+		 * Creates the {@code Fragment} object.
+		 * 
+		 * @param output
+		 *        the complete output of the tag.
+		 * @param pageAttributes
+		 *        the page attributes set by the tag.
+		 */
+		Fragment( final String output, final Map< String, Object > pageAttributes ) {
+			this.output = output;
+			this.pageAttributes = Collections.unmodifiableMap( pageAttributes );
+		}
+
+		/**
+		 * Returns the complete output of the tag.
+		 * 
+		 * @return the output.
+		 */
+		String getOutput() {
+			return output;
+		}
+
+		/**
+		 * Sets the page attributes which the tag set when the fragment was created.
+		 * 
+		 * @param pageContext
+		 *        the page context of the tag.
+		 */
+		void restorePageAttributes( final PageContext pageContext ) {
+			for ( Map.Entry< String, Object > attribute : pageAttributes.entrySet() ) {
+				pageContext.setAttribute( attribute.getKey(), attribute.getValue() );
+			}
+		}
+	}
+}
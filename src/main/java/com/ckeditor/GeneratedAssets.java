@@ -0,0 +1,521 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+
+/**
+ * The {@code GeneratedAssets} class keeps the resources generated by CKEditor tags, such as aggregated stylesheets, until they are requested
+ * from the {@code CKEditorAssetServlet}. Paths of generated resources contain the hash of their content, so they never change and are sent
+ * with a far-future {@code Cache-Control} header. Resources which compress well get a gzip variant as well.
+ * <p>
+ * Editor contents loaded out of band are kept separately in a cache bounded by size, because unlike other resources they are not shared
+ * by all pages. Each content belongs to the HTTP session which stored it and is served only to that session, so its URL is not the only
+ * credential needed to read a document.
+ * <p>
+ * The object is created by the {@code CKEditorAssetServlet}. Tags generate resources only if it exists, because otherwise nothing could
+ * serve them.
+ */
+final class GeneratedAssets {
+
+	/**
+	 * Name of the application attribute storing the {@code GeneratedAssets} object.
+	 */
+	static final String GENERATED_ASSETS_ATTRIBUTE = "ckeditor_generated_assets";
+	/**
+	 * Default maximum number of bytes of cached editor contents.
+	 */
+	static final long DEFAULT_CONTENT_CACHE_SIZE = 32L * 1024 * 1024;
+	/**
+	 * Default maximum number of bytes of cached scripts with externalized configuration values.
+	 */
+	static final long DEFAULT_DATA_CACHE_SIZE = 16L * 1024 * 1024;
+	/**
+	 * Maximum number of configuration values whose script hashes are remembered.
+	 */
+	private static final int MAX_VALUE_HASHES = 1024;
+	/**
+	 * Maximum number of bytes of resources generated from other files, like aggregated stylesheets.
+	 */
+	private static final long MAX_GENERATED_SIZE = 8L * 1024 * 1024;
+	/**
+	 * Maximum number of source lists whose generated resources are remembered.
+	 */
+	private static final int MAX_SOURCE_LISTS = 256;
+	/**
+	 * Minimum length of a resource for which a gzip variant is created.
+	 */
+	private static final int MIN_COMPRESSED_LENGTH = 256;
+	/**
+	 * Maximum ratio of the gzip variant length to the original length for the variant to be kept.
+	 */
+	private static final double MAX_COMPRESSION_RATIO = 0.9;
+	/**
+	 * Number of hash characters used in the paths of editor contents.
+	 */
+	private static final int CONTENT_HASH_LENGTH = 16;
+	/**
+	 * Prefix of the paths of editor contents.
+	 */
+	private static final String CONTENT_PATH_PREFIX = "/content-";
+	/**
+	 * Name of the session attribute storing the random token which identifies the owner of editor contents.
+	 */
+	private static final String CONTENT_OWNER_ATTRIBUTE = "ckeditor_content_owner";
+	/**
+	 * Number of random bytes of a content owner token.
+	 */
+	private static final int CONTENT_OWNER_LENGTH = 16;
+	/**
+	 * Source of content owner tokens.
+	 */
+	private static final SecureRandom random = new SecureRandom();
+	/**
+	 * Weigher of cached entries, counting both the resource and its gzip variant.
+	 */
+	private static final LruCache.Weigher< Entry > ENTRY_WEIGHER = new LruCache.Weigher< Entry >() {
+		public long weigh( final Entry entry ) {
+			return entry.asset.getLength() + ( entry.gzipVariant != null ? entry.gzipVariant.getLength() : 0 );
+		}
+	};
+	/**
+	 * Generated resources by path relative to the CKEditor directory.
+	 */
+	private final LruCache< String, Entry > assets = new LruCache< String, Entry >( MAX_GENERATED_SIZE, ENTRY_WEIGHER );
+	/**
+	 * Latest generated resources by the list of their sources.
+	 */
+	private final LruCache< String, Generation > generations;
+	/**
+	 * Editor contents by path relative to the CKEditor directory.
+	 */
+	private final LruCache< String, Entry > contents;
+	/**
+	 * Scripts with externalized configuration values by path relative to the CKEditor directory.
+	 */
+	private final LruCache< String, Entry > dataScripts;
+	/**
+	 * Script hashes of externalized configuration values by the identity of the value.
+	 */
+	private final LruCache< ValueKey, String > valueHashes;
+
+	/**
+	 * Creates the {@code GeneratedAssets} object.
+	 * 
+	 * @param contentCacheSize
+	 *        the maximum number of bytes of cached editor contents.
+	 * @param dataCacheSize
+	 *        the maximum number of bytes of cached scripts with externalized configuration values.
+	 */
+	private GeneratedAssets( final long contentCacheSize, final long dataCacheSize ) {
+		contents = new LruCache< String, Entry >( contentCacheSize, ENTRY_WEIGHER );
+		dataScripts = new LruCache< String, Entry >( dataCacheSize, ENTRY_WEIGHER );
+		generations = new LruCache< String, Generation >( MAX_SOURCE_LISTS, new LruCache.Weigher< Generation >() {
+			public long weigh( final Generation value ) {
+				return 1;
+			}
+		} );
+		valueHashes = new LruCache< ValueKey, String >( MAX_VALUE_HASHES, new LruCache.Weigher< String >() {
+			public long weigh( final String value ) {
+				return 1;
+			}
+		} );
+	}
+
+	/**
+	 * Creates the {@code GeneratedAssets} object and registers it in the web application, replacing the existing one.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param contentCacheSize
+	 *        the maximum number of bytes of cached editor contents.
+	 * @param dataCacheSize
+	 *        the maximum number of bytes of cached scripts with externalized configuration values.
+	 * @return the {@code GeneratedAssets} object.
+	 */
+	static GeneratedAssets create( final ServletContext context, final long contentCacheSize, final long dataCacheSize ) {
+		GeneratedAssets generatedAssets = new GeneratedAssets( contentCacheSize, dataCacheSize );
+		context.setAttribute( GENERATED_ASSETS_ATTRIBUTE, generatedAssets );
+		return generatedAssets;
+	}
+
+	/**
+	 * Returns the {@code GeneratedAssets} object of the web application.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @return the {@code GeneratedAssets} object or {@code null} if the {@code CKEditorAssetServlet} did not create it.
+	 */
+	static GeneratedAssets getInstance( final ServletContext context ) {
+		return ( GeneratedAssets ) context.getAttribute( GENERATED_ASSETS_ATTRIBUTE );
+	}
+
+	/**
+	 * Returns a generated resource.
+	 * 
+	 * @param path
+	 *        the path of the resource relative to the CKEditor directory.
+	 * @return the {@code Asset} object or {@code null} if there is no such resource.
+	 */
+	Asset get( final String path ) {
+		Entry entry = find( path );
+		return ( entry != null ) ? entry.asset : null;
+	}
+
+	/**
+	 * Returns the gzip variant of a generated resource.
+	 * 
+	 * @param path
+	 *        the path of the resource relative to the CKEditor directory.
+	 * @return the {@code Asset} object or {@code null} if there is no such resource or it has no gzip variant.
+	 */
+	Asset getGzipVariant( final String path ) {
+		Entry entry = find( path );
+		return ( entry != null ) ? entry.gzipVariant : null;
+	}
+
+	/**
+	 * Returns the path of a resource generated from the given versions of its sources.
+	 * 
+	 * @param sources
+	 *        the key describing the sources of the resource.
+	 * @param version
+	 *        the key describing the versions of the sources, for example their modification times.
+	 * @return the path or {@code null} if the resource was not generated from these versions yet or it was evicted.
+	 */
+	String getPath( final String sources, final String version ) {
+		Generation generation = generations.get( sources );
+		if ( generation == null || !generation.version.equals( version ) ) {
+			return null;
+		}
+		return ( assets.get( generation.path ) != null ) ? generation.path : null;
+	}
+
+	/**
+	 * Stores a generated resource, removing the resource previously generated from the same sources. Generated resources are kept in a
+	 * cache bounded by their total length, so the least recently used ones are dropped and have to be generated again.
+	 * 
+	 * @param sources
+	 *        the key describing the sources of the resource.
+	 * @param version
+	 *        the key describing the versions of the sources, for example their modification times.
+	 * @param path
+	 *        the path of the resource relative to the CKEditor directory.
+	 * @param name
+	 *        the name of the resource used to determine its content type.
+	 * @param data
+	 *        the content of the resource. The array must not be modified afterwards.
+	 */
+	synchronized void put( final String sources, final String version, final String path, final String name, final byte[] data ) {
+		Generation previous = generations.get( sources );
+		assets.put( path, new Entry( name, data ) );
+		generations.put( sources, new Generation( version, path ) );
+		if ( previous != null && !previous.path.equals( path ) ) {
+			assets.remove( previous.path );
+		}
+	}
+
+	/**
+	 * Stores a script with an externalized configuration value. Scripts are kept in a cache bounded by their total length, so the least
+	 * recently used ones are dropped and have to be stored again when an editor refers to them.
+	 * 
+	 * @param path
+	 *        the path of the script relative to the CKEditor directory, containing the hash of its content.
+	 * @param script
+	 *        the content of the script encoded with UTF-8. The array must not be modified afterwards.
+	 */
+	void putData( final String path, final byte[] script ) {
+		dataScripts.put( path, new Entry( path.substring( path.lastIndexOf( '/' ) + 1 ), script ) );
+	}
+
+	/**
+	 * Returns the script hash remembered for a configuration value. Values are compared by identity and held weakly, so the hash is
+	 * only found for the same, unmodified instance, for example a value of a shared configuration copied into each editor configuration.
+	 * 
+	 * @param value
+	 *        the configuration value.
+	 * @return the hash or {@code null} if it is not known.
+	 */
+	String getValueHash( final Object value ) {
+		return valueHashes.get( new ValueKey( value ) );
+	}
+
+	/**
+	 * Remembers the script hash of a configuration value. The value must not be modified afterwards, otherwise editors keep referring
+	 * to the script with its previous content.
+	 * 
+	 * @param value
+	 *        the configuration value.
+	 * @param hash
+	 *        the hash of the script storing the value.
+	 */
+	void putValueHash( final Object value, final String hash ) {
+		valueHashes.put( new ValueKey( value ), hash );
+	}
+
+	/**
+	 * Stores editor content which is loaded out of band. The content is stored under a path containing the hash of the content and of its
+	 * owner, so the same content of one session is stored only once.
+	 * 
+	 * @param data
+	 *        the editor content encoded with UTF-8. The array must not be modified afterwards.
+	 * @param owner
+	 *        the token of the session storing the content, returned by {@link #getContentOwner(HttpSession, boolean)}.
+	 * @return the path of the content relative to the CKEditor directory.
+	 */
+	String putContent( final byte[] data, final String owner ) {
+		String hash = Utils.sha1( ( owner + ":" + Utils.sha1( data ) ).getBytes( Charset.forName( "UTF-8" ) ) );
+		String path = CONTENT_PATH_PREFIX + hash.substring( 0, CONTENT_HASH_LENGTH ) + ".txt";
+		if ( contents.get( path ) == null ) {
+			contents.put( path, new Entry( "content.txt", data, owner ) );
+		}
+		return path;
+	}
+
+	/**
+	 * Returns editor content stored with {@link #putContent(byte[], String)}.
+	 * 
+	 * @param path
+	 *        the path of the content relative to the CKEditor directory.
+	 * @param owner
+	 *        the token of the session requesting the content. May be {@code null}.
+	 * @return the {@code Asset} object or {@code null} if there is no such content or it belongs to another session.
+	 */
+	Asset getContent( final String path, final String owner ) {
+		Entry entry = findContent( path, owner );
+		return ( entry != null ) ? entry.asset : null;
+	}
+
+	/**
+	 * Returns the gzip variant of editor content stored with {@link #putContent(byte[], String)}.
+	 * 
+	 * @param path
+	 *        the path of the content relative to the CKEditor directory.
+	 * @param owner
+	 *        the token of the session requesting the content. May be {@code null}.
+	 * @return the {@code Asset} object or {@code null} if there is no such content, it belongs to another session or it has no gzip
+	 *         variant.
+	 */
+	Asset getContentGzipVariant( final String path, final String owner ) {
+		Entry entry = findContent( path, owner );
+		return ( entry != null ) ? entry.gzipVariant : null;
+	}
+
+	/**
+	 * Checks if the path points at editor content.
+	 * 
+	 * @param path
+	 *        the path relative to the CKEditor directory. May be {@code null}.
+	 * @return {@code true} if the path has the form of the paths returned by {@link #putContent(byte[], String)}.
+	 */
+	static boolean isContentPath( final String path ) {
+		return path != null && path.startsWith( CONTENT_PATH_PREFIX );
+	}
+
+	/**
+	 * Returns the token identifying the owner of editor contents stored by a session.
+	 * 
+	 * @param session
+	 *        the HTTP session. May be {@code null}.
+	 * @param create
+	 *        {@code true} if the token should be created if the session does not have one yet.
+	 * @return the token or {@code null} if there is no session or it has no token and {@code create} is {@code false}.
+	 */
+	static String getContentOwner( final HttpSession session, final boolean create ) {
+		if ( session == null ) {
+			return null;
+		}
+		String owner = ( String ) session.getAttribute( CONTENT_OWNER_ATTRIBUTE );
+		if ( owner == null && create ) {
+			synchronized ( GeneratedAssets.class ) {
+				owner = ( String ) session.getAttribute( CONTENT_OWNER_ATTRIBUTE );
+				if ( owner == null ) {
+					byte[] token = new byte[ CONTENT_OWNER_LENGTH ];
+					random.nextBytes( token );
+					owner = Utils.toHex( token );
+					session.setAttribute( CONTENT_OWNER_ATTRIBUTE, owner );
+				}
+			}
+		}
+		return owner;
+	}
+
+	/**
+	 * Finds a generated resource.
+	 * 
+	 * @param path
+	 *        the path of the resource relative to the CKEditor directory.
+	 * @return the entry or {@code null} if there is no such resource.
+	 */
+	private Entry find( final String path ) {
+		if ( path == null ) {
+			return null;
+		}
+		Entry entry = assets.get( path );
+		return ( entry != null ) ? entry : dataScripts.get( path );
+	}
+
+	/**
+	 * Finds editor content belonging to the given owner.
+	 * 
+	 * @param path
+	 *        the path of the content relative to the CKEditor directory.
+	 * @param owner
+	 *        the token of the session requesting the content. May be {@code null}.
+	 * @return the entry or {@code null} if there is no such content or it belongs to another session.
+	 */
+	private Entry findContent( final String path, final String owner ) {
+		if ( path == null || owner == null ) {
+			return null;
+		}
+		Entry entry = contents.get( path );
+		return ( entry != null && owner.equals( entry.owner ) ) ? entry : null;
+	}
+
+	/**
+	 * Resource generated from a version of its sources.
+	 */
+	private static final class Generation {
+
+		/**
+		 * The key describing the versions of the sources.
+		 */
+		private final String version;
+		/**
+		 * The path of the resource relative to the CKEditor directory.
+		 */
+		private final String path;
+
+		/**
+		 * Creates the {@code Generation} object.
+		 * 
+		 * @param version
+		 *        the key describing the versions of the sources.
+		 * @param path
+		 *        the path of the resource relative to the CKEditor directory.
+		 */
+		Generation( final String version, final String path ) {
+			this.version = version;
+			this.path = path;
+		}
+	}
+
+	/**
+	 * Key comparing configuration values by identity without preventing their garbage collection. Keys of collected values are equal
+	 * to no other key and are dropped when the cache evicts them.
+	 */
+	private static final class ValueKey {
+
+		/**
+		 * The configuration value.
+		 */
+		private final WeakReference< Object > value;
+		/**
+		 * The identity hash code of the value.
+		 */
+		private final int hash;
+
+		/**
+		 * Creates the {@code ValueKey} object.
+		 * 
+		 * @param value
+		 *        the configuration value.
+		 */
+		ValueKey( final Object value ) {
+			this.value = new WeakReference< Object >( value );
+			this.hash = System.identityHashCode( value );
+		}
+
+		@Override
+		public boolean equals( final Object o ) {
+			if ( o == this ) {
+				return true;
+			}
+			if ( !( o instanceof ValueKey ) ) {
+				return false;
+			}
+			Object referent = value.get();
+			return referent != null && referent == ( ( ValueKey ) o ).value.get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Generated resource together with its gzip variant.
+	 */
+	private static final class Entry {
+
+		/**
+		 * The resource.
+		 */
+		private final Asset asset;
+		/**
+		 * The gzip variant of the resource or {@code null} if it would not be much smaller.
+		 */
+		private final Asset gzipVariant;
+		/**
+		 * The token of the session owning the resource or {@code null} if the resource is public.
+		 */
+		private final String owner;
+
+		/**
+		 * Creates the {@code Entry} object of a public resource, compressing the content if it is long enough.
+		 * 
+		 * @param name
+		 *        the name of the resource used to determine its content type.
+		 * @param data
+		 *        the content of the resource.
+		 */
+		Entry( final String name, final byte[] data ) {
+			this( name, data, null );
+		}
+
+		/**
+		 * Creates the {@code Entry} object, compressing the content if it is long enough.
+		 * 
+		 * @param name
+		 *        the name of the resource used to determine its content type.
+		 * @param data
+		 *        the content of the resource.
+		 * @param owner
+		 *        the token of the session owning the resource or {@code null} if the resource is public.
+		 */
+		Entry( final String name, final byte[] data, final String owner ) {
+			this.owner = owner;
+			asset = Asset.forBytes( name, data, System.currentTimeMillis() );
+			byte[] compressed = ( data.length >= MIN_COMPRESSED_LENGTH ) ? gzip( data ) : null;
+			gzipVariant = ( compressed != null && compressed.length <= data.length * MAX_COMPRESSION_RATIO ) ? Asset.forEncodedBytes(
+					asset, compressed, "gzip" ) : null;
+		}
+
+		/**
+		 * Compresses the data with gzip.
+		 * 
+		 * @param data
+		 *        the data to compress.
+		 * @return the compressed data.
+		 */
+		private static byte[] gzip( final byte[] data ) {
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream( data.length / 2 );
+				GZIPOutputStream gzip = new GZIPOutputStream( out );
+				gzip.write( data );
+				gzip.close();
+				return out.toByteArray();
+			} catch ( IOException e ) {
+				throw new IllegalStateException( "Could not compress data in memory.", e );
+			}
+		}
+	}
+}
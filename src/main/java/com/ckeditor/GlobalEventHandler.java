@@ -18,6 +18,11 @@ import java.util.Set;
  */
 public class GlobalEventHandler extends EventHandler {
 
+	/**
+	 * Serial identifier.
+	 */
+	private static final long serialVersionUID = -3419628471023486611L;
+
 	private static Map< String, Set< String >> globalEvents;
 
 	/**
@@ -0,0 +1,50 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@code InMemoryConfigRepository} class keeps configurations in memory. It is useful in tests and for applications which build
+ * configurations at startup.
+ */
+public class InMemoryConfigRepository implements CKEditorConfigRepository {
+
+	/**
+	 * Configurations by name.
+	 */
+	private final ConcurrentMap< String, CKEditorConfig > configs = new ConcurrentHashMap< String, CKEditorConfig >();
+
+	/**
+	 * Stores a configuration. The configuration is frozen, so it cannot be changed afterwards.
+	 * 
+	 * @param name
+	 *        the name of the configuration.
+	 * @param config
+	 *        the configuration.
+	 */
+	public void put( final String name, final CKEditorConfig config ) {
+		configs.put( name, config.freeze() );
+	}
+
+	/**
+	 * Removes a configuration.
+	 * 
+	 * @param name
+	 *        the name of the configuration.
+	 */
+	public void remove( final String name ) {
+		configs.remove( name );
+	}
+
+	/**
+	 * Returns a stored configuration.
+	 * 
+	 * @param name
+	 *        the name of the configuration.
+	 * @return the frozen configuration or {@code null} if there is no configuration with this name.
+	 */
+	public CKEditorConfig load( final String name ) {
+		return configs.get( name );
+	}
+}
@@ -0,0 +1,52 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.IOException;
+
+/**
+ * The {@code InvalidationBus} interface is used to tell all nodes of a cluster that a cached configuration has changed, so caches such as
+ * {@link CachingConfigRepository} drop their copies. Each message carries the name of the changed configuration and a version stamp.
+ * Messages are delivered to the listeners of the publishing node as well.<br>
+ * <strong>Usage:</strong>
+ * 
+ * <pre>
+ * InvalidationBus bus = new FileInvalidationBus( sharedDirectory, 2, TimeUnit.SECONDS );
+ * bus.subscribe( cachingRepository );
+ * ...
+ * saveTenantConfig( tenantId, config );
+ * bus.publish( tenantId );
+ * </pre>
+ */
+public interface InvalidationBus {
+
+	/**
+	 * Name meaning that all configurations have changed.
+	 */
+	String ALL = "*";
+
+	/**
+	 * Broadcasts that a configuration has changed.
+	 * 
+	 * @param name
+	 *        the name of the changed configuration or {@link #ALL}.
+	 * @throws IOException
+	 *         if the message cannot be sent.
+	 */
+	void publish( String name ) throws IOException;
+
+	/**
+	 * Registers a listener notified about changed configurations.
+	 * 
+	 * @param listener
+	 *        the listener to register.
+	 */
+	void subscribe( InvalidationListener listener );
+
+	/**
+	 * Unregisters a listener.
+	 * 
+	 * @param listener
+	 *        the listener to unregister.
+	 */
+	void unsubscribe( InvalidationListener listener );
+}
@@ -0,0 +1,20 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+/**
+ * The {@code InvalidationListener} interface is implemented by caches which drop configurations changed on any node of a cluster.
+ * 
+ * @see InvalidationBus
+ */
+public interface InvalidationListener {
+
+	/**
+	 * Called when a configuration has changed. The method may be called from a thread of the bus, so it should return quickly.
+	 * 
+	 * @param name
+	 *        the name of the changed configuration or {@link InvalidationBus#ALL}.
+	 * @param version
+	 *        the version stamp of the change. Stamps of one bus grow with time.
+	 */
+	void invalidated( String name, long version );
+}
@@ -0,0 +1,68 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code InvalidationListeners} class keeps the listeners of an {@code InvalidationBus} and notifies them. An exception thrown by one
+ * listener does not prevent notifying the others.
+ */
+final class InvalidationListeners {
+
+	/**
+	 * Private logger.
+	 */
+	private static final Logger invalidationListenersLogger = Logger.getLogger( InvalidationListeners.class.getName() );
+	/**
+	 * Registered listeners.
+	 */
+	private final List< InvalidationListener > listeners = new CopyOnWriteArrayList< InvalidationListener >();
+
+	/**
+	 * Registers a listener.
+	 * 
+	 * @param listener
+	 *        the listener to register.
+	 */
+	void add( final InvalidationListener listener ) {
+		if ( listener == null ) {
+			throw new IllegalArgumentException( "The listener cannot be null." );
+		}
+		listeners.add( listener );
+	}
+
+	/**
+	 * Unregisters a listener.
+	 * 
+	 * @param listener
+	 *        the listener to unregister.
+	 */
+	void remove( final InvalidationListener listener ) {
+		listeners.remove( listener );
+	}
+
+	/**
+	 * Notifies all listeners.
+	 * 
+	 * @param name
+	 *        the name of the changed configuration.
+	 * @param version
+	 *        the version stamp of the change.
+	 * @return {@code true} if all listeners were notified successfully, {@code false} if any of them failed.
+	 */
+	boolean notify( final String name, final long version ) {
+		boolean delivered = true;
+		for ( InvalidationListener listener : listeners ) {
+			try {
+				listener.invalidated( name, version );
+			} catch ( RuntimeException e ) {
+				invalidationListenersLogger.log( Level.WARNING, "Invalidation listener failed.", e );
+				delivered = false;
+			}
+		}
+		return delivered;
+	}
+}
@@ -0,0 +1,267 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code JsonParser} class is a minimal JSON parser used to read configuration profiles. Objects are returned as
+ * {@code LinkedHashMap}, arrays as {@code ArrayList}, numbers as {@code Integer}, {@code Long} or {@code Double} and literals as
+ * {@code Boolean} or {@code null}, which are the types understood by {@link Utils#jsEncode(Object)}.
+ */
+final class JsonParser {
+
+	/**
+	 * The parsed text.
+	 */
+	private final String text;
+	/**
+	 * Position of the next character.
+	 */
+	private int pos;
+
+	/**
+	 * Creates the {@code JsonParser} object.
+	 * 
+	 * @param text
+	 *        the text to parse.
+	 */
+	private JsonParser( final String text ) {
+		this.text = text;
+	}
+
+	/**
+	 * Parses a JSON object.
+	 * 
+	 * @param text
+	 *        the JSON text.
+	 * @return the parsed object.
+	 * @throws IllegalArgumentException
+	 *         if the text is not a valid JSON object.
+	 */
+	static Map< String, Object > parseObject( final String text ) {
+		JsonParser parser = new JsonParser( text );
+		parser.skipWhitespace();
+		Map< String, Object > result = parser.readObject();
+		parser.skipWhitespace();
+		if ( parser.pos < text.length() ) {
+			throw parser.error( "Unexpected text after the object" );
+		}
+		return result;
+	}
+
+	/**
+	 * Reads any JSON value.
+	 * 
+	 * @return the value.
+	 */
+	private Object readValue() {
+		skipWhitespace();
+		char c = peek();
+		if ( c == '{' ) {
+			return readObject();
+		} else if ( c == '[' ) {
+			return readArray();
+		} else if ( c == '"' ) {
+			return readString();
+		} else if ( c == '-' || ( c >= '0' && c <= '9' ) ) {
+			return readNumber();
+		} else if ( text.startsWith( "true", pos ) ) {
+			pos += 4;
+			return Boolean.TRUE;
+		} else if ( text.startsWith( "false", pos ) ) {
+			pos += 5;
+			return Boolean.FALSE;
+		} else if ( text.startsWith( "null", pos ) ) {
+			pos += 4;
+			return null;
+		}
+		throw error( "Unexpected character" );
+	}
+
+	/**
+	 * Reads a JSON object.
+	 * 
+	 * @return the object.
+	 */
+	private Map< String, Object > readObject() {
+		expect( '{' );
+		Map< String, Object > map = new LinkedHashMap< String, Object >();
+		skipWhitespace();
+		if ( peek() == '}' ) {
+			pos++;
+			return map;
+		}
+		while ( true ) {
+			skipWhitespace();
+			String key = readString();
+			skipWhitespace();
+			expect( ':' );
+			map.put( key, readValue() );
+			skipWhitespace();
+			if ( peek() == '}' ) {
+				pos++;
+				return map;
+			}
+			expect( ',' );
+		}
+	}
+
+	/**
+	 * Reads a JSON array.
+	 * 
+	 * @return the array.
+	 */
+	private List< Object > readArray() {
+		expect( '[' );
+		List< Object > list = new ArrayList< Object >();
+		skipWhitespace();
+		if ( peek() == ']' ) {
+			pos++;
+			return list;
+		}
+		while ( true ) {
+			list.add( readValue() );
+			skipWhitespace();
+			if ( peek() == ']' ) {
+				pos++;
+				return list;
+			}
+			expect( ',' );
+		}
+	}
+
+	/**
+	 * Reads a JSON string.
+	 * 
+	 * @return the string.
+	 */
+	private String readString() {
+		expect( '"' );
+		StringBuilder sb = new StringBuilder();
+		while ( true ) {
+			char c = next();
+			if ( c == '"' ) {
+				return sb.toString();
+			} else if ( c != '\\' ) {
+				sb.append( c );
+				continue;
+			}
+			char escaped = next();
+			switch ( escaped ) {
+				case 'b':
+					sb.append( '\b' );
+					break;
+				case 'f':
+					sb.append( '\f' );
+					break;
+				case 'n':
+					sb.append( '\n' );
+					break;
+				case 'r':
+					sb.append( '\r' );
+					break;
+				case 't':
+					sb.append( '\t' );
+					break;
+				case 'u':
+					if ( pos + 4 > text.length() ) {
+						throw error( "Invalid unicode escape" );
+					}
+					try {
+						sb.append( ( char ) Integer.parseInt( text.substring( pos, pos + 4 ), 16 ) );
+					} catch ( NumberFormatException e ) {
+						throw error( "Invalid unicode escape" );
+					}
+					pos += 4;
+					break;
+				default:
+					sb.append( escaped );
+			}
+		}
+	}
+
+	/**
+	 * Reads a JSON number.
+	 * 
+	 * @return the number as {@code Integer} or {@code Long} if it is integral, {@code Double} otherwise.
+	 */
+	private Number readNumber() {
+		int start = pos;
+		while ( pos < text.length() && "+-0123456789.eE".indexOf( text.charAt( pos ) ) != -1 ) {
+			pos++;
+		}
+		String number = text.substring( start, pos );
+		try {
+			if ( number.indexOf( '.' ) == -1 && number.indexOf( 'e' ) == -1 && number.indexOf( 'E' ) == -1 ) {
+				long value = Long.parseLong( number );
+				if ( value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ) {
+					return Integer.valueOf( ( int ) value );
+				}
+				return Long.valueOf( value );
+			}
+			return Double.valueOf( number );
+		} catch ( NumberFormatException e ) {
+			pos = start;
+			throw error( "Invalid number" );
+		}
+	}
+
+	/**
+	 * Skips whitespace characters.
+	 */
+	private void skipWhitespace() {
+		while ( pos < text.length() && Character.isWhitespace( text.charAt( pos ) ) ) {
+			pos++;
+		}
+	}
+
+	/**
+	 * Returns the next character without consuming it.
+	 * 
+	 * @return the next character.
+	 */
+	private char peek() {
+		if ( pos >= text.length() ) {
+			throw error( "Unexpected end of text" );
+		}
+		return text.charAt( pos );
+	}
+
+	/**
+	 * Consumes the next character.
+	 * 
+	 * @return the consumed character.
+	 */
+	private char next() {
+		char c = peek();
+		pos++;
+		return c;
+	}
+
+	/**
+	 * Consumes the expected character.
+	 * 
+	 * @param expected
+	 *        the expected character.
+	 */
+	private void expect( final char expected ) {
+		if ( peek() != expected ) {
+			throw error( "Expected '" + expected + "'" );
+		}
+		pos++;
+	}
+
+	/**
+	 * Creates the exception describing a syntax error at the current position.
+	 * 
+	 * @param message
+	 *        the description of the error.
+	 * @return the exception.
+	 */
+	private IllegalArgumentException error( final String message ) {
+		return new IllegalArgumentException( message + " at position " + pos + "." );
+	}
+}
@@ -0,0 +1,94 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+/**
+ * The {@code LazyConfigValue} class stores a {@link ConfigValueProvider} in the editor configuration. The provider is called when the
+ * value is needed for the first time and its result is cached for the given time. The cached value is shared by all threads and by all
+ * copies of the configuration.
+ */
+final class LazyConfigValue {
+
+	/**
+	 * Provider computing the value.
+	 */
+	private final ConfigValueProvider provider;
+	/**
+	 * Time in nanoseconds for which the computed value is cached. If it is not positive, the value never expires.
+	 */
+	private final long timeToLive;
+	/**
+	 * The cached value.
+	 */
+	private volatile Object value;
+	/**
+	 * Time in nanoseconds ({@code System.nanoTime}) at which the value was computed.
+	 */
+	private volatile long computedAt;
+	/**
+	 * Flag indicating whether the value was computed.
+	 */
+	private volatile boolean computed;
+
+	/**
+	 * Creates the {@code LazyConfigValue} object.
+	 * 
+	 * @param provider
+	 *        the provider computing the value.
+	 * @param timeToLive
+	 *        the time in nanoseconds for which the value is cached. If it is not positive, the value never expires.
+	 */
+	LazyConfigValue( final ConfigValueProvider provider, final long timeToLive ) {
+		if ( provider == null ) {
+			throw new IllegalArgumentException( "The provider cannot be null." );
+		}
+		this.provider = provider;
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Returns the value, computing it if it was not computed yet or if it has expired. Only one thread computes the value at a time,
+	 * other threads wait for its result.
+	 * 
+	 * @return the value returned by the provider.
+	 */
+	Object get() {
+		if ( isValid() ) {
+			return value;
+		}
+		synchronized ( this ) {
+			if ( !isValid() ) {
+				value = provider.getValue();
+				computedAt = System.nanoTime();
+				computed = true;
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Returns the provider computing the value.
+	 * 
+	 * @return the provider.
+	 */
+	ConfigValueProvider getProvider() {
+		return provider;
+	}
+
+	/**
+	 * Returns the time for which the computed value is cached.
+	 * 
+	 * @return the time in nanoseconds. If it is not positive, the value never expires.
+	 */
+	long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * Checks if the cached value can be used.
+	 * 
+	 * @return {@code true} if the value was computed and has not expired, {@code false} otherwise.
+	 */
+	private boolean isValid() {
+		return computed && ( timeToLive <= 0 || System.nanoTime() - computedAt < timeToLive );
+	}
+}
@@ -0,0 +1,50 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code LoopbackInvalidationBus} class delivers messages only to the listeners of the current node, synchronously in the publishing
+ * thread. It is useful for a single node and in tests.
+ */
+public class LoopbackInvalidationBus implements InvalidationBus {
+
+	/**
+	 * Registered listeners.
+	 */
+	private final InvalidationListeners listeners = new InvalidationListeners();
+	/**
+	 * Source of version stamps.
+	 */
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * Notifies the listeners that a configuration has changed.
+	 * 
+	 * @param name
+	 *        the name of the changed configuration or {@link #ALL}.
+	 */
+	public void publish( final String name ) {
+		listeners.notify( name, version.incrementAndGet() );
+	}
+
+	/**
+	 * Registers a listener notified about changed configurations.
+	 * 
+	 * @param listener
+	 *        the listener to register.
+	 */
+	public void subscribe( final InvalidationListener listener ) {
+		listeners.add( listener );
+	}
+
+	/**
+	 * Unregisters a listener.
+	 * 
+	 * @param listener
+	 *        the listener to unregister.
+	 */
+	public void unsubscribe( final InvalidationListener listener ) {
+		listeners.remove( listener );
+	}
+}
@@ -0,0 +1,190 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@code LruCache} class is a thread-safe cache bounded by the total weight of its values. When the limit is exceeded, the least
+ * recently used entries are evicted. A value heavier than the whole limit is never stored.
+ * 
+ * @param <K>
+ *        the type of keys.
+ * @param <V>
+ *        the type of values.
+ */
+final class LruCache< K, V > {
+
+	/**
+	 * Weigher returning the weight of a cached value, for example its size in bytes.
+	 * 
+	 * @param <V>
+	 *        the type of values.
+	 */
+	interface Weigher< V > {
+
+		/**
+		 * Returns the weight of the value.
+		 * 
+		 * @param value
+		 *        the cached value.
+		 * @return the weight, not less than {@code 0}.
+		 */
+		long weigh( V value );
+	}
+
+	/**
+	 * Cached entries in access order.
+	 */
+	private final LinkedHashMap< K, V > entries = new LinkedHashMap< K, V >( 16, 0.75f, true );
+	/**
+	 * Maximum total weight of cached values.
+	 */
+	private final long maxWeight;
+	/**
+	 * Weigher of cached values.
+	 */
+	private final Weigher< ? super V > weigher;
+	/**
+	 * Current total weight of cached values.
+	 */
+	private long weight;
+	/**
+	 * Number of lookups which found a value.
+	 */
+	private long hitCount;
+	/**
+	 * Number of lookups which did not find a value.
+	 */
+	private long missCount;
+	/**
+	 * Number of evicted entries.
+	 */
+	private long evictionCount;
+
+	/**
+	 * Creates the {@code LruCache} object.
+	 * 
+	 * @param maxWeight
+	 *        the maximum total weight of cached values.
+	 * @param weigher
+	 *        the weigher of cached values.
+	 */
+	LruCache( final long maxWeight, final Weigher< ? super V > weigher ) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Returns the cached value and marks it as recently used.
+	 * 
+	 * @param key
+	 *        the key of the value.
+	 * @return the value or {@code null} if it is not cached.
+	 */
+	synchronized V get( final K key ) {
+		V value = entries.get( key );
+		if ( value != null ) {
+			hitCount++;
+		} else {
+			missCount++;
+		}
+		return value;
+	}
+
+	/**
+	 * Stores the value in the cache, evicting the least recently used entries if needed.
+	 * 
+	 * @param key
+	 *        the key of the value.
+	 * @param value
+	 *        the value to store.
+	 * @return {@code true} if the value was stored, {@code false} if it is heavier than the cache limit.
+	 */
+	synchronized boolean put( final K key, final V value ) {
+		long valueWeight = weigher.weigh( value );
+		remove( key );
+		if ( valueWeight > maxWeight ) {
+			return false;
+		}
+		entries.put( key, value );
+		weight += valueWeight;
+		Iterator< Map.Entry< K, V >> it = entries.entrySet().iterator();
+		while ( weight > maxWeight && it.hasNext() ) {
+			Map.Entry< K, V > eldest = it.next();
+			weight -= weigher.weigh( eldest.getValue() );
+			it.remove();
+			evictionCount++;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the value from the cache.
+	 * 
+	 * @param key
+	 *        the key of the value.
+	 * @return the removed value or {@code null} if it was not cached.
+	 */
+	synchronized V remove( final K key ) {
+		V value = entries.remove( key );
+		if ( value != null ) {
+			weight -= weigher.weigh( value );
+		}
+		return value;
+	}
+
+	/**
+	 * Removes all values from the cache.
+	 */
+	synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	/**
+	 * Returns the number of cached values.
+	 * 
+	 * @return the number of entries.
+	 */
+	synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the total weight of cached values.
+	 * 
+	 * @return the current weight.
+	 */
+	synchronized long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Returns the number of lookups which found a value.
+	 * 
+	 * @return the hit count.
+	 */
+	synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of lookups which did not find a value.
+	 * 
+	 * @return the miss count.
+	 */
+	synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of entries evicted because of the weight limit.
+	 * 
+	 * @return the eviction count.
+	 */
+	synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+}
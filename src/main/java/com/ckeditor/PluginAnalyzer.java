@@ -0,0 +1,437 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The {@code PluginAnalyzer} class computes which plugins of a CKEditor build are not needed by the toolbar of an editor configuration. A
+ * plugin is considered unused if it provides toolbar items, none of its items is present in the toolbar and no other loaded plugin requires
+ * it. Such plugins are added to {@code removePlugins}, so the editor does not load and initialize them.
+ * <p>
+ * Plugin dependencies and the plugins included in the build are read from the CKEditor distribution. Toolbar items are mapped to plugins
+ * with a table of the standard CKEditor items, extended with the items registered by {@code addButton} calls found in the distribution.
+ * <p>
+ * Please note that removing a plugin also removes the content it allows, so for example removing {@code basicstyles} makes the Advanced
+ * Content Filter strip {@code <strong>} elements.
+ */
+final class PluginAnalyzer {
+
+	/**
+	 * Private logger.
+	 */
+	private static final Logger pluginAnalyzerLogger = Logger.getLogger( PluginAnalyzer.class.getName() );
+	/**
+	 * Toolbar items of the standard CKEditor plugins.
+	 */
+	private static final String[][] STANDARD_ITEMS = { { "about", "About" },
+			{ "basicstyles", "Bold", "Italic", "Underline", "Strike", "Subscript", "Superscript" }, { "bidi", "BidiLtr", "BidiRtl" },
+			{ "blockquote", "Blockquote" }, { "codesnippet", "CodeSnippet" }, { "colorbutton", "TextColor", "BGColor" },
+			{ "copyformatting", "CopyFormatting" }, { "div", "CreateDiv" }, { "find", "Find", "Replace" }, { "flash", "Flash" },
+			{ "font", "Font", "FontSize" },
+			{ "forms", "Form", "Checkbox", "Radio", "TextField", "Textarea", "Select", "Button", "ImageButton", "HiddenField" },
+			{ "format", "Format" }, { "horizontalrule", "HorizontalRule" }, { "iframe", "Iframe" }, { "image", "Image" },
+			{ "image2", "Image" }, { "indent", "Indent", "Outdent" }, { "indentblock", "Indent", "Outdent" },
+			{ "indentlist", "Indent", "Outdent" }, { "justify", "JustifyLeft", "JustifyCenter", "JustifyRight", "JustifyBlock" },
+			{ "language", "Language" }, { "link", "Link", "Unlink", "Anchor" }, { "list", "NumberedList", "BulletedList" },
+			{ "mathjax", "Mathjax" }, { "maximize", "Maximize" }, { "newpage", "NewPage" }, { "pagebreak", "PageBreak" },
+			{ "pastefromword", "PasteFromWord" }, { "pastetext", "PasteText" }, { "preview", "Preview" }, { "print", "Print" },
+			{ "removeformat", "RemoveFormat" }, { "save", "Save" }, { "scayt", "Scayt" }, { "selectall", "SelectAll" },
+			{ "showblocks", "ShowBlocks" }, { "smiley", "Smiley" }, { "sourcearea", "Source" }, { "sourcedialog", "Source" },
+			{ "specialchar", "SpecialChar" }, { "stylescombo", "Styles" }, { "table", "Table" }, { "templates", "Templates" },
+			{ "wsc", "SpellChecker" } };
+	/**
+	 * Plugins which provide toolbar items but also editing behavior unrelated to the toolbar, such as keystrokes. They are never removed.
+	 */
+	private static final Set< String > ALWAYS_KEPT = new HashSet< String >( Arrays.asList( "clipboard", "undo", "toolbar" ) );
+	/**
+	 * Pattern matching the list of plugins included in a CKEditor build.
+	 */
+	private static final Pattern BUILD_PLUGINS = Pattern.compile( "config\\.plugins\\s*=\\s*['\"]([^'\"]*)['\"]" );
+	/**
+	 * Pattern matching the start of a plugin definition.
+	 */
+	private static final Pattern PLUGIN_DEFINITION = Pattern.compile( "plugins\\.add\\(\\s*['\"]([\\w-]+)['\"]" );
+	/**
+	 * Pattern matching the {@code requires} property of a plugin definition, given either as a string or as an array.
+	 */
+	private static final Pattern REQUIRES = Pattern.compile( "requires\\s*:\\s*(?:['\"]([^'\"]*)['\"]|\\[([^\\]]*)\\])" );
+	/**
+	 * Pattern matching toolbar items registered by a plugin.
+	 */
+	private static final Pattern ADD_BUTTON = Pattern.compile( "ui\\.add(?:Button|RichCombo|MenuButton)\\(\\s*['\"](\\w+)['\"]" );
+	/**
+	 * Maximum number of analysis results kept per distribution.
+	 */
+	private static final int RESULT_CACHE_SIZE = 256;
+	/**
+	 * Analyzers by the absolute path of the CKEditor directory.
+	 */
+	private static final ConcurrentMap< String, PluginAnalyzer > analyzers = new ConcurrentHashMap< String, PluginAnalyzer >();
+	/**
+	 * Plugins included in the build.
+	 */
+	private final Set< String > buildPlugins;
+	/**
+	 * Direct dependencies of plugins.
+	 */
+	private final Map< String, Set< String >> requires;
+	/**
+	 * Plugins providing toolbar items by item name.
+	 */
+	private final Map< String, Set< String >> itemPlugins;
+	/**
+	 * Plugins providing any toolbar item.
+	 */
+	private final Set< String > toolbarPlugins;
+	/**
+	 * The {@code removePlugins} values computed so far by configuration fingerprint.
+	 */
+	private final LruCache< String, String > results = new LruCache< String, String >( RESULT_CACHE_SIZE,
+			new LruCache.Weigher< String >() {
+				public long weigh( final String value ) {
+					return 1;
+				}
+			} );
+
+	/**
+	 * Creates the {@code PluginAnalyzer} object.
+	 * 
+	 * @param buildPlugins
+	 *        the plugins included in the build.
+	 * @param requires
+	 *        the direct dependencies of plugins.
+	 * @param itemPlugins
+	 *        the plugins providing toolbar items by item name.
+	 */
+	PluginAnalyzer( final Set< String > buildPlugins, final Map< String, Set< String >> requires,
+			final Map< String, Set< String >> itemPlugins ) {
+		this.buildPlugins = buildPlugins;
+		this.requires = requires;
+		this.itemPlugins = itemPlugins;
+		toolbarPlugins = new HashSet< String >();
+		for ( Set< String > plugins : itemPlugins.values() ) {
+			toolbarPlugins.addAll( plugins );
+		}
+		toolbarPlugins.removeAll( ALWAYS_KEPT );
+	}
+
+	/**
+	 * Returns a copy of the editor configuration with plugins unused by its toolbar added to {@code removePlugins}. The configurations
+	 * passed as parameters are not modified.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param config
+	 *        the editor configuration. May be {@code null}.
+	 * @param globalConfig
+	 *        the global configuration merged with the editor configuration. May be {@code null}.
+	 * @return the configuration with {@code removePlugins} extended, or {@code config} if the toolbar is not defined as a list or the
+	 *         CKEditor directory cannot be found.
+	 */
+	static CKEditorConfig removeUnusedPlugins( final ServletContext context, final String basePath, final CKEditorConfig config,
+			final CKEditorConfig globalConfig ) {
+		CKEditorConfig effective = new CKEditorConfig().mergeConfigValues( globalConfig ).mergeConfigValues( config );
+		if ( effective.getConfigValue( "toolbar" ) instanceof ToolbarPresetReference ) {
+			ToolbarPresetReference reference = ( ToolbarPresetReference ) effective.getConfigValue( "toolbar" );
+			Object preset = ToolbarPresets.getInstance( context ).getValue( reference.getName(), reference.getOption() );
+			if ( preset instanceof List ) {
+				effective.addConfigValue( "toolbar", ( List< ? > ) preset );
+			}
+		}
+		if ( !( effective.getConfigValue( "toolbar" ) instanceof List ) ) {
+			return config;
+		}
+		File directory = DistributionDigest.getDirectory( context, basePath );
+		PluginAnalyzer analyzer = ( directory != null ) ? getInstance( directory ) : null;
+		if ( analyzer == null ) {
+			return config;
+		}
+		String removePlugins = analyzer.getRemovePlugins( effective );
+		CKEditorConfig result = new CKEditorConfig().mergeConfigValues( config );
+		if ( !Utils.isStringEmpty( removePlugins ) ) {
+			result.addConfigValue( "removePlugins", removePlugins );
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the analyzer of a CKEditor directory. The distribution is read once and then kept in memory.
+	 * 
+	 * @param directory
+	 *        the CKEditor installation directory.
+	 * @return the {@code PluginAnalyzer} object or {@code null} if the distribution cannot be read.
+	 */
+	static PluginAnalyzer getInstance( final File directory ) {
+		String key = directory.getAbsolutePath();
+		PluginAnalyzer analyzer = analyzers.get( key );
+		if ( analyzer == null ) {
+			try {
+				analyzer = read( directory );
+				PluginAnalyzer previous = analyzers.putIfAbsent( key, analyzer );
+				analyzer = ( previous != null ) ? previous : analyzer;
+			} catch ( IOException e ) {
+				pluginAnalyzerLogger.log( Level.WARNING, "Could not read CKEditor plugins from " + directory, e );
+			}
+		}
+		return analyzer;
+	}
+
+	/**
+	 * Returns the value of {@code removePlugins} for an editor configuration: the plugins it already removes together with the plugins
+	 * unused by its toolbar. Results are cached by the toolbar and plugin options of the configuration.
+	 * 
+	 * @param config
+	 *        the effective editor configuration.
+	 * @return a comma-separated list of plugins.
+	 */
+	String getRemovePlugins( final CKEditorConfig config ) {
+		Object toolbar = config.getConfigValue( "toolbar" );
+		String fingerprint = String.valueOf( toolbar ) + "\n" + config.getConfigValue( "extraPlugins" ) + "\n"
+				+ config.getConfigValue( "removePlugins" ) + "\n" + config.getConfigValue( "plugins" );
+		String result = results.get( fingerprint );
+		if ( result == null ) {
+			result = computeRemovePlugins( config, toolbar );
+			results.put( fingerprint, result );
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the value of {@code removePlugins} for an editor configuration.
+	 * 
+	 * @param config
+	 *        the effective editor configuration.
+	 * @param toolbar
+	 *        the toolbar definition.
+	 * @return a comma-separated list of plugins.
+	 */
+	private String computeRemovePlugins( final CKEditorConfig config, final Object toolbar ) {
+		Set< String > removed = CKEditorBundles.getNames( config, "removePlugins" );
+		Set< String > loaded = new TreeSet< String >( config.getConfigValue( "plugins" ) != null ? CKEditorBundles.getNames( config,
+				"plugins" ) : buildPlugins );
+		loaded.addAll( CKEditorBundles.getNames( config, "extraPlugins" ) );
+		loaded.removeAll( removed );
+
+		Set< String > used = new HashSet< String >();
+		Set< String > items = new HashSet< String >();
+		collectItems( toolbar, items );
+		for ( String item : items ) {
+			Set< String > plugins = itemPlugins.get( item );
+			if ( plugins != null ) {
+				used.addAll( plugins );
+			}
+		}
+
+		Set< String > unused = new TreeSet< String >();
+		for ( String plugin : loaded ) {
+			if ( toolbarPlugins.contains( plugin ) && !used.contains( plugin ) ) {
+				unused.add( plugin );
+			}
+		}
+		boolean changed = true;
+		while ( changed ) {
+			changed = false;
+			Set< String > needed = new HashSet< String >();
+			for ( String plugin : loaded ) {
+				if ( !unused.contains( plugin ) ) {
+					addDependencies( plugin, needed );
+				}
+			}
+			changed = unused.removeAll( needed );
+		}
+
+		Set< String > result = new LinkedHashSet< String >( removed );
+		result.addAll( unused );
+		return join( result );
+	}
+
+	/**
+	 * Adds the dependencies of a plugin, direct and indirect, to a set.
+	 * 
+	 * @param plugin
+	 *        the plugin name.
+	 * @param needed
+	 *        the set to which dependencies are added.
+	 */
+	private void addDependencies( final String plugin, final Set< String > needed ) {
+		Set< String > direct = requires.get( plugin );
+		if ( direct != null ) {
+			for ( String dependency : direct ) {
+				if ( needed.add( dependency ) ) {
+					addDependencies( dependency, needed );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects item names from a toolbar definition. Toolbar groups can be given as lists of items or as maps with the {@code items} list.
+	 * 
+	 * @param toolbar
+	 *        the toolbar definition or its part.
+	 * @param items
+	 *        the set to which item names are added.
+	 */
+	private static void collectItems( final Object toolbar, final Set< String > items ) {
+		if ( toolbar instanceof Collection ) {
+			for ( Object element : ( Collection< ? > ) toolbar ) {
+				collectItems( element, items );
+			}
+		} else if ( toolbar instanceof Map ) {
+			collectItems( ( ( Map< ?, ? > ) toolbar ).get( "items" ), items );
+		} else if ( toolbar != null ) {
+			items.add( toolbar.toString().trim() );
+		}
+	}
+
+	/**
+	 * Reads the plugins of the build, plugin dependencies and toolbar items from a CKEditor directory.
+	 * 
+	 * @param directory
+	 *        the CKEditor installation directory.
+	 * @return the {@code PluginAnalyzer} object.
+	 * @throws IOException
+	 *         if {@code ckeditor.js} cannot be read.
+	 */
+	static PluginAnalyzer read( final File directory ) throws IOException {
+		Map< String, Set< String >> requires = new HashMap< String, Set< String >>();
+		Map< String, Set< String >> itemPlugins = new HashMap< String, Set< String >>();
+		for ( String[] standard : STANDARD_ITEMS ) {
+			for ( int i = 1; i < standard.length; i++ ) {
+				addItem( itemPlugins, standard[ i ], standard[ 0 ] );
+			}
+		}
+
+		String core = new String( Utils.readFully( new File( directory, "ckeditor.js" ) ), "UTF-8" );
+		Set< String > buildPlugins = new TreeSet< String >();
+		Matcher build = BUILD_PLUGINS.matcher( core );
+		if ( build.find() ) {
+			buildPlugins.addAll( split( build.group( 1 ) ) );
+		}
+		readDefinitions( core, requires, itemPlugins );
+
+		File[] pluginDirs = new File( directory, "plugins" ).listFiles();
+		if ( pluginDirs != null ) {
+			for ( File pluginDir : pluginDirs ) {
+				File pluginFile = new File( pluginDir, "plugin.js" );
+				if ( pluginFile.isFile() ) {
+					readDefinitions( new String( Utils.readFully( pluginFile ), "UTF-8" ), requires, itemPlugins );
+				}
+			}
+		}
+		pluginAnalyzerLogger.fine( "Read " + requires.size() + " CKEditor plugin definitions from " + directory );
+		return new PluginAnalyzer( Collections.unmodifiableSet( buildPlugins ), requires, itemPlugins );
+	}
+
+	/**
+	 * Reads plugin definitions from a script. Every definition spans from its {@code plugins.add} call to the next one.
+	 * 
+	 * @param script
+	 *        the content of {@code ckeditor.js} or of a {@code plugin.js} file.
+	 * @param requires
+	 *        the map to which dependencies are added.
+	 * @param itemPlugins
+	 *        the map to which toolbar items are added.
+	 */
+	private static void readDefinitions( final String script, final Map< String, Set< String >> requires,
+			final Map< String, Set< String >> itemPlugins ) {
+		Matcher definition = PLUGIN_DEFINITION.matcher( script );
+		if ( !definition.find() ) {
+			return;
+		}
+		while ( true ) {
+			String name = definition.group( 1 );
+			int start = definition.end();
+			boolean more = definition.find();
+			String body = script.substring( start, more ? definition.start() : script.length() );
+
+			Matcher dependencies = REQUIRES.matcher( body );
+			if ( dependencies.find() ) {
+				String list = ( dependencies.group( 1 ) != null ) ? dependencies.group( 1 ) : dependencies.group( 2 );
+				requires.put( name, new HashSet< String >( split( list.replaceAll( "['\"\\s]", "" ) ) ) );
+			}
+			Matcher buttons = ADD_BUTTON.matcher( body );
+			while ( buttons.find() ) {
+				addItem( itemPlugins, buttons.group( 1 ), name );
+			}
+			if ( !more ) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Registers a plugin providing a toolbar item.
+	 * 
+	 * @param itemPlugins
+	 *        the plugins providing toolbar items by item name.
+	 * @param item
+	 *        the item name.
+	 * @param plugin
+	 *        the plugin name.
+	 */
+	private static void addItem( final Map< String, Set< String >> itemPlugins, final String item, final String plugin ) {
+		Set< String > plugins = itemPlugins.get( item );
+		if ( plugins == null ) {
+			plugins = new HashSet< String >();
+			itemPlugins.put( item, plugins );
+		}
+		plugins.add( plugin );
+	}
+
+	/**
+	 * Splits a comma-separated list of names.
+	 * 
+	 * @param list
+	 *        the list to split.
+	 * @return the set of non-empty names.
+	 */
+	private static Set< String > split( final String list ) {
+		Set< String > names = new LinkedHashSet< String >();
+		for ( String name : list.split( "," ) ) {
+			if ( name.trim().length() > 0 ) {
+				names.add( name.trim() );
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Joins names into a comma-separated list.
+	 * 
+	 * @param names
+	 *        the names to join.
+	 * @return the comma-separated list.
+	 */
+	private static String join( final Collection< String > names ) {
+		StringBuilder sb = new StringBuilder();
+		for ( String name : names ) {
+			if ( sb.length() > 0 ) {
+				sb.append( ',' );
+			}
+			sb.append( name );
+		}
+		return sb.toString();
+	}
+}
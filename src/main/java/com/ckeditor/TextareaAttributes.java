@@ -0,0 +1,132 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code TextareaAttributes} class is an immutable set of attributes of the {@code <textarea>} element inserted into JSP. The
+ * attributes are escaped and rendered once, when the object is created, and the rendered text is reused every time the element is
+ * written. If no attributes are given, the default {@code rows} and {@code cols} attributes are used.
+ * <p>
+ * This class is the fast path for attributes shared by many editors. It implements {@code Map}, so it may be passed wherever a
+ * {@code Map} of attributes is accepted, for example to the {@code textareaAttributes} attribute of the {@code editor} tag or to
+ * {@link CKEditor#setTextareaAttributes(Map)}. Attribute maps of other types are not cached, because they may be modified between
+ * requests. They are copied and rendered every time an editor is written, and they are never modified.<br>
+ * <strong>Usage:</strong>
+ * 
+ * <pre>
+ * Map&lt; String, String &gt; attr = new HashMap&lt; String, String &gt;();
+ * attr.put( &quot;rows&quot;, &quot;10&quot; );
+ * attr.put( &quot;cols&quot;, &quot;80&quot; );
+ * application.setAttribute( &quot;cke_textarea_attrs&quot;, new TextareaAttributes( attr ) );
+ * </pre>
+ */
+public final class TextareaAttributes extends AbstractMap< String, String > {
+
+	/**
+	 * Private logger.
+	 */
+	private static final Logger textareaAttributesLogger = Logger.getLogger( TextareaAttributes.class.getName() );
+	/**
+	 * Pattern matching valid attribute names.
+	 */
+	private static final Pattern ATTRIBUTE_NAME = Pattern.compile( "[A-Za-z_:][-A-Za-z0-9_:.]*" );
+	/**
+	 * The default attributes used when no attributes are given.
+	 */
+	public static final TextareaAttributes DEFAULT = new TextareaAttributes( null );
+	/**
+	 * The attributes.
+	 */
+	private final Map< String, String > attributes;
+	/**
+	 * The attributes rendered as HTML, each preceded by a space.
+	 */
+	private final String text;
+
+	/**
+	 * Creates the {@code TextareaAttributes} object. Values are escaped, attributes with invalid names are ignored and attributes with
+	 * {@code null} values are rendered without a value, like {@code disabled}.
+	 * 
+	 * @param attributes
+	 *        the attribute names and values. If it is {@code null} or empty, the default attributes are used. The {@code Map} is copied,
+	 *        so later changes of it do not affect this object.
+	 */
+	public TextareaAttributes( final Map< String, String > attributes ) {
+		Map< String, String > copy = new LinkedHashMap< String, String >();
+		if ( attributes == null || attributes.isEmpty() ) {
+			copy.put( "rows", Utils.DEFAULT_TEXTAREA_ROWS );
+			copy.put( "cols", Utils.DEFAULT_TEXTAREA_COLS );
+		} else {
+			for ( Map.Entry< String, String > attrEntry : attributes.entrySet() ) {
+				if ( attrEntry.getKey() != null && ATTRIBUTE_NAME.matcher( attrEntry.getKey() ).matches() ) {
+					copy.put( attrEntry.getKey(), attrEntry.getValue() );
+				} else {
+					textareaAttributesLogger.warning( "Ignoring invalid textarea attribute name: " + attrEntry.getKey() );
+				}
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for ( Map.Entry< String, String > attrEntry : copy.entrySet() ) {
+			sb.append( " " ).append( attrEntry.getKey() );
+			if ( attrEntry.getValue() != null ) {
+				sb.append( "=\"" ).append( Utils.escapeHtml( attrEntry.getValue() ) ).append( "\"" );
+			}
+		}
+		this.attributes = Collections.unmodifiableMap( copy );
+		this.text = sb.toString();
+	}
+
+	/**
+	 * Returns the rendered attributes for a {@code Map} of attributes. A {@code TextareaAttributes} object is returned as it is, other maps
+	 * are copied and rendered. The {@code Map} is not modified.
+	 * 
+	 * @param attributes
+	 *        the attribute names and values. May be {@code null}.
+	 * @return the {@code TextareaAttributes} object.
+	 */
+	static TextareaAttributes of( final Map< String, String > attributes ) {
+		if ( attributes instanceof TextareaAttributes ) {
+			return ( TextareaAttributes ) attributes;
+		}
+		if ( attributes == null || attributes.isEmpty() ) {
+			return DEFAULT;
+		}
+		return new TextareaAttributes( attributes );
+	}
+
+	/**
+	 * Returns the attributes rendered as HTML.
+	 * 
+	 * @return the attributes, each preceded by a space.
+	 */
+	String getText() {
+		return text;
+	}
+
+	@Override
+	public Set< Map.Entry< String, String >> entrySet() {
+		return attributes.entrySet();
+	}
+
+	@Override
+	public String get( final Object key ) {
+		return attributes.get( key );
+	}
+
+	@Override
+	public boolean containsKey( final Object key ) {
+		return attributes.containsKey( key );
+	}
+
+	@Override
+	public int size() {
+		return attributes.size();
+	}
+}
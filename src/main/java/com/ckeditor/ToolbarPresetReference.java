@@ -0,0 +1,72 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+/**
+ * The {@code ToolbarPresetReference} class stores a reference to an option of a {@link ToolbarPresets} preset in the editor
+ * configuration. It is replaced with the encoded preset of the web application by {@link ToolbarPresets#resolve(CKEditorConfig)} before
+ * the configuration is encoded, so changes of the preset apply to all configurations referring to it.
+ */
+final class ToolbarPresetReference {
+
+	/**
+	 * Name of the preset.
+	 */
+	private final String name;
+	/**
+	 * Name of the option, {@code toolbar} or {@code toolbarGroups}.
+	 */
+	private final String option;
+
+	/**
+	 * Creates the {@code ToolbarPresetReference} object.
+	 * 
+	 * @param name
+	 *        the name of the preset.
+	 * @param option
+	 *        the name of the option, {@code toolbar} or {@code toolbarGroups}.
+	 */
+	ToolbarPresetReference( final String name, final String option ) {
+		if ( name == null || option == null ) {
+			throw new IllegalArgumentException( "The preset and option names cannot be null." );
+		}
+		this.name = name;
+		this.option = option;
+	}
+
+	/**
+	 * Returns the name of the preset.
+	 * 
+	 * @return the name of the preset.
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the name of the option.
+	 * 
+	 * @return {@code toolbar} or {@code toolbarGroups}.
+	 */
+	String getOption() {
+		return option;
+	}
+
+	@Override
+	public boolean equals( final Object o ) {
+		if ( !( o instanceof ToolbarPresetReference ) ) {
+			return false;
+		}
+		ToolbarPresetReference other = ( ToolbarPresetReference ) o;
+		return name.equals( other.name ) && option.equals( other.option );
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * name.hashCode() + option.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "preset:" + name + "." + option;
+	}
+}
@@ -0,0 +1,94 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.jsp.tagext.TagSupport;
+
+/**
+ * The {@code ToolbarPresetTag} class registers a toolbar preset in the {@link ToolbarPresets} of the web application, so editor
+ * configurations may refer to it with {@link CKEditorConfig#useToolbarPreset(String)}. The tag writes nothing to JSP. Registering the same
+ * definitions again has no effect, so the tag may be placed in a page fragment included by every page.
+ * <p>
+ * <strong>Usage on JSP:</strong>
+ * 
+ * <pre>
+ * &lt;ckeditor:toolbarPreset name="basic" toolbar="[[ 'Source', '-', 'Bold', 'Italic' ]]"/&gt;
+ * </pre>
+ */
+public class ToolbarPresetTag extends TagSupport {
+
+	/**
+	 * Serial identifier.
+	 */
+	private static final long serialVersionUID = 4466716386104712589L;
+	/**
+	 * Private logger.
+	 */
+	private static final Logger toolbarPresetTagLogger = Logger.getLogger( ToolbarPresetTag.class.getName() );
+	/**
+	 * Name of the preset.
+	 */
+	private String name;
+	/**
+	 * Value of the {@code toolbar} option.
+	 */
+	private Object toolbar;
+	/**
+	 * Value of the {@code toolbarGroups} option.
+	 */
+	private Object toolbarGroups;
+
+	/**
+	 * Creates a {@code ToolbarPresetTag} object.
+	 */
+	public ToolbarPresetTag() {
+
+	}
+
+	/**
+	 * Registers the preset. An invalid definition is logged and the previously registered preset is kept.
+	 * 
+	 * @return {@code EVAL_PAGE}.
+	 */
+	@Override
+	public int doEndTag() {
+		try {
+			ToolbarPresets.getInstance( pageContext.getServletContext() ).register( name, toolbar, toolbarGroups );
+		} catch ( IllegalArgumentException e ) {
+			toolbarPresetTagLogger.log( Level.WARNING, "Could not register toolbar preset " + name + ".", e );
+		}
+		return EVAL_PAGE;
+	}
+
+	/**
+	 * Sets the name of the preset.
+	 * 
+	 * @param name
+	 *        the name of the preset.
+	 */
+	public final void setName( final String name ) {
+		this.name = name;
+	}
+
+	/**
+	 * Sets the value of the {@code toolbar} option.
+	 * 
+	 * @param toolbar
+	 *        a {@code List} or a {@code String} with JavaScript code.
+	 */
+	public final void setToolbar( final Object toolbar ) {
+		this.toolbar = toolbar;
+	}
+
+	/**
+	 * Sets the value of the {@code toolbarGroups} option.
+	 * 
+	 * @param toolbarGroups
+	 *        a {@code List} or a {@code String} with JavaScript code.
+	 */
+	public final void setToolbarGroups( final Object toolbarGroups ) {
+		this.toolbarGroups = toolbarGroups;
+	}
+}
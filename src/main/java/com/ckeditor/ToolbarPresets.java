@@ -0,0 +1,326 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The {@code ToolbarPresets} class is a registry of named toolbar definitions of a web application. A preset holds the {@code toolbar}
+ * and {@code toolbarGroups} options, which are encoded to JavaScript once, when the preset is registered. Configurations refer to a preset
+ * with {@link CKEditorConfig#useToolbarPreset(String)} and the encoded definitions are inserted into the page as they are, so large
+ * toolbars shared by many editors are not encoded again for every editor.<br>
+ * The registry is stored in the application scope, so web applications sharing a class loader do not see each other's presets. Presets
+ * are usually registered when the application starts or with the {@code toolbarPreset} tag.<br>
+ * <strong>Usage:</strong>
+ * 
+ * <pre>
+ * List&lt; List&lt; String &gt;&gt; toolbar = new ArrayList&lt; List&lt; String &gt;&gt;();
+ * toolbar.add( Arrays.asList( &quot;Source&quot;, &quot;-&quot;, &quot;Bold&quot;, &quot;Italic&quot; ) );
+ * ToolbarPresets.getInstance( servletContext ).register( &quot;basic&quot;, toolbar, null );
+ * 
+ * CKEditorConfig config = new CKEditorConfig();
+ * config.useToolbarPreset( &quot;basic&quot; );
+ * </pre>
+ */
+public final class ToolbarPresets {
+
+	/**
+	 * Name of the application attribute storing the {@code ToolbarPresets} object.
+	 */
+	static final String TOOLBAR_PRESETS_ATTRIBUTE = "ckeditor_toolbar_presets";
+	/**
+	 * Private logger.
+	 */
+	private static final Logger toolbarPresetsLogger = Logger.getLogger( ToolbarPresets.class.getName() );
+	/**
+	 * Registered presets by name.
+	 */
+	private final ConcurrentMap< String, Preset > presets = new ConcurrentHashMap< String, Preset >();
+	/**
+	 * Number of changes of the registered presets.
+	 */
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * Private constructor.
+	 */
+	private ToolbarPresets() {
+	}
+
+	/**
+	 * Returns the {@code ToolbarPresets} object of the web application, creating it if it does not exist.
+	 * 
+	 * @param context
+	 *        the servlet context of the web application.
+	 * @return the {@code ToolbarPresets} object.
+	 */
+	public static ToolbarPresets getInstance( final ServletContext context ) {
+		synchronized ( ToolbarPresets.class ) {
+			ToolbarPresets instance = ( ToolbarPresets ) context.getAttribute( TOOLBAR_PRESETS_ATTRIBUTE );
+			if ( instance == null ) {
+				instance = new ToolbarPresets();
+				context.setAttribute( TOOLBAR_PRESETS_ATTRIBUTE, instance );
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Registers a toolbar preset, replacing the preset with the same name. Each definition may be a {@code List}, which is copied and
+	 * encoded like other configuration values, or a {@code String} with JavaScript code, optionally prefixed with {@code @@}. Registering
+	 * the same definitions again has no effect, so the method may be called on every request, for example by a tag.
+	 * 
+	 * @param name
+	 *        the name of the preset.
+	 * @param toolbar
+	 *        the value of the {@code toolbar} option or {@code null} if the preset does not define it.
+	 * @param toolbarGroups
+	 *        the value of the {@code toolbarGroups} option or {@code null} if the preset does not define it.
+	 */
+	public void register( final String name, final Object toolbar, final Object toolbarGroups ) {
+		if ( Utils.isStringEmpty( name ) ) {
+			throw new IllegalArgumentException( "The name of a toolbar preset cannot be empty." );
+		}
+		Preset preset = new Preset( toDefinition( toolbar ), toDefinition( toolbarGroups ) );
+		Preset previous = presets.get( name );
+		if ( preset.equals( previous ) ) {
+			return;
+		}
+		presets.put( name, preset );
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Removes a toolbar preset. Configurations which still refer to it are encoded without the toolbar options.
+	 * 
+	 * @param name
+	 *        the name of the preset.
+	 * @return {@code true} if the preset was registered, {@code false} otherwise.
+	 */
+	public boolean remove( final String name ) {
+		if ( name == null || presets.remove( name ) == null ) {
+			return false;
+		}
+		version.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Checks if a toolbar preset is registered.
+	 * 
+	 * @param name
+	 *        the name of the preset.
+	 * @return {@code true} if the preset is registered, {@code false} otherwise.
+	 */
+	public boolean contains( final String name ) {
+		return name != null && presets.containsKey( name );
+	}
+
+	/**
+	 * Returns the names of the registered toolbar presets.
+	 * 
+	 * @return the sorted set of names.
+	 */
+	public Set< String > getPresetNames() {
+		return Collections.unmodifiableSet( new TreeSet< String >( presets.keySet() ) );
+	}
+
+	/**
+	 * Returns the number of changes of the registered presets. Output which contains encoded presets may be cached only as long as it does
+	 * not change.
+	 * 
+	 * @return the version of the registry.
+	 */
+	long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Returns an option of a toolbar preset encoded to JavaScript.
+	 * 
+	 * @param name
+	 *        the name of the preset.
+	 * @param option
+	 *        the name of the option, {@code toolbar} or {@code toolbarGroups}.
+	 * @return the encoded value or {@code null} if the preset is not registered or does not define the option.
+	 */
+	String getEncoded( final String name, final String option ) {
+		Preset preset = presets.get( name );
+		if ( preset == null ) {
+			return null;
+		}
+		Definition definition = "toolbarGroups".equals( option ) ? preset.toolbarGroups : preset.toolbar;
+		return ( definition != null ) ? definition.encoded : null;
+	}
+
+	/**
+	 * Returns an option of a toolbar preset as it was registered.
+	 * 
+	 * @param name
+	 *        the name of the preset.
+	 * @param option
+	 *        the name of the option, {@code toolbar} or {@code toolbarGroups}.
+	 * @return the unmodifiable {@code List}, the JavaScript code, or {@code null} if the preset is not registered or does not define the
+	 *         option.
+	 */
+	Object getValue( final String name, final String option ) {
+		Preset preset = presets.get( name );
+		if ( preset == null ) {
+			return null;
+		}
+		Definition definition = "toolbarGroups".equals( option ) ? preset.toolbarGroups : preset.toolbar;
+		return ( definition != null ) ? definition.value : null;
+	}
+
+	/**
+	 * Returns a configuration in which references to toolbar presets are replaced with the encoded presets. References to presets which
+	 * are not registered or do not define the option are removed, so CKEditor uses its defaults, and a warning is logged.
+	 * 
+	 * @param config
+	 *        the configuration. May be {@code null}. It is not modified.
+	 * @return a copy of the configuration with the references replaced, or {@code config} if it does not refer to any preset.
+	 */
+	CKEditorConfig resolve( final CKEditorConfig config ) {
+		if ( config == null ) {
+			return null;
+		}
+		CKEditorConfig result = config;
+		String missing = null;
+		for ( Map.Entry< String, Object > configEntry : config.getConfigValues().entrySet() ) {
+			if ( !( configEntry.getValue() instanceof ToolbarPresetReference ) ) {
+				continue;
+			}
+			if ( result == config ) {
+				result = new CKEditorConfig().mergeConfigValues( config );
+			}
+			ToolbarPresetReference reference = ( ToolbarPresetReference ) configEntry.getValue();
+			String encoded = getEncoded( reference.getName(), reference.getOption() );
+			if ( encoded != null ) {
+				result.addConfigValue( configEntry.getKey(), "@@" + encoded );
+			} else {
+				if ( !contains( reference.getName() ) && !reference.getName().equals( missing ) ) {
+					missing = reference.getName();
+					toolbarPresetsLogger.log( Level.WARNING, "Toolbar preset {0} is not registered.", reference.getName() );
+				}
+				result.removeConfigValue( configEntry.getKey() );
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the definition of a preset option.
+	 * 
+	 * @param value
+	 *        the {@code List} or JavaScript code.
+	 * @return the definition or {@code null} if the value is {@code null} or empty.
+	 */
+	private static Definition toDefinition( final Object value ) {
+		if ( value == null ) {
+			return null;
+		}
+		if ( value instanceof List ) {
+			Object frozen = CKEditorConfig.freezeValue( value );
+			return new Definition( frozen, Utils.jsEncode( frozen ) );
+		}
+		if ( value instanceof String ) {
+			String code = ( ( String ) value ).trim();
+			if ( code.startsWith( "@@" ) ) {
+				code = code.substring( 2 );
+			}
+			return ( code.length() > 0 ) ? new Definition( code, code ) : null;
+		}
+		throw new IllegalArgumentException( "A toolbar preset must be a List or a String, got " + value.getClass().getName() + "." );
+	}
+
+	/**
+	 * Registered toolbar preset.
+	 */
+	private static final class Preset {
+
+		/**
+		 * Definition of the {@code toolbar} option or {@code null}.
+		 */
+		private final Definition toolbar;
+		/**
+		 * Definition of the {@code toolbarGroups} option or {@code null}.
+		 */
+		private final Definition toolbarGroups;
+
+		/**
+		 * Creates the {@code Preset} object.
+		 * 
+		 * @param toolbar
+		 *        the definition of the {@code toolbar} option or {@code null}.
+		 * @param toolbarGroups
+		 *        the definition of the {@code toolbarGroups} option or {@code null}.
+		 */
+		Preset( final Definition toolbar, final Definition toolbarGroups ) {
+			this.toolbar = toolbar;
+			this.toolbarGroups = toolbarGroups;
+		}
+
+		@Override
+		public boolean equals( final Object o ) {
+			if ( !( o instanceof Preset ) ) {
+				return false;
+			}
+			Preset other = ( Preset ) o;
+			return ( toolbar == null ? other.toolbar == null : toolbar.equals( other.toolbar ) )
+					&& ( toolbarGroups == null ? other.toolbarGroups == null : toolbarGroups.equals( other.toolbarGroups ) );
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * ( toolbar != null ? toolbar.hashCode() : 0 ) + ( toolbarGroups != null ? toolbarGroups.hashCode() : 0 );
+		}
+	}
+
+	/**
+	 * Option of a toolbar preset together with its JavaScript representation.
+	 */
+	private static final class Definition {
+
+		/**
+		 * The unmodifiable {@code List} or the JavaScript code.
+		 */
+		private final Object value;
+		/**
+		 * The JavaScript representation of the value.
+		 */
+		private final String encoded;
+
+		/**
+		 * Creates the {@code Definition} object.
+		 * 
+		 * @param value
+		 *        the unmodifiable {@code List} or the JavaScript code.
+		 * @param encoded
+		 *        the JavaScript representation of the value.
+		 */
+		Definition( final Object value, final String encoded ) {
+			this.value = value;
+			this.encoded = encoded;
+		}
+
+		@Override
+		public boolean equals( final Object o ) {
+			return ( o instanceof Definition ) && encoded.equals( ( ( Definition ) o ).encoded );
+		}
+
+		@Override
+		public int hashCode() {
+			return encoded.hashCode();
+		}
+	}
+}
@@ -1,8 +1,20 @@
 /* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
 package com.ckeditor;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,6 +23,11 @@ import java.util.regex.Pattern;
  */
 public class Utils {
 
+	/**
+	 * Private logger.
+	 */
+	private static final Logger utilsLogger = Logger.getLogger( Utils.class.getName() );
+
 	/**
 	 * Array of JavaScript string special characters.
 	 */
@@ -34,12 +51,17 @@ public class Utils {
 	/**
 	 * Default number of {@code <textarea>} rows.
 	 */
-	private static final String DEFAULT_TEXTAREA_ROWS = "8";
+	static final String DEFAULT_TEXTAREA_ROWS = "8";
 
 	/**
 	 * Default number of {@code <textarea>} columns.
 	 */
-	private static final String DEFAULT_TEXTAREA_COLS = "60";
+	static final String DEFAULT_TEXTAREA_COLS = "60";
+
+	/**
+	 * Number of characters read at once when a value is streamed.
+	 */
+	static final int CHUNK_SIZE = 8192;
 
 	/**
 	 * Regular expression matching any character or set of characters in square or curly brackets. For example: {language : 'en'}.
@@ -79,7 +101,8 @@ public class Utils {
 	/**
 	 * General method used to convert Java objects into JavaScript-accepted equivalents. The following Java objects are supported for
 	 * conversion: {@code String}, {@code Number}, {@code Boolean}, {@code Map}, {@code List}, {@code CKEditorConfig} and {@code null}. If
-	 * another object is passed, an empty string is returned.
+	 * another object is passed, an empty string is returned. Values added with a {@code ConfigValueProvider} are computed here, when the
+	 * encoding reaches them, and references to toolbar presets are replaced with the presets encoded at registration.
 	 * 
 	 * @param o
 	 *        an object to encode.
@@ -109,6 +132,13 @@ public class Utils {
 		if ( o instanceof CKEditorConfig ) {
 			return jsEncode( ( CKEditorConfig ) o );
 		}
+		if ( o instanceof LazyConfigValue ) {
+			return jsEncode( ( ( LazyConfigValue ) o ).get() );
+		}
+		if ( o instanceof ToolbarPresetReference ) {
+			utilsLogger.log( Level.WARNING, "Unresolved toolbar {0} is encoded as null.", o );
+			return "null";
+		}
 		return "";
 	}
 
@@ -192,25 +222,42 @@ public class Utils {
 	}
 
 	/**
-	 * Converts the {@code CKEditorConfig} object into a JavaScript object.
+	 * Converts the {@code CKEditorConfig} object into a JavaScript object. The result for a frozen configuration is computed once.
+	 * References to toolbar presets have to be resolved by the editor tags before; an unresolved reference is left out with a warning,
+	 * so CKEditor uses its default toolbar.
 	 * 
 	 * @param config
 	 *        a {@code CKEditorConfig} object to encode.
 	 * @return a string representing the JavaScript object.
 	 */
 	public static String jsEncode( final CKEditorConfig config ) {
+		String encoded = config.getEncoded();
+		if ( encoded != null ) {
+			return encoded;
+		}
 		StringBuilder sb = new StringBuilder( "{" );
+		boolean complete = true;
 
 		for ( Map.Entry< String, Object > configEntry : config.getConfigValues().entrySet() ) {
+			if ( configEntry.getValue() instanceof ToolbarPresetReference ) {
+				utilsLogger.log( Level.WARNING, "Option {0} refers to unresolved toolbar {1} and is left out.", new Object[] {
+						configEntry.getKey(), configEntry.getValue() } );
+				complete = false;
+				continue;
+			}
 			if ( sb.length() > 1 ) {
 				sb.append( "," );
 			}
 			sb.append( jsEncode( configEntry.getKey() ) );
 			sb.append( ":" );
-			sb.append( jsEncode( ( configEntry.getValue() ) ) );
+			sb.append( jsEncode( configEntry.getValue() ) );
 		}
 		sb.append( "}" );
-		return sb.toString();
+		encoded = sb.toString();
+		if ( config.isFrozen() && complete ) {
+			config.setEncoded( encoded );
+		}
+		return encoded;
 	}
 
 	/**
@@ -243,10 +290,69 @@ public class Utils {
 	 *        value for the editor which will be created on the {@code <textarea>} element.
 	 * @param textareaAttributes
 	 *        the {@code Map} representing attributes for the {@code <textarea>} element that will be inserted into JSP and replaced by an
-	 *        editor instance.
+	 *        editor instance. It is not modified.
 	 * @return a string representing the HTML {@code <textarea>} element.
 	 */
 	public static String createTextareaTag( final String textAreaName, String htmlValue, Map< String, String > textareaAttributes ) {
+		StringBuilder sb = new StringBuilder( createTextareaStartTag( textAreaName, TextareaAttributes.of( textareaAttributes ) ) );
+		sb.append( escapeHtml( htmlValue ) );
+		sb.append( "</textarea>\n" );
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the HTML {@code <textarea>} element with the value read from the value source. The value is escaped and written in chunks, so
+	 * it is never held in memory as a whole.
+	 * 
+	 * @param out
+	 *        the writer to write to.
+	 * @param textAreaName
+	 *        a {@code String} representing the name and ID of the {@code <textarea>} element.
+	 * @param value
+	 *        the source of the HTML value for the {@code <textarea>} element.
+	 * @param textareaAttributes
+	 *        the attributes for the {@code <textarea>} element.
+	 * @throws IOException
+	 *         if the value cannot be read or written.
+	 */
+	static void writeTextareaTag( final Writer out, final String textAreaName, final ValueSource value,
+			final TextareaAttributes textareaAttributes ) throws IOException {
+		out.write( createTextareaStartTag( textAreaName, textareaAttributes ) );
+		value.writeEscaped( out );
+		out.write( "</textarea>\n" );
+	}
+
+	/**
+	 * Writes the HTML {@code <textarea>} element with a value which is already escaped.
+	 * 
+	 * @param out
+	 *        the writer to write to.
+	 * @param textAreaName
+	 *        a {@code String} representing the name and ID of the {@code <textarea>} element.
+	 * @param escapedValue
+	 *        the HTML value for the {@code <textarea>} element with special characters converted to HTML entities.
+	 * @param textareaAttributes
+	 *        the attributes for the {@code <textarea>} element.
+	 * @throws IOException
+	 *         if the element cannot be written.
+	 */
+	static void writeEscapedTextareaTag( final Writer out, final String textAreaName, final String escapedValue,
+			final TextareaAttributes textareaAttributes ) throws IOException {
+		out.write( createTextareaStartTag( textAreaName, textareaAttributes ) );
+		out.write( escapedValue );
+		out.write( "</textarea>\n" );
+	}
+
+	/**
+	 * Creates a string representing the start tag of the HTML {@code <textarea>} element.
+	 * 
+	 * @param textAreaName
+	 *        a {@code String} representing the name and ID of the {@code <textarea>} element.
+	 * @param textareaAttributes
+	 *        the attributes for the {@code <textarea>} element.
+	 * @return a string representing the start tag.
+	 */
+	private static String createTextareaStartTag( final String textAreaName, final TextareaAttributes textareaAttributes ) {
 		StringBuilder sb = new StringBuilder();
 		sb.append( "<textarea name=\"" );
 		sb.append( textAreaName );
@@ -254,35 +360,113 @@ public class Utils {
 		sb.append( "id=\"" );
 		sb.append( textAreaName );
 		sb.append( "\"" );
-		sb.append( createTextareaAttributesText( textareaAttributes ) );
+		sb.append( textareaAttributes.getText() );
 		sb.append( ">" );
-		sb.append( escapeHtml( htmlValue ) );
-		sb.append( "</textarea>\n" );
 		return sb.toString();
 	}
 
 	/**
-	 * Returns a {@code String} representing the {@code <textarea>} element attributes. If no attributes are provided as a parameter, a
-	 * predefined set of attributes will be used.
+	 * Creates a string representing the HTML {@code <div>} element which displays static HTML content in place of an editor instance. The
+	 * content is inserted as is, without any filtering. In particular, the Advanced Content Filter of the editor does not apply, so
+	 * scripts and event handlers stored in the content are executed by the browser. Content which may come from untrusted users has to be
+	 * sanitized on the server before it is passed to this method.
 	 * 
-	 * @param textareaAttributes
-	 *        a {@code Map} representing attributes for the {@code <textarea>} element that will be inserted into JSP and replaced by an
-	 *        editor instance.
-	 * @return a string representing the {@code <textarea>} element attributes.
+	 * @param id
+	 *        the ID of the {@code <div>} element. It matches the name of the editor instance which the element replaces. It is escaped.
+	 * @param htmlValue
+	 *        the HTML content to display.
+	 * @return a string representing the HTML {@code <div>} element.
 	 */
-	private static String createTextareaAttributesText( Map< String, String > textareaAttributes ) {
-		if ( textareaAttributes.isEmpty() ) {
-			textareaAttributes.put( "rows", DEFAULT_TEXTAREA_ROWS );
-			textareaAttributes.put( "cols", DEFAULT_TEXTAREA_COLS );
-		}
+	public static String createStaticContentTag( final String id, final String htmlValue ) {
 		StringBuilder sb = new StringBuilder();
-		for ( Map.Entry< String, String > attrEntry : textareaAttributes.entrySet() ) {
-			sb.append( " " );
-			sb.append( attrEntry.getKey() ).append( "=\"" ).append( attrEntry.getValue() ).append( "\"" );
+		sb.append( "<div id=\"" ).append( escapeHtml( id ) ).append( "\" class=\"cke_editable cke_static\">" );
+		if ( htmlValue != null ) {
+			sb.append( htmlValue );
 		}
+		sb.append( "</div>\n" );
 		return sb.toString();
 	}
 
+	/**
+	 * Creates a string representing the HTML {@code <div>} element which displays an error in place of an editor instance.
+	 * 
+	 * @param id
+	 *        the name of the editor instance which could not be created. It is escaped.
+	 * @param message
+	 *        the error message. It is escaped.
+	 * @return a string representing the HTML {@code <div>} element.
+	 */
+	static String createErrorTag( final String id, final String message ) {
+		return "<div class=\"cke_config_error\" role=\"alert\" data-cke-editor=\"" + escapeHtml( id ) + "\">" + escapeHtml( message )
+				+ "</div>\n";
+	}
+
+	/**
+	 * Creates a string representing the HTML {@code <link>} element which points to an external stylesheet.
+	 * 
+	 * @param href
+	 *        the URL of the stylesheet.
+	 * @return a string representing the HTML {@code <link>} element.
+	 */
+	public static String createStylesheetLink( final String href ) {
+		return "<link rel=\"stylesheet\" type=\"text/css\" href=\"" + escapeHtml( href ) + "\"/>\n";
+	}
+
+	/**
+	 * Returns the URLs of stylesheets used by the editor content area. The URLs are read from the {@code contentsCss} configuration option
+	 * which can be a {@code String}, a {@code List} or a JavaScript array literal. If the option is not set, the {@code contents.css} file
+	 * from the CKEditor installation directory is used. Relative URLs are resolved against the base path and the timestamp is appended the
+	 * same way the editor does it.
+	 * 
+	 * @param config
+	 *        the {@code CKEditorConfig} object storing the editor configuration. May be {@code null}.
+	 * @param basePath
+	 *        the path to the CKEditor installation directory.
+	 * @param timestamp
+	 *        the timestamp appended to the URLs. May be {@code null}.
+	 * @return a {@code List} of stylesheet URLs.
+	 */
+	public static List< String > getContentsCss( final CKEditorConfig config, final String basePath, final String timestamp ) {
+		List< String > urls = new ArrayList< String >();
+		Object value = ( config != null ) ? config.getConfigValue( "contentsCss" ) : null;
+		if ( value instanceof List ) {
+			for ( Object url : ( List< ? > ) value ) {
+				if ( url != null ) {
+					urls.add( url.toString() );
+				}
+			}
+		} else if ( value instanceof String ) {
+			String s = ( ( String ) value ).trim();
+			if ( s.startsWith( "[" ) && s.endsWith( "]" ) ) {
+				for ( String url : s.substring( 1, s.length() - 1 ).split( "," ) ) {
+					url = url.trim();
+					if ( url.length() > 1 && ( url.charAt( 0 ) == '\'' || url.charAt( 0 ) == '"' ) ) {
+						url = url.substring( 1, url.length() - 1 );
+					}
+					if ( !isStringEmpty( url ) ) {
+						urls.add( url );
+					}
+				}
+			} else if ( !isStringEmpty( s ) ) {
+				urls.add( s );
+			}
+		}
+		if ( urls.isEmpty() ) {
+			urls.add( "contents.css" );
+		}
+		List< String > result = new ArrayList< String >( urls.size() );
+		for ( String url : urls ) {
+			if ( !url.startsWith( "/" ) && url.indexOf( "://" ) == -1 ) {
+				url = appendSlash( basePath ) + url;
+			}
+			if ( !isStringEmpty( timestamp ) ) {
+				url += ( url.indexOf( '?' ) == -1 ? "?t=" : "&t=" ) + timestamp;
+			}
+			result.add( url );
+		}
+		return result;
+	}
+
 	/**
 	 * Converts special characters found in a string into HTML entities.
 	 * 
@@ -301,6 +485,57 @@ public class Utils {
 		return result;
 	}
 
+	/**
+	 * Converts special characters read from the reader into HTML entities and writes the result to the writer. The text is processed in
+	 * chunks of {@link #CHUNK_SIZE} characters and runs of characters which need no escaping are written directly from the buffer, so
+	 * memory usage does not depend on the length of the text.
+	 * 
+	 * @param in
+	 *        the reader providing the text. It is not closed.
+	 * @param out
+	 *        the writer to write to.
+	 * @throws IOException
+	 *         if the text cannot be read or written.
+	 */
+	static void escapeHtml( final Reader in, final Writer out ) throws IOException {
+		char[] buffer = new char[ CHUNK_SIZE ];
+		for ( int n = in.read( buffer ); n != -1; n = in.read( buffer ) ) {
+			escapeHtml( buffer, n, out );
+		}
+	}
+
+	/**
+	 * Converts special characters found in a part of a buffer into HTML entities and writes the result to the writer. Runs of characters
+	 * which need no escaping are written directly from the buffer.
+	 * 
+	 * @param buffer
+	 *        the buffer storing the text.
+	 * @param length
+	 *        the number of characters to process, starting from the beginning of the buffer.
+	 * @param out
+	 *        the writer to write to.
+	 * @throws IOException
+	 *         if the text cannot be written.
+	 */
+	static void escapeHtml( final char[] buffer, final int length, final Writer out ) throws IOException {
+		int start = 0;
+		for ( int i = 0; i < length; i++ ) {
+			int entity = -1;
+			for ( int j = 0; j < HTML_FROM.length; j++ ) {
+				if ( buffer[ i ] == HTML_FROM[ j ].charAt( 0 ) ) {
+					entity = j;
+					break;
+				}
+			}
+			if ( entity != -1 ) {
+				out.write( buffer, start, i - start );
+				out.write( HTML_TO[ entity ] );
+				start = i + 1;
+			}
+		}
+		out.write( buffer, start, length - start );
+	}
+
 	/**
 	 * Appends a slash character to the string provided that no slash is found at the end of this string. If {@code null} or empty is passed
 	 * as a parameter, the slash character is returned.
@@ -333,4 +568,70 @@ public class Utils {
 		return false;
 	}
 
+	/**
+	 * Converts bytes, for example a message digest, to a hexadecimal string.
+	 * 
+	 * @param bytes
+	 *        the bytes to convert.
+	 * @return a string of lowercase hexadecimal digits, two per byte.
+	 */
+	static String toHex( final byte[] bytes ) {
+		StringBuilder sb = new StringBuilder( bytes.length * 2 );
+		for ( byte b : bytes ) {
+			sb.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the hexadecimal SHA-1 hash of the data.
+	 * 
+	 * @param data
+	 *        the data to hash.
+	 * @return a string representing the hash.
+	 */
+	static String sha1( final byte[] data ) {
+		try {
+			return toHex( MessageDigest.getInstance( "SHA-1" ).digest( data ) );
+		} catch ( NoSuchAlgorithmException e ) {
+			throw new IllegalStateException( "SHA-1 is not supported.", e );
+		}
+	}
+
+	/**
+	 * Reads the whole stream.
+	 * 
+	 * @param in
+	 *        the stream to read. It is not closed.
+	 * @return the content of the stream.
+	 * @throws IOException
+	 *         if the stream cannot be read.
+	 */
+	static byte[] readFully( final InputStream in ) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[ 8192 ];
+		for ( int n = in.read( buffer ); n != -1; n = in.read( buffer ) ) {
+			out.write( buffer, 0, n );
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Reads the whole file.
+	 * 
+	 * @param file
+	 *        the file to read.
+	 * @return the content of the file.
+	 * @throws IOException
+	 *         if the file cannot be read.
+	 */
+	static byte[] readFully( final File file ) throws IOException {
+		InputStream in = new FileInputStream( file );
+		try {
+			return readFully( in );
+		} finally {
+			in.close();
+		}
+	}
+
 }
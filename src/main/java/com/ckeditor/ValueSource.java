@@ -0,0 +1,279 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * The {@code ValueSource} class represents the initial value of an editor read from a {@code Reader}, an {@code InputStream} or a file
+ * instead of a {@code String}. When the value is inserted into the {@code <textarea>} element, it is escaped and written in fixed-size
+ * chunks, so memory usage does not depend on the size of the document.<br>
+ * <strong>Usage:</strong>
+ * 
+ * <pre>
+ * CKEditor editor = new CKEditor( request, &quot;/ckeditor/&quot;, &quot;editor1&quot;, null, null );
+ * editor.setValueSource( ValueSource.fromFile( document, &quot;UTF-8&quot; ) );
+ * editor.writeHtml( out );
+ * </pre>
+ * 
+ * A source created from a {@code Reader} or an {@code InputStream} can be read only once and is closed after reading. A source created
+ * from a file opens the file each time it is read.
+ * <p>
+ * A source created with {@link #fromMappedFile(File, String)} maps the file into memory instead of reading it through a stream. The
+ * mapped bytes are decoded into a small buffer and escaped chunk by chunk, so rendering a document of any size neither copies it to the
+ * Java heap nor creates an intermediate {@code String}.
+ */
+public final class ValueSource {
+
+	/**
+	 * The reader providing the value or {@code null} if the value is read from a stream or a file.
+	 */
+	private final Reader reader;
+	/**
+	 * The stream providing the value or {@code null} if the value is read from a reader or a file.
+	 */
+	private final InputStream stream;
+	/**
+	 * The file storing the value or {@code null} if the value is read from a reader or a stream.
+	 */
+	private final File file;
+	/**
+	 * The name of the charset used to decode the stream or the file.
+	 */
+	private final String charset;
+	/**
+	 * Flag indicating whether the file is memory-mapped.
+	 */
+	private final boolean mapped;
+
+	/**
+	 * Creates the {@code ValueSource} object.
+	 * 
+	 * @param reader
+	 *        the reader providing the value.
+	 * @param stream
+	 *        the stream providing the value.
+	 * @param file
+	 *        the file storing the value.
+	 * @param charset
+	 *        the name of the charset used to decode the stream or the file.
+	 * @param mapped
+	 *        {@code true} if the file should be memory-mapped.
+	 */
+	private ValueSource( final Reader reader, final InputStream stream, final File file, final String charset, final boolean mapped ) {
+		this.reader = reader;
+		this.stream = stream;
+		this.file = file;
+		this.charset = charset;
+		this.mapped = mapped;
+	}
+
+	/**
+	 * Creates a value source reading from a {@code Reader}.
+	 * 
+	 * @param reader
+	 *        the reader providing the value.
+	 * @return the {@code ValueSource} object.
+	 */
+	public static ValueSource fromReader( final Reader reader ) {
+		if ( reader == null ) {
+			throw new IllegalArgumentException( "The reader cannot be null." );
+		}
+		return new ValueSource( reader, null, null, null, false );
+	}
+
+	/**
+	 * Creates a value source reading from an {@code InputStream}.
+	 * 
+	 * @param stream
+	 *        the stream providing the value.
+	 * @param charset
+	 *        the name of the charset used to decode the stream, for example {@code UTF-8}.
+	 * @return the {@code ValueSource} object.
+	 */
+	public static ValueSource fromStream( final InputStream stream, final String charset ) {
+		if ( stream == null || charset == null ) {
+			throw new IllegalArgumentException( "The stream and the charset cannot be null." );
+		}
+		return new ValueSource( null, stream, null, charset, false );
+	}
+
+	/**
+	 * Creates a value source reading from a file.
+	 * 
+	 * @param file
+	 *        the file storing the value.
+	 * @param charset
+	 *        the name of the charset used to decode the file, for example {@code UTF-8}.
+	 * @return the {@code ValueSource} object.
+	 */
+	public static ValueSource fromFile( final File file, final String charset ) {
+		if ( file == null || charset == null ) {
+			throw new IllegalArgumentException( "The file and the charset cannot be null." );
+		}
+		return new ValueSource( null, null, file, charset, false );
+	}
+
+	/**
+	 * Creates a value source reading from a memory-mapped file. It is meant for very large documents stored on a local disk. The mapping
+	 * is released by the garbage collector, so the file may stay locked on some systems until then.
+	 * 
+	 * @param file
+	 *        the file storing the value. It cannot be larger than 2 GB.
+	 * @param charset
+	 *        the name of the charset used to decode the file, for example {@code UTF-8}.
+	 * @return the {@code ValueSource} object.
+	 */
+	public static ValueSource fromMappedFile( final File file, final String charset ) {
+		if ( file == null || charset == null ) {
+			throw new IllegalArgumentException( "The file and the charset cannot be null." );
+		}
+		return new ValueSource( null, null, file, charset, true );
+	}
+
+	/**
+	 * Writes the value to the writer with HTML special characters escaped, as needed inside the {@code <textarea>} element.
+	 * 
+	 * @param out
+	 *        the writer to write to.
+	 * @throws IOException
+	 *         if the value cannot be read or written.
+	 */
+	void writeEscaped( final Writer out ) throws IOException {
+		if ( mapped ) {
+			decodeMapped( out, true );
+			return;
+		}
+		Reader in = open();
+		try {
+			Utils.escapeHtml( in, out );
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the whole value. It is used where the value is needed as a whole, for example when it is displayed as static HTML.
+	 * 
+	 * @return the value.
+	 * @throws IOException
+	 *         if the value cannot be read.
+	 */
+	String read() throws IOException {
+		StringWriter out = new StringWriter();
+		if ( mapped ) {
+			decodeMapped( out, false );
+			return out.toString();
+		}
+		Reader in = open();
+		try {
+			char[] buffer = new char[ Utils.CHUNK_SIZE ];
+			for ( int n = in.read( buffer ); n != -1; n = in.read( buffer ) ) {
+				out.write( buffer, 0, n );
+			}
+			return out.toString();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Decodes the memory-mapped file into a fixed-size buffer and writes each decoded chunk to the writer.
+	 * 
+	 * @param out
+	 *        the writer to write to.
+	 * @param escape
+	 *        {@code true} if HTML special characters should be escaped.
+	 * @throws IOException
+	 *         if the file cannot be mapped or decoded, or the value cannot be written.
+	 */
+	private void decodeMapped( final Writer out, final boolean escape ) throws IOException {
+		ByteBuffer bytes = map();
+		CharsetDecoder decoder = Charset.forName( charset ).newDecoder().onMalformedInput( CodingErrorAction.REPLACE )
+				.onUnmappableCharacter( CodingErrorAction.REPLACE );
+		CharBuffer chars = CharBuffer.allocate( Utils.CHUNK_SIZE );
+		CoderResult result;
+		do {
+			result = decoder.decode( bytes, chars, true );
+			writeChunk( chars, out, escape );
+		} while ( result.isOverflow() );
+		do {
+			result = decoder.flush( chars );
+			writeChunk( chars, out, escape );
+		} while ( result.isOverflow() );
+	}
+
+	/**
+	 * Writes the decoded characters to the writer and clears the buffer.
+	 * 
+	 * @param chars
+	 *        the buffer with decoded characters.
+	 * @param out
+	 *        the writer to write to.
+	 * @param escape
+	 *        {@code true} if HTML special characters should be escaped.
+	 * @throws IOException
+	 *         if the characters cannot be written.
+	 */
+	private static void writeChunk( final CharBuffer chars, final Writer out, final boolean escape ) throws IOException {
+		if ( escape ) {
+			Utils.escapeHtml( chars.array(), chars.position(), out );
+		} else {
+			out.write( chars.array(), 0, chars.position() );
+		}
+		chars.clear();
+	}
+
+	/**
+	 * Maps the whole file into memory in the read-only mode.
+	 * 
+	 * @return the buffer with the content of the file.
+	 * @throws IOException
+	 *         if the file cannot be mapped.
+	 */
+	private ByteBuffer map() throws IOException {
+		FileInputStream in = new FileInputStream( file );
+		try {
+			FileChannel channel = in.getChannel();
+			if ( channel.size() > Integer.MAX_VALUE ) {
+				throw new IOException( "The file is too large to be mapped: " + file );
+			}
+			return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Opens the reader providing the value.
+	 * 
+	 * @return the reader.
+	 * @throws IOException
+	 *         if the file cannot be opened or the charset is not supported.
+	 */
+	private Reader open() throws IOException {
+		if ( reader != null ) {
+			return reader;
+		}
+		InputStream in = ( stream != null ) ? stream : new FileInputStream( file );
+		try {
+			return new InputStreamReader( in, charset );
+		} catch ( IOException e ) {
+			in.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/* Copyright (c) 2003-2015, CKSource - Frederico Knabben. All rights reserved. For licensing, see LICENSE.md or http://ckeditor.com/license */
+package com.ckeditor;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code WeakInterner} class maps equivalent objects to a single canonical instance. Canonical instances are referenced weakly, so
+ * they are removed from the pool when nothing else uses them.
+ * 
+ * @param <T>
+ *        the type of interned objects.
+ */
+final class WeakInterner< T > {
+
+	/**
+	 * Defines which objects are equivalent.
+	 * 
+	 * @param <T>
+	 *        the type of compared objects.
+	 */
+	interface Equivalence< T > {
+
+		/**
+		 * Returns the hash code of the object, equal for equivalent objects.
+		 * 
+		 * @param value
+		 *        the object.
+		 * @return the hash code.
+		 */
+		int hash( T value );
+
+		/**
+		 * Checks if two objects are equivalent.
+		 * 
+		 * @param a
+		 *        the first object.
+		 * @param b
+		 *        the second object.
+		 * @return {@code true} if the objects are equivalent.
+		 */
+		boolean equivalent( T a, T b );
+	}
+
+	/**
+	 * Equivalence based on the {@code equals} and {@code hashCode} methods.
+	 */
+	static final Equivalence< Object > EQUALS = new Equivalence< Object >() {
+		public int hash( final Object value ) {
+			return value.hashCode();
+		}
+
+		public boolean equivalent( final Object a, final Object b ) {
+			return a.equals( b );
+		}
+	};
+
+	/**
+	 * Canonical instances. Each key is mapped to itself, because {@code HashMap} has no method returning the stored key.
+	 */
+	private final Map< Ref< T >, Ref< T >> pool = new HashMap< Ref< T >, Ref< T >>();
+	/**
+	 * Queue of references to canonical instances which were garbage collected.
+	 */
+	private final ReferenceQueue< T > queue = new ReferenceQueue< T >();
+	/**
+	 * Equivalence of interned objects.
+	 */
+	private final Equivalence< ? super T > equivalence;
+
+	/**
+	 * Creates the {@code WeakInterner} object.
+	 * 
+	 * @param equivalence
+	 *        the equivalence of interned objects.
+	 */
+	WeakInterner( final Equivalence< ? super T > equivalence ) {
+		this.equivalence = equivalence;
+	}
+
+	/**
+	 * Returns the canonical instance equivalent to the object. If there is none, the object becomes the canonical instance.
+	 * 
+	 * @param value
+	 *        the object to intern. Must not be modified afterwards.
+	 * @return the canonical instance.
+	 */
+	synchronized T intern( final T value ) {
+		expungeStaleEntries();
+		Ref< T > probe = new Ref< T >( value, equivalence, null );
+		Ref< T > existing = pool.get( probe );
+		if ( existing != null ) {
+			T canonical = existing.get();
+			if ( canonical != null ) {
+				return canonical;
+			}
+			pool.remove( existing );
+		}
+		Ref< T > ref = new Ref< T >( value, equivalence, queue );
+		pool.put( ref, ref );
+		return value;
+	}
+
+	/**
+	 * Returns the number of canonical instances in the pool, including ones which were garbage collected but not removed yet.
+	 * 
+	 * @return the size of the pool.
+	 */
+	synchronized int size() {
+		expungeStaleEntries();
+		return pool.size();
+	}
+
+	/**
+	 * Removes entries of garbage collected instances.
+	 */
+	private void expungeStaleEntries() {
+		for ( Reference< ? extends T > ref = queue.poll(); ref != null; ref = queue.poll() ) {
+			pool.remove( ref );
+		}
+	}
+
+	/**
+	 * Weak reference comparing referents with the equivalence. A cleared reference is only equal to itself.
+	 * 
+	 * @param <T>
+	 *        the type of the referent.
+	 */
+	private static final class Ref< T > extends WeakReference< T > {
+
+		/**
+		 * Hash code of the referent.
+		 */
+		private final int hash;
+		/**
+		 * Equivalence of referents.
+		 */
+		private final Equivalence< ? super T > equivalence;
+
+		/**
+		 * Creates the {@code Ref} object.
+		 * 
+		 * @param value
+		 *        the referent.
+		 * @param equivalence
+		 *        the equivalence of referents.
+		 * @param queue
+		 *        the queue to register with or {@code null}.
+		 */
+		Ref( final T value, final Equivalence< ? super T > equivalence, final ReferenceQueue< T > queue ) {
+			super( value, queue );
+			this.hash = equivalence.hash( value );
+			this.equivalence = equivalence;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals( final Object o ) {
+			if ( o == this ) {
+				return true;
+			}
+			if ( !( o instanceof Ref ) || ( ( Ref< ? > ) o ).hash != hash ) {
+				return false;
+			}
+			@SuppressWarnings( "unchecked" ) T other = ( ( Ref< T > ) o ).get();
+			T value = get();
+			return value != null && other != null && ( value == other || equivalence.equivalent( value, other ) );
+		}
+	}
+}